@@ -71,6 +71,8 @@ public class FileSortBenchmark
 					buffer.putInt(i * 28, random.nextInt());
 				}
 				buffer.putByte(ITEMS * 28 - 1, (byte) 0);
+				target = MappedFlatBuffer.from(channel, FileChannel.MapMode.READ_WRITE, ITEMS * 28, ITEMS * 28)
+					.order(ByteOrder.LITTLE_ENDIAN);
 			}
 		}
 
@@ -81,6 +83,7 @@ public class FileSortBenchmark
 
 		Path file;
 		public FlatBuffer buffer;
+		public FlatBuffer target;
 	}
 
 	@State(Scope.Benchmark)
@@ -122,6 +125,36 @@ public class FileSortBenchmark
 		FlatSort.sort(state.buffer, Integer.BYTES, 0, ITEMS * 28, (b, l, r) -> Integer.compare(b.getInt(l), b.getInt(r)));
 	}
 
+	@Benchmark
+	public void			sort_flatParallel(Blackhole blackhole, FileSortState state)
+	{
+		FlatSort.parallelSort(state.buffer, Integer.BYTES, 0, ITEMS * 28, (b, l, r) -> Integer.compare(b.getInt(l), b.getInt(r)));
+	}
+
+	@Benchmark
+	public void			sort_sampleParallel(Blackhole blackhole, FileSortState state)
+	{
+		FlatSort.parallelSampleSort(state.buffer, 28, 0, ITEMS * 28, (b, l, r) -> Integer.compare(b.getInt(l), b.getInt(r)), state.target, 0);
+	}
+
+	@Benchmark
+	public void			sort_radix(Blackhole blackhole, FileSortState state)
+	{
+		FlatSort.radixSortByInt(state.buffer, Integer.BYTES, 0, ITEMS * 28, 0, true, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Benchmark
+	public void			sort_byKey(Blackhole blackhole, FileSortState state)
+	{
+		FlatSort.sortByKey(state.buffer, 28, 0, ITEMS * 28, 0, Integer.BYTES, true, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Benchmark
+	public void			sort_keyPointer(Blackhole blackhole, FileSortState state)
+	{
+		FlatSort.keyPointerSort(state.buffer, 28, 0, ITEMS * 28, 0, Integer.BYTES, true, ByteOrder.LITTLE_ENDIAN);
+	}
+
 	@Benchmark
 	public void			sort_java(Blackhole blackhole, JavaSortState state)
 	{
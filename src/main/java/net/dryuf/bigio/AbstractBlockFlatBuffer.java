@@ -0,0 +1,922 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio;
+
+import net.dryuf.bigio.file.BufferReleaser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+
+/**
+ * {@link FlatBuffer} composed of series of {@link ByteBuffer} blocks of 1 GiB, the last one possibly shorter.  The
+ * blocks are provided by subclass through {@link #createBlock(int, int)}, either up front from constructor or on
+ * first access.  Values crossing block boundary are transferred by parts, atomic accesses cannot cross it.
+ */
+public abstract class AbstractBlockFlatBuffer extends MappedFlatBuffer
+{
+	/**
+	 * Creates buffer of given length, with no block created yet.
+	 *
+	 * @param len
+	 * 	length of buffer
+	 */
+	protected AbstractBlockFlatBuffer(long len)
+	{
+		if (len < 0 || len > (long) Integer.MAX_VALUE*BLOCK_SIZE) {
+			throw new IllegalArgumentException("Invalid size, max supported size is 2^62-2^30, provided: 0x"+Long.toHexString(len));
+		}
+		this.size = len;
+		this.buffers = new ByteBuffer[(int) ((len-1)/BLOCK_SIZE+1)];
+	}
+
+	/**
+	 * Creates single block.  Called by {@link #initBlocks()} and for blocks not created yet on first access.
+	 *
+	 * @param index
+	 * 	index of block
+	 * @param length
+	 * 	required length of block, the returned buffer may have bigger capacity
+	 *
+	 * @return
+	 * 	new block.
+	 *
+	 * @throws IOException
+	 * 	if creating the block fails
+	 */
+	protected abstract ByteBuffer createBlock(int index, int length) throws IOException;
+
+	/**
+	 * Creates all blocks not created yet, typically called from subclass constructor.  The blocks created before
+	 * failure are kept and released by {@link #close()}.
+	 *
+	 * @throws IOException
+	 * 	if creating any block fails
+	 */
+	protected synchronized void initBlocks() throws IOException
+	{
+		for (int i = 0; i < buffers.length; ++i) {
+			if (buffers[i] == null) {
+				buffers[i] = createBlock(i, blockLength(i))
+					.order(getByteOrder());
+			}
+		}
+	}
+
+	/**
+	 * Enables releasing the blocks immediately when this buffer stops using them, on {@link #close()}, without
+	 * waiting for garbage collector.
+	 *
+	 * The caller must guarantee that no other thread accesses the buffer during or after close and that no
+	 * ByteBuffer previously returned by {@link #subByteBuffer(long, long)} is used after close.  There is no guard
+	 * protecting racing accesses, accessing the released memory crashes the JVM instead of throwing exception.
+	 * Safe deterministic unmapping of files is provided only by
+	 * {@link net.dryuf.bigio.file.MemorySegmentFlatBuffer}, chosen by {@link MappedFlatBuffer#from} on JDK 22 and
+	 * later.
+	 *
+	 * @param releaseEagerly
+	 * 	whether to release the blocks eagerly
+	 *
+	 * @return
+	 * 	this buffer.
+	 */
+	public AbstractBlockFlatBuffer releaseEagerly(boolean releaseEagerly)
+	{
+		this.releaseEagerly = releaseEagerly;
+		return this;
+	}
+
+	/**
+	 * Closes the buffer.  Any later access through this buffer throws {@link IllegalStateException}.  The blocks
+	 * are released immediately only if enabled by {@link #releaseEagerly(boolean)}, otherwise they are left to
+	 * garbage collector, so outstanding views and racing readers stay safe.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (isClosed)
+			return;
+		isClosed = true;
+		ByteBuffer[] blocks = buffers;
+		buffers = new ByteBuffer[0];
+		releaseBlocks(blocks);
+	}
+
+	/**
+	 * Gets current blocks, for subclasses changing the size.  The array must not be modified.
+	 *
+	 * @return
+	 * 	current blocks, may contain nulls for blocks not created yet.
+	 *
+	 * @throws IllegalStateException
+	 * 	if the buffer is closed
+	 */
+	protected synchronized ByteBuffer[] getBlocks()
+	{
+		if (isClosed) {
+			throw new IllegalStateException("Buffer already closed");
+		}
+		return buffers;
+	}
+
+	/**
+	 * Replaces the blocks and changes the size.  The retained blocks must be the same instances as returned by
+	 * {@link #getBlocks()}, the replaced and dropped ones are passed to {@link #releaseBlocks(ByteBuffer[])}.
+	 *
+	 * @param blocks
+	 * 	new blocks, covering the new length
+	 * @param len
+	 * 	new length of buffer
+	 *
+	 * @throws IllegalStateException
+	 * 	if the buffer is closed
+	 */
+	protected synchronized void replaceBlocks(ByteBuffer[] blocks, long len)
+	{
+		ByteBuffer[] original = getBlocks();
+		for (ByteBuffer b: blocks) {
+			if (b != null) {
+				b.order(getByteOrder());
+			}
+		}
+		// Accessors read size before buffers, the volatile size then guarantees the array covers the checked range:
+		if (len >= size) {
+			buffers = blocks;
+			size = len;
+		}
+		else {
+			size = len;
+			buffers = blocks;
+		}
+		ByteBuffer[] replaced = new ByteBuffer[original.length];
+		for (int i = 0; i < original.length; ++i) {
+			if (i >= blocks.length || blocks[i] != original[i]) {
+				replaced[i] = original[i];
+			}
+		}
+		releaseBlocks(replaced);
+	}
+
+	/**
+	 * Releases blocks no longer used by this buffer, if enabled by {@link #releaseEagerly(boolean)}.
+	 *
+	 * @param blocks
+	 * 	blocks to release, may contain nulls for blocks not created yet
+	 */
+	protected void releaseBlocks(ByteBuffer[] blocks)
+	{
+		if (!releaseEagerly) {
+			return;
+		}
+		for (ByteBuffer b: blocks) {
+			if (b != null) {
+				BufferReleaser.release(b);
+			}
+		}
+	}
+
+	@Override
+	public long size()
+	{
+		return this.size;
+	}
+
+	@Override
+	public ByteOrder getByteOrder()
+	{
+		return isBigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+	}
+
+	@Override
+	public synchronized MappedFlatBuffer order(ByteOrder order)
+	{
+		isBigEndian = order.equals(ByteOrder.BIG_ENDIAN);
+		for (ByteBuffer b: buffers) {
+			if (b != null) {
+				b.order(order);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public byte getByte(long pos)
+	{
+		checkSafeLengthBounds(pos, 1);
+		ByteBuffer buf0 = findBuffer(pos);
+		return buf0.get(localPos(pos));
+	}
+
+	@Override
+	public short getShort(long pos)
+	{
+		checkSafeLengthBounds(pos, 2);
+		ByteBuffer buf0 = findBuffer(pos);
+		if (((pos+1)&(BLOCK_MASK&~1)) != 0) {
+			return buf0.getShort(localPos(pos));
+		}
+		else {
+			ByteBuffer buf1 = findBuffer(pos+1);
+			return (short) (!isBigEndian ?
+					(buf0.get(localPos(pos))&0xff) | buf1.get(localPos(pos+1))<<8 :
+					buf0.get(localPos(pos))<<8 | buf1.get(localPos(pos+1))&0xff);
+		}
+	}
+
+	@Override
+	public int getInt(long pos)
+	{
+		checkSafeLengthBounds(pos, 4);
+		if (((pos+3)&(BLOCK_MASK&~3)) != 0) {
+			ByteBuffer buf0 = findBuffer(pos);
+			return buf0.getInt(localPos(pos));
+		}
+		else {
+			return (!isBigEndian ?
+					(getShort(pos)&0xffff | getShort(pos+2)<<16) :
+					(getShort(pos)<<16 | getShort(pos+2)&0xffff));
+		}
+
+	}
+
+	@Override
+	public long getLong(long pos)
+	{
+		checkSafeLengthBounds(pos, 8);
+		if (((pos+7)&(BLOCK_MASK&~7)) != 0) {
+			ByteBuffer buf0 = findBuffer(pos);
+			return buf0.getLong(localPos(pos));
+		}
+		else {
+			return (!isBigEndian ?
+					(getInt(pos)&0xffffffffL | (long) getInt(pos+4)<<32) :
+					((long) getInt(pos)<<32 | getInt(pos+4)&0xffffffffL));
+		}
+	}
+
+	@Override
+	public void getBytes(long pos, byte[] data, int offset, int length)
+	{
+		checkBounds(pos, length);
+		if ((offset|(offset+length)|(data.length-length-offset)) < 0) {
+			if (offset < 0) {
+				throw new IndexOutOfBoundsException("offset out of bounds: "+offset);
+			}
+			if (length < 0 || offset+length < 0 || offset+length > data.length) {
+				throw new IndexOutOfBoundsException("length out of bounds: "+length);
+			}
+		}
+		ByteBuffer buf0 = findBuffer(pos);
+		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
+			getFromPosition(buf0, localPos(pos), data, offset, length);
+		}
+		else {
+			ByteBuffer bufLast = findBuffer(pos+length-1);
+			int i = BLOCK_SIZE -localPos(pos);
+			getFromPosition(buf0, localPos(pos), data, offset, i);
+			for (;;) {
+				ByteBuffer bufMid = findBuffer(pos+i);
+				if (bufMid == bufLast)
+					break;
+				getFromPosition(bufMid, 0, data, offset+i, BLOCK_SIZE);
+				i += BLOCK_SIZE;
+			}
+			getFromPosition(bufLast, 0, data, offset+i, length-i);
+		}
+	}
+
+	@Override
+	public void getByteBuffer(long pos, ByteBuffer bufferRead)
+	{
+		if (bufferRead.hasArray()) {
+			getBytes(pos, bufferRead.array(), bufferRead.arrayOffset() + bufferRead.position(), bufferRead.limit() - bufferRead.position());
+		}
+		else {
+			for (int r = bufferRead.limit() - bufferRead.position(); r > 0; --r) {
+				bufferRead.put(getByte(pos + r));
+			}
+		}
+	}
+
+	@Override
+	public ByteBuffer subByteBuffer(long pos, long length)
+	{
+		checkBounds(pos, Math.toIntExact(length));
+		ByteBuffer buf0 = findBuffer(pos);
+		if (length == 0 || ((pos+length-1)&BLOCK_MASK) >= length-1) {
+			return buf0.slice(((int) pos & BLOCK_MASK), (int) length)
+					.order(getByteOrder());
+		}
+		else {
+			byte[] bytes = new byte[(int) length];
+			getBytes(pos, bytes);
+			return ByteBuffer.wrap(bytes)
+				.order(getByteOrder());
+		}
+	}
+
+	@Override
+	public void putByteBuffer(long pos, ByteBuffer buffer)
+	{
+		int length = buffer.remaining();
+		checkBounds(pos, length);
+		ByteBuffer buf0 = findBuffer(pos);
+		if (length == 0 || ((pos+length-1)&BLOCK_MASK) >= length-1) {
+			buf0.put(((int) pos & BLOCK_MASK), buffer, buffer.position(), length);
+		}
+		else {
+			buf0.put((int) pos & BLOCK_MASK, buffer, buffer.position(), BLOCK_SIZE - ((int) pos & BLOCK_MASK));
+			ByteBuffer buf1 = findBuffer((pos | BLOCK_MASK) + 1);
+			buf1.put(0, buffer, buffer.position() + (BLOCK_SIZE - ((int) pos & BLOCK_MASK)), length - (BLOCK_SIZE - ((int) pos & BLOCK_MASK)));
+		}
+		buffer.position(buffer.position() + length);
+	}
+
+	@Override
+	public void putByte(long pos, byte val)
+	{
+		checkSafeLengthBounds(pos, 1);
+		ByteBuffer buf0 = findBuffer(pos);
+		buf0.put(localPos(pos), val);
+	}
+
+	@Override
+	public void putShort(long pos, short val)
+	{
+		checkSafeLengthBounds(pos, 2);
+		ByteBuffer buf0 = findBuffer(pos);
+		if (((pos+1)&(BLOCK_MASK&~1)) != 0) {
+			buf0.putShort(localPos(pos), val);
+		}
+		else {
+			ByteBuffer buf1 = findBuffer(pos+1);
+			buf0.put(localPos(pos), (byte) (!isBigEndian ? val : val>>>8));
+			buf1.put(localPos(pos+1), (byte) (!isBigEndian ? val>>>8 : val));
+		}
+	}
+
+	@Override
+	public void putInt(long pos, int val)
+	{
+		checkSafeLengthBounds(pos, 4);
+		if (((pos+3)&(BLOCK_MASK&~3)) != 0) {
+			ByteBuffer buf0 = findBuffer(pos);
+			buf0.putInt(localPos(pos), val);
+		}
+		else {
+			putShort(pos, (short) (!isBigEndian ? val : (val>>>16)));
+			putShort(pos+2, (short) (!isBigEndian ? val>>>16 : val));
+		}
+	}
+
+	@Override
+	public void putLong(long pos, long val)
+	{
+		checkSafeLengthBounds(pos, 8);
+		if (((pos+7)&(BLOCK_MASK&~7)) != 0) {
+			ByteBuffer buf0 = findBuffer(pos);
+			buf0.putLong(localPos(pos), val);
+		}
+		else {
+			putInt(pos, (int) (!isBigEndian ? val : (val>>>32)));
+			putInt(pos+4, (int) (!isBigEndian ? val>>>32 : val));
+		}
+	}
+
+	@Override
+	public void putBytes(long pos, byte[] data, int offset, int length)
+	{
+		if ((offset|(offset+length)|(data.length-length-offset)) < 0) {
+			if (offset < 0) {
+				throw new IndexOutOfBoundsException("offset out of bounds: "+offset);
+			}
+			if (length < 0 || offset+length < 0 || offset+length >= data.length) {
+				throw new IndexOutOfBoundsException("length out of bounds: "+length);
+			}
+		}
+		checkBounds(pos, length);
+		ByteBuffer buf0 = findBuffer(pos);
+		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
+			putToPosition(buf0, localPos(pos), data, offset, length);
+		}
+		else {
+			ByteBuffer bufLast = findBuffer(pos+length-1);
+			int i = BLOCK_SIZE -localPos(pos);
+			putToPosition(buf0, localPos(pos), data, offset, i);
+			for (;;) {
+				ByteBuffer bufMid = findBuffer(pos+i);
+				if (bufMid == bufLast)
+					break;
+				putToPosition(bufMid, 0, data, offset+i, BLOCK_SIZE);
+				i += BLOCK_SIZE;
+			}
+			putToPosition(bufLast, 0, data, offset+i, length-i);
+		}
+	}
+
+	@Override
+	public void getShorts(long pos, short[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 1, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<1).order(getByteOrder()).asShortBuffer().get(data, off, count),
+			(p, off) -> data[off] = getShort(p)
+		);
+	}
+
+	@Override
+	public void putShorts(long pos, short[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 1, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<1).order(getByteOrder()).asShortBuffer().put(data, off, count),
+			(p, off) -> putShort(p, data[off])
+		);
+	}
+
+	@Override
+	public void getInts(long pos, int[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 2, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<2).order(getByteOrder()).asIntBuffer().get(data, off, count),
+			(p, off) -> data[off] = getInt(p)
+		);
+	}
+
+	@Override
+	public void putInts(long pos, int[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 2, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<2).order(getByteOrder()).asIntBuffer().put(data, off, count),
+			(p, off) -> putInt(p, data[off])
+		);
+	}
+
+	@Override
+	public void getLongs(long pos, long[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 3, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<3).order(getByteOrder()).asLongBuffer().get(data, off, count),
+			(p, off) -> data[off] = getLong(p)
+		);
+	}
+
+	@Override
+	public void putLongs(long pos, long[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 3, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<3).order(getByteOrder()).asLongBuffer().put(data, off, count),
+			(p, off) -> putLong(p, data[off])
+		);
+	}
+
+	@Override
+	public void getFloats(long pos, float[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 2, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<2).order(getByteOrder()).asFloatBuffer().get(data, off, count),
+			(p, off) -> data[off] = Float.intBitsToFloat(getInt(p))
+		);
+	}
+
+	@Override
+	public void putFloats(long pos, float[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 2, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<2).order(getByteOrder()).asFloatBuffer().put(data, off, count),
+			(p, off) -> putInt(p, Float.floatToRawIntBits(data[off]))
+		);
+	}
+
+	@Override
+	public void getDoubles(long pos, double[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 3, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<3).order(getByteOrder()).asDoubleBuffer().get(data, off, count),
+			(p, off) -> data[off] = Double.longBitsToDouble(getLong(p))
+		);
+	}
+
+	@Override
+	public void putDoubles(long pos, double[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		transferElements(pos, 3, offset, length,
+			(block, local, off, count) -> block.slice(local, count<<3).order(getByteOrder()).asDoubleBuffer().put(data, off, count),
+			(p, off) -> putLong(p, Double.doubleToRawLongBits(data[off]))
+		);
+	}
+
+	@Override
+	public int getIntVolatile(long pos)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 4);
+		return isBigEndian ?
+			(int) INT_BE_HANDLE.getVolatile(block, localPos(pos)) :
+			(int) INT_LE_HANDLE.getVolatile(block, localPos(pos));
+	}
+
+	@Override
+	public void putIntVolatile(long pos, int val)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 4);
+		if (isBigEndian) {
+			INT_BE_HANDLE.setVolatile(block, localPos(pos), val);
+		}
+		else {
+			INT_LE_HANDLE.setVolatile(block, localPos(pos), val);
+		}
+	}
+
+	@Override
+	public int getIntAcquire(long pos)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 4);
+		return isBigEndian ?
+			(int) INT_BE_HANDLE.getAcquire(block, localPos(pos)) :
+			(int) INT_LE_HANDLE.getAcquire(block, localPos(pos));
+	}
+
+	@Override
+	public void putIntRelease(long pos, int val)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 4);
+		if (isBigEndian) {
+			INT_BE_HANDLE.setRelease(block, localPos(pos), val);
+		}
+		else {
+			INT_LE_HANDLE.setRelease(block, localPos(pos), val);
+		}
+	}
+
+	@Override
+	public boolean compareAndSetInt(long pos, int expected, int val)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 4);
+		return isBigEndian ?
+			(boolean) INT_BE_HANDLE.compareAndSet(block, localPos(pos), expected, val) :
+			(boolean) INT_LE_HANDLE.compareAndSet(block, localPos(pos), expected, val);
+	}
+
+	@Override
+	public int getAndAddInt(long pos, int delta)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 4);
+		return isBigEndian ?
+			(int) INT_BE_HANDLE.getAndAdd(block, localPos(pos), delta) :
+			(int) INT_LE_HANDLE.getAndAdd(block, localPos(pos), delta);
+	}
+
+	@Override
+	public long getLongVolatile(long pos)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 8);
+		return isBigEndian ?
+			(long) LONG_BE_HANDLE.getVolatile(block, localPos(pos)) :
+			(long) LONG_LE_HANDLE.getVolatile(block, localPos(pos));
+	}
+
+	@Override
+	public void putLongVolatile(long pos, long val)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 8);
+		if (isBigEndian) {
+			LONG_BE_HANDLE.setVolatile(block, localPos(pos), val);
+		}
+		else {
+			LONG_LE_HANDLE.setVolatile(block, localPos(pos), val);
+		}
+	}
+
+	@Override
+	public long getLongAcquire(long pos)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 8);
+		return isBigEndian ?
+			(long) LONG_BE_HANDLE.getAcquire(block, localPos(pos)) :
+			(long) LONG_LE_HANDLE.getAcquire(block, localPos(pos));
+	}
+
+	@Override
+	public void putLongRelease(long pos, long val)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 8);
+		if (isBigEndian) {
+			LONG_BE_HANDLE.setRelease(block, localPos(pos), val);
+		}
+		else {
+			LONG_LE_HANDLE.setRelease(block, localPos(pos), val);
+		}
+	}
+
+	@Override
+	public boolean compareAndSetLong(long pos, long expected, long val)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 8);
+		return isBigEndian ?
+			(boolean) LONG_BE_HANDLE.compareAndSet(block, localPos(pos), expected, val) :
+			(boolean) LONG_LE_HANDLE.compareAndSet(block, localPos(pos), expected, val);
+	}
+
+	@Override
+	public long getAndAddLong(long pos, long delta)
+	{
+		ByteBuffer block = findAtomicBuffer(pos, 8);
+		return isBigEndian ?
+			(long) LONG_BE_HANDLE.getAndAdd(block, localPos(pos), delta) :
+			(long) LONG_LE_HANDLE.getAndAdd(block, localPos(pos), delta);
+	}
+
+	@Override
+	public boolean equalsBytes(long pos, byte[] data, int offset, int length)
+	{
+		ByteBuffer buf0 = findBuffer(pos);
+		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
+			return equalsAtPosition(buf0, localPos(pos), data, offset, length);
+		}
+		else {
+			ByteBuffer bufLast = findBuffer(pos+length-1);
+			int i = BLOCK_SIZE -localPos(pos);
+			if (!equalsAtPosition(buf0, localPos(pos), data, offset, i))
+				return false;
+			for (;;) {
+				ByteBuffer bufMid = findBuffer(pos+i);
+				if (bufMid == bufLast)
+					break;
+				if (!equalsAtPosition(bufMid, 0, data, offset+i, BLOCK_SIZE))
+					return false;
+				i += BLOCK_SIZE;
+			}
+			return equalsAtPosition(bufLast, 0, data, offset+i, length-i);
+		}
+	}
+
+	@Override
+	public int compareBytes(long pos, byte[] data, int offset, int length)
+	{
+		ByteBuffer buf0 = findBuffer(pos);
+		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
+			return compareAtPosition(buf0, localPos(pos), data, offset, length);
+		}
+		else {
+			ByteBuffer bufLast = findBuffer(pos+length-1);
+			int i = BLOCK_SIZE -localPos(pos);
+			int r;
+			if ((r = compareAtPosition(buf0, localPos(pos), data, offset, i)) != 0)
+				return r;
+			for (;;) {
+				ByteBuffer bufMid = findBuffer(pos+i);
+				if (bufMid == bufLast)
+					break;
+				if ((r = compareAtPosition(bufMid, 0, data, offset+i, BLOCK_SIZE)) != 0)
+					return r;
+				i += BLOCK_SIZE;
+			}
+			return compareAtPosition(bufLast, 0, data, offset+i, length-i);
+		}
+	}
+
+	@Override
+	public void swapRegions(long pos0, long pos1, int length)
+	{
+		checkBounds(pos0, length);
+		checkBounds(pos1, length);
+		if (length > 0 && ((pos0+length-1)&BLOCK_MASK) >= length-1 && ((pos1+length-1)&BLOCK_MASK) >= length-1) {
+			ByteBuffer buf0 = findBuffer(pos0), buf1 = findBuffer(pos1);
+			int p0 = localPos(pos0), p1 = localPos(pos1);
+			int i = 0;
+			for (; i <= length-8; i += 8) {
+				long v0 = buf0.getLong(p0+i), v1 = buf1.getLong(p1+i);
+				buf0.putLong(p0+i, v1);
+				buf1.putLong(p1+i, v0);
+			}
+			for (; i < length; ++i) {
+				byte v0 = buf0.get(p0+i), v1 = buf1.get(p1+i);
+				buf0.put(p0+i, v1);
+				buf1.put(p1+i, v0);
+			}
+		}
+		else {
+			super.swapRegions(pos0, pos1, length);
+		}
+	}
+
+	@Override
+	public void copyWithin(long sourcePos, long targetPos, long length)
+	{
+		checkBounds(sourcePos, length);
+		checkBounds(targetPos, length);
+		if (length > 0 && ((sourcePos+length-1)&BLOCK_MASK) >= length-1 && ((targetPos+length-1)&BLOCK_MASK) >= length-1) {
+			ByteBuffer source = findBuffer(sourcePos), target = findBuffer(targetPos);
+			if (source != target || Math.abs(targetPos-sourcePos) >= length) {
+				target.put(localPos(targetPos), source, localPos(sourcePos), (int) length);
+				return;
+			}
+		}
+		super.copyWithin(sourcePos, targetPos, length);
+	}
+
+	private void checkSafeLengthBounds(long pos, int length)
+	{
+		if ((pos|(this.size-length-pos)) < 0) {
+			if (pos < 0) {
+				throw new IndexOutOfBoundsException("position out of bounds: "+pos);
+			}
+			if (length < 0 || pos+length < 0 || pos+length > this.size) {
+				throw new IndexOutOfBoundsException("length out of bounds: "+length);
+			}
+		}
+	}
+
+	private void checkBounds(long pos, long length)
+	{
+		if ((pos|length|(pos+length)|(this.size-length-pos)) < 0) {
+			if (pos < 0) {
+				throw new IndexOutOfBoundsException("position out of bounds: "+pos);
+			}
+			if (length < 0 || pos+length < 0 || pos+length > this.size) {
+				throw new IndexOutOfBoundsException("length out of bounds: "+length);
+			}
+		}
+	}
+
+	/**
+	 * Transfers elements of size 1&lt;&lt;shift, using single bulk transfer for each block and falling back to
+	 * element access for element crossing block boundary.
+	 */
+	private void transferElements(long pos, int shift, int offset, int length, BlockTransfer blockTransfer, ElementTransfer elementTransfer)
+	{
+		checkBounds(pos, (long) length<<shift);
+		while (length > 0) {
+			int local = localPos(pos);
+			int count = Math.min(length, (BLOCK_SIZE-local)>>>shift);
+			if (count > 0) {
+				blockTransfer.transfer(findBuffer(pos), local, offset, count);
+			}
+			else {
+				elementTransfer.transfer(pos, offset);
+				count = 1;
+			}
+			pos += (long) count<<shift;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Finds block for atomic access, which cannot be split across blocks.
+	 */
+	private ByteBuffer findAtomicBuffer(long pos, int length)
+	{
+		checkSafeLengthBounds(pos, length);
+		if (localPos(pos) > BLOCK_SIZE-length) {
+			throw new IllegalStateException("Misaligned access crossing blocks: pos="+pos);
+		}
+		return findBuffer(pos);
+	}
+
+	private ByteBuffer findBuffer(long pos)
+	{
+		try {
+			int index = (int)(pos >>> BLOCK_SHIFT);
+			ByteBuffer buffer = (ByteBuffer) BUFFERS_ELEMENT.getAcquire(buffers, index);
+			return buffer != null ? buffer : mapBlock(index);
+		}
+		catch (ArrayIndexOutOfBoundsException ex) {
+			if (isClosed) {
+				throw new IllegalStateException("Buffer already closed", ex);
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Creates the block on first access.  The creation is serialized, but published into array with release
+	 * semantics, so the readers do not need any lock.
+	 */
+	private synchronized ByteBuffer mapBlock(int index)
+	{
+		if (isClosed) {
+			throw new IllegalStateException("Buffer already closed");
+		}
+		ByteBuffer mapped = (ByteBuffer) BUFFERS_ELEMENT.getAcquire(buffers, index);
+		if (mapped == null) {
+			try {
+				mapped = createBlock(index, blockLength(index))
+					.order(getByteOrder());
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			BUFFERS_ELEMENT.setRelease(buffers, index, mapped);
+		}
+		return mapped;
+	}
+
+	/**
+	 * Computes length of block for current size.
+	 *
+	 * @param index
+	 * 	index of block
+	 *
+	 * @return
+	 * 	length of block.
+	 */
+	protected int blockLength(int index)
+	{
+		return (int) Math.min(BLOCK_SIZE, size-index*(long) BLOCK_SIZE);
+	}
+
+	private static int localPos(long pos)
+	{
+		return (int) pos & BLOCK_MASK;
+	}
+
+	private static void getFromPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
+	{
+		buf.get(pos, data, offset, length);
+	}
+
+	private static void putToPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
+	{
+		buf.put(pos, data, offset, length);
+	}
+
+	private static boolean equalsAtPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
+	{
+		ByteBuffer dup = buf.duplicate();
+		dup.position(pos);
+		dup.limit(pos+length);
+		return dup.equals(ByteBuffer.wrap(data, offset, length));
+	}
+
+	private static int compareAtPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
+	{
+		ByteBuffer dup = buf.duplicate();
+		dup.position(pos);
+		dup.limit(pos+length);
+		return dup.compareTo(ByteBuffer.wrap(data, offset, length));
+	}
+
+	private interface BlockTransfer
+	{
+		void transfer(ByteBuffer block, int localPos, int offset, int count);
+	}
+
+	private interface ElementTransfer
+	{
+		void transfer(long pos, int offset);
+	}
+
+	/** Shift of block index in position. */
+	protected static final int BLOCK_SHIFT = 30;
+	/** Size of single block, 1 GiB. */
+	protected static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	/** Mask of position within block. */
+	protected static final int BLOCK_MASK = BLOCK_SIZE -1;
+
+	private static final VarHandle INT_BE_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT_LE_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE_HANDLE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_LE_HANDLE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private static final VarHandle BUFFERS_ELEMENT = MethodHandles.arrayElementVarHandle(ByteBuffer[].class);
+
+	private volatile long size;
+
+	private boolean isBigEndian = true;
+
+	private ByteBuffer buffers[];
+
+	private boolean isClosed = false;
+
+	private boolean releaseEagerly = false;
+}
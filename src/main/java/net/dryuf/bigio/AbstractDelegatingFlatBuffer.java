@@ -134,5 +134,89 @@ public class AbstractDelegatingFlatBuffer extends AbstractFlatBuffer
 		underlying.putBytes(pos, data, offset, length);
 	}
 
+	@Override
+	public void swapRegions(long pos0, long pos1, int length)
+	{
+		underlying.swapRegions(pos0, pos1, length);
+	}
+
+	@Override
+	public int getIntVolatile(long pos)
+	{
+		return underlying.getIntVolatile(pos);
+	}
+
+	@Override
+	public void putIntVolatile(long pos, int val)
+	{
+		underlying.putIntVolatile(pos, val);
+	}
+
+	@Override
+	public int getIntAcquire(long pos)
+	{
+		return underlying.getIntAcquire(pos);
+	}
+
+	@Override
+	public void putIntRelease(long pos, int val)
+	{
+		underlying.putIntRelease(pos, val);
+	}
+
+	@Override
+	public boolean compareAndSetInt(long pos, int expected, int val)
+	{
+		return underlying.compareAndSetInt(pos, expected, val);
+	}
+
+	@Override
+	public int getAndAddInt(long pos, int delta)
+	{
+		return underlying.getAndAddInt(pos, delta);
+	}
+
+	@Override
+	public long getLongVolatile(long pos)
+	{
+		return underlying.getLongVolatile(pos);
+	}
+
+	@Override
+	public void putLongVolatile(long pos, long val)
+	{
+		underlying.putLongVolatile(pos, val);
+	}
+
+	@Override
+	public long getLongAcquire(long pos)
+	{
+		return underlying.getLongAcquire(pos);
+	}
+
+	@Override
+	public void putLongRelease(long pos, long val)
+	{
+		underlying.putLongRelease(pos, val);
+	}
+
+	@Override
+	public boolean compareAndSetLong(long pos, long expected, long val)
+	{
+		return underlying.compareAndSetLong(pos, expected, val);
+	}
+
+	@Override
+	public long getAndAddLong(long pos, long delta)
+	{
+		return underlying.getAndAddLong(pos, delta);
+	}
+
+	@Override
+	public void copyWithin(long sourcePos, long targetPos, long length)
+	{
+		underlying.copyWithin(sourcePos, targetPos, length);
+	}
+
 	protected final FlatBuffer underlying;
 }
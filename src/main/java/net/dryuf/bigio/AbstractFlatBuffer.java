@@ -20,9 +20,14 @@ package net.dryuf.bigio;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Objects;
 
 /**
  * Partial implementation of {@link FlatBuffer}.
+ *
+ * The atomic accessors default to implementation based on plain accessors, guarded by lock of this instance.  They
+ * are atomic only against other atomic accessors of the same instance, memory backed implementations should
+ * override them with real atomic operations.
  */
 public abstract class AbstractFlatBuffer implements FlatBuffer
 {
@@ -43,6 +48,257 @@ public abstract class AbstractFlatBuffer implements FlatBuffer
 		putBytes(pos, data, 0, data.length);
 	}
 
+	@Override
+	public void getShorts(long pos, short[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			data[offset+i] = getShort(pos+2L*i);
+		}
+	}
+
+	@Override
+	public void putShorts(long pos, short[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			putShort(pos+2L*i, data[offset+i]);
+		}
+	}
+
+	@Override
+	public void getInts(long pos, int[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			data[offset+i] = getInt(pos+4L*i);
+		}
+	}
+
+	@Override
+	public void putInts(long pos, int[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			putInt(pos+4L*i, data[offset+i]);
+		}
+	}
+
+	@Override
+	public void getLongs(long pos, long[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			data[offset+i] = getLong(pos+8L*i);
+		}
+	}
+
+	@Override
+	public void putLongs(long pos, long[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			putLong(pos+8L*i, data[offset+i]);
+		}
+	}
+
+	@Override
+	public void getFloats(long pos, float[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			data[offset+i] = Float.intBitsToFloat(getInt(pos+4L*i));
+		}
+	}
+
+	@Override
+	public void putFloats(long pos, float[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			putInt(pos+4L*i, Float.floatToRawIntBits(data[offset+i]));
+		}
+	}
+
+	@Override
+	public void getDoubles(long pos, double[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			data[offset+i] = Double.longBitsToDouble(getLong(pos+8L*i));
+		}
+	}
+
+	@Override
+	public void putDoubles(long pos, double[] data, int offset, int length)
+	{
+		Objects.checkFromIndexSize(offset, length, data.length);
+		for (int i = 0; i < length; ++i) {
+			putLong(pos+8L*i, Double.doubleToRawLongBits(data[offset+i]));
+		}
+	}
+
+	@Override
+	public synchronized int getIntVolatile(long pos)
+	{
+		checkAtomicAlignment(pos, 4);
+		return getInt(pos);
+	}
+
+	@Override
+	public synchronized void putIntVolatile(long pos, int val)
+	{
+		checkAtomicAlignment(pos, 4);
+		putInt(pos, val);
+	}
+
+	@Override
+	public int getIntAcquire(long pos)
+	{
+		return getIntVolatile(pos);
+	}
+
+	@Override
+	public void putIntRelease(long pos, int val)
+	{
+		putIntVolatile(pos, val);
+	}
+
+	@Override
+	public synchronized boolean compareAndSetInt(long pos, int expected, int val)
+	{
+		checkAtomicAlignment(pos, 4);
+		if (getInt(pos) != expected) {
+			return false;
+		}
+		putInt(pos, val);
+		return true;
+	}
+
+	@Override
+	public synchronized int getAndAddInt(long pos, int delta)
+	{
+		checkAtomicAlignment(pos, 4);
+		int old = getInt(pos);
+		putInt(pos, old+delta);
+		return old;
+	}
+
+	@Override
+	public synchronized long getLongVolatile(long pos)
+	{
+		checkAtomicAlignment(pos, 8);
+		return getLong(pos);
+	}
+
+	@Override
+	public synchronized void putLongVolatile(long pos, long val)
+	{
+		checkAtomicAlignment(pos, 8);
+		putLong(pos, val);
+	}
+
+	@Override
+	public long getLongAcquire(long pos)
+	{
+		return getLongVolatile(pos);
+	}
+
+	@Override
+	public void putLongRelease(long pos, long val)
+	{
+		putLongVolatile(pos, val);
+	}
+
+	@Override
+	public synchronized boolean compareAndSetLong(long pos, long expected, long val)
+	{
+		checkAtomicAlignment(pos, 8);
+		if (getLong(pos) != expected) {
+			return false;
+		}
+		putLong(pos, val);
+		return true;
+	}
+
+	@Override
+	public synchronized long getAndAddLong(long pos, long delta)
+	{
+		checkAtomicAlignment(pos, 8);
+		long old = getLong(pos);
+		putLong(pos, old+delta);
+		return old;
+	}
+
+	@Override
+	public void swapRegions(long pos0, long pos1, int length)
+	{
+		int i = 0;
+		for (; i <= length - 8; i += 8) {
+			long v0 = getLong(pos0+i), v1 = getLong(pos1+i);
+			putLong(pos0+i, v1);
+			putLong(pos1+i, v0);
+		}
+		for (; i < length; ++i) {
+			byte v0 = getByte(pos0+i), v1 = getByte(pos1+i);
+			putByte(pos0+i, v1);
+			putByte(pos1+i, v0);
+		}
+	}
+
+	@Override
+	public void copyWithin(long sourcePos, long targetPos, long length)
+	{
+		if (sourcePos == targetPos || length == 0) {
+			return;
+		}
+		if (length <= COPY_WORDWISE_THRESHOLD) {
+			copyWordwise(sourcePos, targetPos, (int) length);
+			return;
+		}
+		byte[] tmp = new byte[(int) Math.min(length, COPY_CHUNK_SIZE)];
+		if (targetPos < sourcePos) {
+			for (long i = 0; i < length; i += tmp.length) {
+				int chunk = (int) Math.min(tmp.length, length-i);
+				getBytes(sourcePos+i, tmp, 0, chunk);
+				putBytes(targetPos+i, tmp, 0, chunk);
+			}
+		}
+		else {
+			for (long i = length; i > 0; i -= tmp.length) {
+				int chunk = (int) Math.min(tmp.length, i);
+				getBytes(sourcePos+i-chunk, tmp, 0, chunk);
+				putBytes(targetPos+i-chunk, tmp, 0, chunk);
+			}
+		}
+	}
+
+	/**
+	 * Copies short region by words, without allocating temporary buffer.  The direction follows the overlap, so the
+	 * source is always read before it is overwritten.
+	 */
+	private void copyWordwise(long sourcePos, long targetPos, int length)
+	{
+		if (targetPos < sourcePos) {
+			int i = 0;
+			for (; i <= length - 8; i += 8) {
+				putLong(targetPos+i, getLong(sourcePos+i));
+			}
+			for (; i < length; ++i) {
+				putByte(targetPos+i, getByte(sourcePos+i));
+			}
+		}
+		else {
+			int i = length;
+			for (; i >= 8; i -= 8) {
+				putLong(targetPos+i-8, getLong(sourcePos+i-8));
+			}
+			for (; i > 0; --i) {
+				putByte(targetPos+i-1, getByte(sourcePos+i-1));
+			}
+		}
+	}
+
 	@Override
 	public FlatBuffer subBuffer(long pos, long length)
 	{
@@ -58,12 +314,7 @@ public abstract class AbstractFlatBuffer implements FlatBuffer
 	@Override
 	public boolean equalsBuffer(long pos, FlatBuffer buffer, long offset, long length)
 	{
-		for (long i = 0; i < length; ++i) {
-			byte bl = this.getByte(pos+i), br = buffer.getByte(offset+i);
-			if (bl != br)
-				return false;
-		}
-		return true;
+		return mismatch(pos, buffer, offset, length) < 0;
 	}
 
 	@Override
@@ -75,7 +326,17 @@ public abstract class AbstractFlatBuffer implements FlatBuffer
 	@Override
 	public int compareBytes(long pos, byte[] bytes, int offset, int length)
 	{
-		for (int i = 0; i < length; ++i) {
+		int i = 0;
+		if (length >= MISMATCH_SLICE_THRESHOLD) {
+			for (; i < length; i += COPY_CHUNK_SIZE) {
+				int chunk = Math.min(COPY_CHUNK_SIZE, length-i);
+				int m = subByteBuffer(pos+i, chunk).mismatch(ByteBuffer.wrap(bytes, offset+i, chunk));
+				if (m >= 0)
+					return Byte.compare(getByte(pos+i+m), bytes[offset+i+m]);
+			}
+			return 0;
+		}
+		for (; i < length; ++i) {
 			byte bl = this.getByte(pos+i), br = bytes[offset+i];
 			if (bl != br)
 				return Byte.compare(bl, br);
@@ -86,7 +347,17 @@ public abstract class AbstractFlatBuffer implements FlatBuffer
 	@Override
 	public int compareByteBuffer(long pos, ByteBuffer buffer)
 	{
-		for (int i = 0, offset = buffer.position(), length = buffer.remaining(); i < length; ++i) {
+		int offset = buffer.position(), length = buffer.remaining();
+		if (length >= MISMATCH_SLICE_THRESHOLD) {
+			for (int i = 0; i < length; i += COPY_CHUNK_SIZE) {
+				int chunk = Math.min(COPY_CHUNK_SIZE, length-i);
+				int m = subByteBuffer(pos+i, chunk).mismatch(buffer.slice(offset+i, chunk));
+				if (m >= 0)
+					return Byte.compare(getByte(pos+i+m), buffer.get(offset+i+m));
+			}
+			return 0;
+		}
+		for (int i = 0; i < length; ++i) {
 			byte bl = this.getByte(pos+i), br = buffer.get(offset+i);
 			if (bl != br)
 				return Byte.compare(bl, br);
@@ -94,15 +365,59 @@ public abstract class AbstractFlatBuffer implements FlatBuffer
 		return 0;
 	}
 
+	@Override
+	public long mismatch(long pos, FlatBuffer other, long otherPos, long length)
+	{
+		if (length >= MISMATCH_SLICE_THRESHOLD) {
+			for (long i = 0; i < length; i += COPY_CHUNK_SIZE) {
+				int chunk = (int) Math.min(COPY_CHUNK_SIZE, length-i);
+				int m = subByteBuffer(pos+i, chunk).mismatch(other.subByteBuffer(otherPos+i, chunk));
+				if (m >= 0)
+					return i+m;
+			}
+			return -1;
+		}
+		for (long i = 0; i < length; ++i) {
+			if (this.getByte(pos+i) != other.getByte(otherPos+i))
+				return i;
+		}
+		return -1;
+	}
+
 	@Override
 	public int compareTo(FlatBuffer right)
 	{
 		long sl = this.size(), sr = right.size();
-		for (long i = 0, size = Math.max(sl, sr); i < size; ++i) {
-			byte bl = this.getByte(i), br = right.getByte(i);
-			if (bl != br)
-				return (bl&0xff)-(br&0xff);
+		long m = mismatch(0, right, 0, Math.min(sl, sr));
+		if (m >= 0)
+			return (this.getByte(m)&0xff)-(right.getByte(m)&0xff);
+		return Long.compare(sl, sr);
+	}
+
+	/**
+	 * Checks that position is naturally aligned for atomic access.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param size
+	 * 	size of accessed value, power of two
+	 *
+	 * @throws IllegalStateException
+	 * 	if position is not aligned
+	 */
+	protected static void checkAtomicAlignment(long pos, int size)
+	{
+		if ((pos&(size-1)) != 0) {
+			throw new IllegalStateException("Misaligned atomic access at position "+pos+" for size "+size);
 		}
-		return sl < sr ? -1 : sr > 0 ? 1 : 0;
 	}
+
+	/** Size of chunk used for copying data within buffer. */
+	protected static final int COPY_CHUNK_SIZE = 64*1024;
+
+	/** Maximal length of region copied within buffer by words instead of through temporary array. */
+	protected static final int COPY_WORDWISE_THRESHOLD = 256;
+
+	/** Minimal length for which comparisons go through {@link ByteBuffer#mismatch} instead of byte loop. */
+	protected static final int MISMATCH_SLICE_THRESHOLD = 64;
 }
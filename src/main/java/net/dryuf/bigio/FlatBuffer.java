@@ -49,6 +49,76 @@ public interface FlatBuffer extends AutoCloseable, Comparable<FlatBuffer>
 
 	public void getBytes(long pos, byte[] data, int offset, int length);
 
+	/**
+	 * Reads consecutive shorts in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	target array
+	 * @param offset
+	 * 	offset in target array
+	 * @param length
+	 * 	number of shorts to read
+	 */
+	public void getShorts(long pos, short[] data, int offset, int length);
+
+	/**
+	 * Reads consecutive ints in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	target array
+	 * @param offset
+	 * 	offset in target array
+	 * @param length
+	 * 	number of ints to read
+	 */
+	public void getInts(long pos, int[] data, int offset, int length);
+
+	/**
+	 * Reads consecutive longs in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	target array
+	 * @param offset
+	 * 	offset in target array
+	 * @param length
+	 * 	number of longs to read
+	 */
+	public void getLongs(long pos, long[] data, int offset, int length);
+
+	/**
+	 * Reads consecutive floats in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	target array
+	 * @param offset
+	 * 	offset in target array
+	 * @param length
+	 * 	number of floats to read
+	 */
+	public void getFloats(long pos, float[] data, int offset, int length);
+
+	/**
+	 * Reads consecutive doubles in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	target array
+	 * @param offset
+	 * 	offset in target array
+	 * @param length
+	 * 	number of doubles to read
+	 */
+	public void getDoubles(long pos, double[] data, int offset, int length);
+
 	/**
 	 * Gets a ByteBuffer at given position and length.  The ByteBuffer may or may not be zero-copy of original
 	 * storage depending on implementation.  It must NOT be used for modifications.
@@ -73,6 +143,76 @@ public interface FlatBuffer extends AutoCloseable, Comparable<FlatBuffer>
 
 	public void putBytes(long pos, byte[] data, int offset, int length);
 
+	/**
+	 * Writes consecutive shorts in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	source array
+	 * @param offset
+	 * 	offset in source array
+	 * @param length
+	 * 	number of shorts to write
+	 */
+	public void putShorts(long pos, short[] data, int offset, int length);
+
+	/**
+	 * Writes consecutive ints in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	source array
+	 * @param offset
+	 * 	offset in source array
+	 * @param length
+	 * 	number of ints to write
+	 */
+	public void putInts(long pos, int[] data, int offset, int length);
+
+	/**
+	 * Writes consecutive longs in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	source array
+	 * @param offset
+	 * 	offset in source array
+	 * @param length
+	 * 	number of longs to write
+	 */
+	public void putLongs(long pos, long[] data, int offset, int length);
+
+	/**
+	 * Writes consecutive floats in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	source array
+	 * @param offset
+	 * 	offset in source array
+	 * @param length
+	 * 	number of floats to write
+	 */
+	public void putFloats(long pos, float[] data, int offset, int length);
+
+	/**
+	 * Writes consecutive doubles in this buffer's byte order.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param data
+	 * 	source array
+	 * @param offset
+	 * 	offset in source array
+	 * @param length
+	 * 	number of doubles to write
+	 */
+	public void putDoubles(long pos, double[] data, int offset, int length);
+
 	/**
 	 * Writes a ByteBuffer at given position and length.
 	 *
@@ -83,6 +223,173 @@ public interface FlatBuffer extends AutoCloseable, Comparable<FlatBuffer>
 	 */
 	public void putByteBuffer(long pos, ByteBuffer buffer);
 
+	/**
+	 * Reads int with volatile semantics.  The atomic accessors require naturally aligned position and throw
+	 * {@link IllegalStateException} on misaligned access.  Implementations not backed by memory may
+	 * emulate them by locking, being then atomic only against atomic accessors of the same instance.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 4 bytes
+	 *
+	 * @return
+	 * 	value at given position.
+	 */
+	public int getIntVolatile(long pos);
+
+	/**
+	 * Writes int with volatile semantics.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 4 bytes
+	 * @param val
+	 * 	value to write
+	 */
+	public void putIntVolatile(long pos, int val);
+
+	/**
+	 * Reads int with acquire semantics, pairing with {@link #putIntRelease(long, int)}.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 4 bytes
+	 *
+	 * @return
+	 * 	value at given position.
+	 */
+	public int getIntAcquire(long pos);
+
+	/**
+	 * Writes int with release semantics, publishing preceding writes to readers using {@link #getIntAcquire(long)}.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 4 bytes
+	 * @param val
+	 * 	value to write
+	 */
+	public void putIntRelease(long pos, int val);
+
+	/**
+	 * Atomically sets int to new value if it currently holds the expected value.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 4 bytes
+	 * @param expected
+	 * 	expected current value
+	 * @param val
+	 * 	new value
+	 *
+	 * @return
+	 * 	true if the value was updated, false otherwise.
+	 */
+	public boolean compareAndSetInt(long pos, int expected, int val);
+
+	/**
+	 * Atomically adds delta to int.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 4 bytes
+	 * @param delta
+	 * 	value to add
+	 *
+	 * @return
+	 * 	previous value.
+	 */
+	public int getAndAddInt(long pos, int delta);
+
+	/**
+	 * Reads long with volatile semantics.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 8 bytes
+	 *
+	 * @return
+	 * 	value at given position.
+	 */
+	public long getLongVolatile(long pos);
+
+	/**
+	 * Writes long with volatile semantics.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 8 bytes
+	 * @param val
+	 * 	value to write
+	 */
+	public void putLongVolatile(long pos, long val);
+
+	/**
+	 * Reads long with acquire semantics, pairing with {@link #putLongRelease(long, long)}.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 8 bytes
+	 *
+	 * @return
+	 * 	value at given position.
+	 */
+	public long getLongAcquire(long pos);
+
+	/**
+	 * Writes long with release semantics, publishing preceding writes to readers using {@link #getLongAcquire(long)}.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 8 bytes
+	 * @param val
+	 * 	value to write
+	 */
+	public void putLongRelease(long pos, long val);
+
+	/**
+	 * Atomically sets long to new value if it currently holds the expected value.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 8 bytes
+	 * @param expected
+	 * 	expected current value
+	 * @param val
+	 * 	new value
+	 *
+	 * @return
+	 * 	true if the value was updated, false otherwise.
+	 */
+	public boolean compareAndSetLong(long pos, long expected, long val);
+
+	/**
+	 * Atomically adds delta to long.
+	 *
+	 * @param pos
+	 * 	position in this buffer, must be aligned to 8 bytes
+	 * @param delta
+	 * 	value to add
+	 *
+	 * @return
+	 * 	previous value.
+	 */
+	public long getAndAddLong(long pos, long delta);
+
+	/**
+	 * Swaps content of two non-overlapping regions within this buffer.
+	 *
+	 * @param pos0
+	 * 	position of first region
+	 * @param pos1
+	 * 	position of second region
+	 * @param length
+	 * 	length of regions
+	 */
+	public void swapRegions(long pos0, long pos1, int length);
+
+	/**
+	 * Copies region within this buffer.  The regions may overlap, the result is as if the source was copied to
+	 * temporary storage first.
+	 *
+	 * @param sourcePos
+	 * 	position of source region
+	 * @param targetPos
+	 * 	position of target region
+	 * @param length
+	 * 	length of region
+	 */
+	public void copyWithin(long sourcePos, long targetPos, long length);
+
 	public FlatBuffer subBuffer(long pos, long length);
 
 	/**
@@ -109,6 +416,23 @@ public interface FlatBuffer extends AutoCloseable, Comparable<FlatBuffer>
 
 	public int compareByteBuffer(long pos, ByteBuffer buffer);
 
+	/**
+	 * Finds first differing byte between region of this buffer and region of other buffer.
+	 *
+	 * @param pos
+	 * 	position in this buffer
+	 * @param other
+	 * 	buffer to compare with
+	 * @param otherPos
+	 * 	position in other buffer
+	 * @param length
+	 * 	length of compared regions
+	 *
+	 * @return
+	 * 	index of first differing byte, relative to pos and otherPos, or -1 if regions are equal.
+	 */
+	public long mismatch(long pos, FlatBuffer other, long otherPos, long length);
+
 	@Override
 	public abstract int compareTo(FlatBuffer right);
 }
@@ -0,0 +1,96 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * {@link FlatBuffer} based implementation of {@link FlatChannel} .  Closing the channel does not close the underlying
+ * buffer.
+ */
+@AllArgsConstructor(access = AccessLevel.PROTECTED)
+public class FlatBufferFlatChannel implements FlatChannel
+{
+	private final FlatBuffer flatBuffer;
+
+	/**
+	 * Constructs new instance of {@link FlatBufferFlatChannel} .
+	 *
+	 * @param flatBuffer
+	 * 	underlying buffer
+	 *
+	 * @return
+	 * 	FlatChannel to buffer.
+	 */
+	public static FlatBufferFlatChannel from(FlatBuffer flatBuffer)
+	{
+		return new FlatBufferFlatChannel(flatBuffer);
+	}
+
+	@Override
+	public int read(ByteBuffer buffer, long position) throws IOException
+	{
+		long size = flatBuffer.size();
+		if (position < 0 || position > size) {
+			throw new IndexOutOfBoundsException("Position outside of channel boundaries: "+position);
+		}
+		if (position == size && buffer.hasRemaining()) {
+			return -1;
+		}
+		int length = (int) Math.min(buffer.remaining(), size-position);
+		if (buffer.hasArray()) {
+			flatBuffer.getBytes(position, buffer.array(), buffer.arrayOffset()+buffer.position(), length);
+			buffer.position(buffer.position()+length);
+		}
+		else {
+			buffer.put(flatBuffer.subByteBuffer(position, length));
+		}
+		return length;
+	}
+
+	@Override
+	public int write(ByteBuffer buffer, long position) throws IOException
+	{
+		long size = flatBuffer.size();
+		if (position < 0 || position > size) {
+			throw new IndexOutOfBoundsException("Position outside of channel boundaries: "+position);
+		}
+		int length = (int) Math.min(buffer.remaining(), size-position);
+		if (buffer.hasArray()) {
+			flatBuffer.putBytes(position, buffer.array(), buffer.arrayOffset()+buffer.position(), length);
+			buffer.position(buffer.position()+length);
+		}
+		else {
+			byte[] data = new byte[length];
+			buffer.get(data);
+			flatBuffer.putBytes(position, data);
+		}
+		return length;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+	}
+}
@@ -59,6 +59,20 @@ public class FlatChannels
 		return FileChannelFlatChannel.from(fileChannel);
 	}
 
+	/**
+	 * Wraps {@link FlatBuffer} to {@link FlatChannel}.  Closing the channel does not close the buffer.
+	 *
+	 * @param flatBuffer
+	 * 	underlying buffer.
+	 *
+	 * @return
+	 * 	wrapping {@link FlatChannel}.
+	 */
+	public static FlatChannel fromBuffer(FlatBuffer flatBuffer)
+	{
+		return FlatBufferFlatChannel.from(flatBuffer);
+	}
+
 	/**
 	 * Wraps {@link SeekableByteChannel} to {@link FlatChannel}. Note that this uses synchronized lock on the
 	 * underlying channel to achieve atomicity of seek and read/write. In case there is another piece of code which
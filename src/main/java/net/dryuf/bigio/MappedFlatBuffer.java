@@ -25,6 +25,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 
 import net.dryuf.bigio.file.CompositeMappedFlatBuffer;
+import net.dryuf.bigio.file.MemorySegmentFlatBuffer;
 import net.dryuf.bigio.file.SmallMappedFlatBuffer;
 
 
@@ -34,8 +35,31 @@ import net.dryuf.bigio.file.SmallMappedFlatBuffer;
 @SuppressWarnings("restriction")
 public abstract class MappedFlatBuffer extends AbstractFlatBuffer
 {
+	/**
+	 * Maps file area into FlatBuffer.  Uses {@link MemorySegmentFlatBuffer} when supported by runtime, otherwise
+	 * {@link SmallMappedFlatBuffer} or {@link CompositeMappedFlatBuffer}, depending on size.
+	 *
+	 * With {@link MemorySegmentFlatBuffer}, {@link #close()} unmaps the file immediately and any later access,
+	 * including through views returned by {@link #subByteBuffer(long, long)}, throws {@link IllegalStateException}.
+	 * The fallback implementations cannot unmap safely, their mappings stay until collected by garbage collector.
+	 *
+	 * @param channel
+	 * 	file channel
+	 * @param mode
+	 * 	mapping mode
+	 * @param offset
+	 * 	offset of area in file
+	 * @param length
+	 * 	length of area, negative for whole file
+	 *
+	 * @return
+	 * 	mapped buffer.
+	 */
 	public static MappedFlatBuffer from(FileChannel channel, FileChannel.MapMode mode, long offset, long length) throws IOException
 	{
+		if (MemorySegmentFlatBuffer.isSupported()) {
+			return new MemorySegmentFlatBuffer(channel, mode, offset, length);
+		}
 		long realLength = length < 0 ? channel.size() : length;
 		return realLength > Integer.MAX_VALUE ?
 			new CompositeMappedFlatBuffer(channel, mode, offset, length) :
@@ -0,0 +1,219 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio;
+
+import net.dryuf.bigio.file.BufferReleaser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * {@link FlatBuffer} in anonymous off-heap memory, allocated as series of direct {@link ByteBuffer}s, so it can
+ * exceed 2 GiB without any backing file.  The memory is released by {@link #close()}, or returned to the
+ * {@link Pool} the buffer was allocated from.
+ *
+ * As the memory is released or reused immediately, no other thread may access the buffer during or after close
+ * and ByteBuffers returned by {@link #subByteBuffer(long, long)} must not be used after close.  There is no guard,
+ * such view either points to freed memory, crashing the JVM, or, with {@link Pool}, silently aliases the content of
+ * another buffer reusing the block.
+ */
+public class OffHeapFlatBuffer extends AbstractBlockFlatBuffer
+{
+	/**
+	 * Allocates new zeroed off-heap buffer.
+	 *
+	 * @param size
+	 * 	size of buffer
+	 *
+	 * @return
+	 * 	new buffer, in big endian order.
+	 */
+	public static OffHeapFlatBuffer allocate(long size)
+	{
+		return new OffHeapFlatBuffer(size, null);
+	}
+
+	private OffHeapFlatBuffer(long size, Pool pool)
+	{
+		super(size);
+		this.pool = pool;
+		releaseEagerly(true);
+		try {
+			initBlocks();
+		}
+		catch (IOException ex) {
+			// Never thrown by createBlock, declared by the generic initBlocks only:
+			close();
+			throw new UncheckedIOException(ex);
+		}
+		catch (RuntimeException|Error ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	@Override
+	protected ByteBuffer createBlock(int index, int length)
+	{
+		return pool != null ? pool.take(length) : ByteBuffer.allocateDirect(length);
+	}
+
+	@Override
+	protected void releaseBlocks(ByteBuffer[] blocks)
+	{
+		if (pool != null) {
+			pool.recycle(blocks);
+		}
+		else {
+			super.releaseBlocks(blocks);
+		}
+	}
+
+	private final Pool pool;
+
+	/**
+	 * Pool of off-heap blocks.  Buffers allocated from the pool return their blocks on close, the pool retains them
+	 * up to configured amount of memory and releases the rest.
+	 *
+	 * Block sizes are rounded up to eight size classes per power of two, so a block wastes at most 12.5% of its
+	 * capacity.  Reused blocks are cleared, buffers allocated from the pool are zeroed like those from
+	 * {@link OffHeapFlatBuffer#allocate(long)}.  Closing a buffer hands its blocks to the next allocation
+	 * immediately, see {@link OffHeapFlatBuffer} for the consequences for views kept after close.
+	 */
+	public static class Pool implements AutoCloseable
+	{
+		/**
+		 * Creates pool.
+		 *
+		 * @param maxRetained
+		 * 	maximum amount of memory kept for reuse
+		 */
+		public Pool(long maxRetained)
+		{
+			this.maxRetained = maxRetained;
+		}
+
+		/**
+		 * Allocates buffer, reusing retained blocks when possible.
+		 *
+		 * @param size
+		 * 	size of buffer
+		 *
+		 * @return
+		 * 	new zeroed buffer, in big endian order.
+		 */
+		public OffHeapFlatBuffer allocate(long size)
+		{
+			return new OffHeapFlatBuffer(size, this);
+		}
+
+		/**
+		 * Gets amount of memory currently retained for reuse.
+		 *
+		 * @return
+		 * 	retained memory in bytes.
+		 */
+		public synchronized long getRetained()
+		{
+			return retained;
+		}
+
+		/**
+		 * Releases all retained blocks.  Blocks of buffers closed later are released immediately.
+		 */
+		@Override
+		public synchronized void close()
+		{
+			closed = true;
+			for (ArrayDeque<ByteBuffer> blocks: free.values()) {
+				for (ByteBuffer b; (b = blocks.pollFirst()) != null; ) {
+					BufferReleaser.release(b);
+				}
+			}
+			retained = 0;
+		}
+
+		ByteBuffer take(int length)
+		{
+			int capacity = roundCapacity(length);
+			ByteBuffer block;
+			synchronized (this) {
+				ArrayDeque<ByteBuffer> blocks = free.get(capacity);
+				block = blocks != null ? blocks.pollLast() : null;
+				if (block != null) {
+					retained -= capacity;
+				}
+			}
+			if (block == null) {
+				return ByteBuffer.allocateDirect(capacity);
+			}
+			for (int i = 0; i < length; i += ZEROS.capacity()) {
+				block.put(i, ZEROS, 0, Math.min(ZEROS.capacity(), length-i));
+			}
+			return block.clear();
+		}
+
+		synchronized void recycle(ByteBuffer[] blocks)
+		{
+			for (ByteBuffer b: blocks) {
+				if (b == null) {
+					continue;
+				}
+				if (!closed && retained+b.capacity() <= maxRetained) {
+					free.computeIfAbsent(b.capacity(), (Integer key) -> new ArrayDeque<>()).addLast(b);
+					retained += b.capacity();
+				}
+				else {
+					BufferReleaser.release(b);
+				}
+			}
+		}
+
+		/**
+		 * Rounds the length up to size class, dividing each power of two into eight steps.
+		 */
+		static int roundCapacity(int length)
+		{
+			if (length <= MIN_CAPACITY) {
+				return MIN_CAPACITY;
+			}
+			int step = Integer.highestOneBit(length-1) >>> 3;
+			return ((length-1) | (step-1)) + 1;
+		}
+
+		/** Smallest block capacity, 64 KiB. */
+		private static final int MIN_CAPACITY = 64*1024;
+
+		/** Source of zeroes for clearing reused blocks. */
+		private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(MIN_CAPACITY).asReadOnlyBuffer();
+
+		private final long maxRetained;
+
+		private final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+
+		private long retained;
+
+		private boolean closed;
+	}
+}
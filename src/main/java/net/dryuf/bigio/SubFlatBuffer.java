@@ -123,7 +123,7 @@ public class SubFlatBuffer extends AbstractFlatBuffer
 	public void getBytes(long pos, byte[] data, int offset, int length)
 	{
 		checkBounds(pos, length);
-		underlying.getBytes(offset+pos, data, offset, length);
+		underlying.getBytes(this.offset+pos, data, offset, length);
 	}
 
 	@Override
@@ -151,7 +151,177 @@ public class SubFlatBuffer extends AbstractFlatBuffer
 	public void putBytes(long pos, byte[] data, int offset, int length)
 	{
 		checkBounds(pos, length);
-		underlying.putBytes(offset+pos, data, offset, length);
+		underlying.putBytes(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void swapRegions(long pos0, long pos1, int length)
+	{
+		checkBounds(pos0, length);
+		checkBounds(pos1, length);
+		underlying.swapRegions(offset+pos0, offset+pos1, length);
+	}
+
+	@Override
+	public void getShorts(long pos, short[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<1);
+		underlying.getShorts(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void putShorts(long pos, short[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<1);
+		underlying.putShorts(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void getInts(long pos, int[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<2);
+		underlying.getInts(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void putInts(long pos, int[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<2);
+		underlying.putInts(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void getLongs(long pos, long[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<3);
+		underlying.getLongs(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void putLongs(long pos, long[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<3);
+		underlying.putLongs(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void getFloats(long pos, float[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<2);
+		underlying.getFloats(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void putFloats(long pos, float[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<2);
+		underlying.putFloats(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void getDoubles(long pos, double[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<3);
+		underlying.getDoubles(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public void putDoubles(long pos, double[] data, int offset, int length)
+	{
+		checkBounds(pos, (long) length<<3);
+		underlying.putDoubles(this.offset+pos, data, offset, length);
+	}
+
+	@Override
+	public int getIntVolatile(long pos)
+	{
+		checkBounds(pos, 4);
+		return underlying.getIntVolatile(offset+pos);
+	}
+
+	@Override
+	public void putIntVolatile(long pos, int val)
+	{
+		checkBounds(pos, 4);
+		underlying.putIntVolatile(offset+pos, val);
+	}
+
+	@Override
+	public int getIntAcquire(long pos)
+	{
+		checkBounds(pos, 4);
+		return underlying.getIntAcquire(offset+pos);
+	}
+
+	@Override
+	public void putIntRelease(long pos, int val)
+	{
+		checkBounds(pos, 4);
+		underlying.putIntRelease(offset+pos, val);
+	}
+
+	@Override
+	public boolean compareAndSetInt(long pos, int expected, int val)
+	{
+		checkBounds(pos, 4);
+		return underlying.compareAndSetInt(offset+pos, expected, val);
+	}
+
+	@Override
+	public int getAndAddInt(long pos, int delta)
+	{
+		checkBounds(pos, 4);
+		return underlying.getAndAddInt(offset+pos, delta);
+	}
+
+	@Override
+	public long getLongVolatile(long pos)
+	{
+		checkBounds(pos, 8);
+		return underlying.getLongVolatile(offset+pos);
+	}
+
+	@Override
+	public void putLongVolatile(long pos, long val)
+	{
+		checkBounds(pos, 8);
+		underlying.putLongVolatile(offset+pos, val);
+	}
+
+	@Override
+	public long getLongAcquire(long pos)
+	{
+		checkBounds(pos, 8);
+		return underlying.getLongAcquire(offset+pos);
+	}
+
+	@Override
+	public void putLongRelease(long pos, long val)
+	{
+		checkBounds(pos, 8);
+		underlying.putLongRelease(offset+pos, val);
+	}
+
+	@Override
+	public boolean compareAndSetLong(long pos, long expected, long val)
+	{
+		checkBounds(pos, 8);
+		return underlying.compareAndSetLong(offset+pos, expected, val);
+	}
+
+	@Override
+	public long getAndAddLong(long pos, long delta)
+	{
+		checkBounds(pos, 8);
+		return underlying.getAndAddLong(offset+pos, delta);
+	}
+
+	@Override
+	public void copyWithin(long sourcePos, long targetPos, long length)
+	{
+		checkBounds(sourcePos, length);
+		checkBounds(targetPos, length);
+		underlying.copyWithin(offset+sourcePos, offset+targetPos, length);
 	}
 
 	private void checkBounds(long pos, long size)
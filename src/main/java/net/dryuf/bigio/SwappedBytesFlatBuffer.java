@@ -72,4 +72,113 @@ public class SwappedBytesFlatBuffer extends AbstractDelegatingFlatBuffer
 	{
 		underlying.putLong(pos, Long.reverseBytes(val));
 	}
+
+	@Override
+	public int getIntVolatile(long pos)
+	{
+		return Integer.reverseBytes(underlying.getIntVolatile(pos));
+	}
+
+	@Override
+	public void putIntVolatile(long pos, int val)
+	{
+		underlying.putIntVolatile(pos, Integer.reverseBytes(val));
+	}
+
+	@Override
+	public int getIntAcquire(long pos)
+	{
+		return Integer.reverseBytes(underlying.getIntAcquire(pos));
+	}
+
+	@Override
+	public void putIntRelease(long pos, int val)
+	{
+		underlying.putIntRelease(pos, Integer.reverseBytes(val));
+	}
+
+	@Override
+	public boolean compareAndSetInt(long pos, int expected, int val)
+	{
+		return underlying.compareAndSetInt(pos, Integer.reverseBytes(expected), Integer.reverseBytes(val));
+	}
+
+	@Override
+	public int getAndAddInt(long pos, int delta)
+	{
+		for (;;) {
+			int current = underlying.getIntVolatile(pos);
+			if (underlying.compareAndSetInt(pos, current, Integer.reverseBytes(Integer.reverseBytes(current)+delta))) {
+				return Integer.reverseBytes(current);
+			}
+		}
+	}
+
+	@Override
+	public long getLongVolatile(long pos)
+	{
+		return Long.reverseBytes(underlying.getLongVolatile(pos));
+	}
+
+	@Override
+	public void putLongVolatile(long pos, long val)
+	{
+		underlying.putLongVolatile(pos, Long.reverseBytes(val));
+	}
+
+	@Override
+	public long getLongAcquire(long pos)
+	{
+		return Long.reverseBytes(underlying.getLongAcquire(pos));
+	}
+
+	@Override
+	public void putLongRelease(long pos, long val)
+	{
+		underlying.putLongRelease(pos, Long.reverseBytes(val));
+	}
+
+	@Override
+	public boolean compareAndSetLong(long pos, long expected, long val)
+	{
+		return underlying.compareAndSetLong(pos, Long.reverseBytes(expected), Long.reverseBytes(val));
+	}
+
+	@Override
+	public long getAndAddLong(long pos, long delta)
+	{
+		for (;;) {
+			long current = underlying.getLongVolatile(pos);
+			if (underlying.compareAndSetLong(pos, current, Long.reverseBytes(Long.reverseBytes(current)+delta))) {
+				return Long.reverseBytes(current);
+			}
+		}
+	}
+
+	@Override
+	public void getShorts(long pos, short[] data, int offset, int length)
+	{
+		underlying.getShorts(pos, data, offset, length);
+		for (int i = offset; i < offset+length; ++i) {
+			data[i] = Short.reverseBytes(data[i]);
+		}
+	}
+
+	@Override
+	public void getInts(long pos, int[] data, int offset, int length)
+	{
+		underlying.getInts(pos, data, offset, length);
+		for (int i = offset; i < offset+length; ++i) {
+			data[i] = Integer.reverseBytes(data[i]);
+		}
+	}
+
+	@Override
+	public void getLongs(long pos, long[] data, int offset, int length)
+	{
+		underlying.getLongs(pos, data, offset, length);
+		for (int i = offset; i < offset+length; ++i) {
+			data[i] = Long.reverseBytes(data[i]);
+		}
+	}
 }
@@ -0,0 +1,81 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.file;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Deterministic release of mapped and direct {@link ByteBuffer}s.  Uses {@code sun.misc.Unsafe.invokeCleaner},
+ * which is available in jdk.unsupported module without additional opens.  The method is looked up reflectively,
+ * so the build does not depend on proprietary API.  If it is not available, the release is left to garbage
+ * collector.
+ *
+ * The released buffer must not be accessed anymore, including its slices and duplicates, as it would crash the JVM.
+ */
+public class BufferReleaser
+{
+	/**
+	 * Releases the memory or mapping of direct buffer.
+	 *
+	 * @param buffer
+	 * 	buffer to release, must be the original buffer, not slice or duplicate
+	 *
+	 * @return
+	 * 	true if the buffer was released, false if releasing is not supported.
+	 */
+	public static boolean release(ByteBuffer buffer)
+	{
+		if (INVOKE_CLEANER == null || !buffer.isDirect()) {
+			return false;
+		}
+		try {
+			INVOKE_CLEANER.invokeExact(buffer);
+		}
+		catch (RuntimeException|Error ex) {
+			throw ex;
+		}
+		catch (Throwable ex) {
+			throw new IllegalStateException("Failed to release buffer", ex);
+		}
+		return true;
+	}
+
+	private static final MethodHandle INVOKE_CLEANER;
+
+	static {
+		MethodHandle invokeCleaner;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			invokeCleaner = MethodHandles.lookup()
+				.findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+				.bindTo(field.get(null));
+		}
+		catch (ReflectiveOperationException|RuntimeException|LinkageError ex) {
+			invokeCleaner = null;
+		}
+		INVOKE_CLEANER = invokeCleaner;
+	}
+}
@@ -18,398 +18,116 @@
 
 package net.dryuf.bigio.file;
 
+import net.dryuf.bigio.AbstractBlockFlatBuffer;
 import net.dryuf.bigio.MappedFlatBuffer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 
 /**
  * {@link MappedFlatBuffer} based on series of {@link java.nio.MappedByteBuffer}.
  */
-public class CompositeMappedFlatBuffer extends MappedFlatBuffer
+public class CompositeMappedFlatBuffer extends AbstractBlockFlatBuffer
 {
 	public CompositeMappedFlatBuffer(FileChannel channel, FileChannel.MapMode mode, long offset, long len) throws IOException
 	{
-		if (len < 0) {
-			len = channel.size();
-		}
-		if (len > (long) Integer.MAX_VALUE* BLOCK_SIZE) {
-			throw new IllegalArgumentException("Too big mapping, max supported size is 2^62-2^30, provided: 0x"+Long.toHexString(len));
-		}
-		buffers = new ByteBuffer[(int)((len-1)/ BLOCK_SIZE +1)];
-		this.size = len;
-		for (int i = 0; i < buffers.length-1; ++i) {
-			buffers[i] = channel.map(mode, offset+i*(long) BLOCK_SIZE, BLOCK_SIZE);
-		}
-		buffers[buffers.length-1] = channel.map(mode, offset+(buffers.length-1)*(long) BLOCK_SIZE, size-((buffers.length)-1)*(long) BLOCK_SIZE);
-		isBigEndian = buffers.length > 0 ? buffers[0].order() == ByteOrder.BIG_ENDIAN : true;
-	}
-
-	@Override
-	public synchronized void close()
-	{
-		if (isClosed)
-			return;
-		isClosed = true;
-	}
-
-	@Override
-	public long size()
-	{
-		return this.size;
-	}
-
-	@Override
-	public ByteOrder getByteOrder()
-	{
-		return isBigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
-	}
-
-	@Override
-	public MappedFlatBuffer order(ByteOrder order)
-	{
-		for (ByteBuffer b: buffers) {
-			b.order(order);
-		}
-		isBigEndian = order.equals(ByteOrder.BIG_ENDIAN);
-		return this;
-	}
-
-	@Override
-	public byte getByte(long pos)
-	{
-		checkSafeLengthBounds(pos, 1);
-		ByteBuffer buf0 = findBuffer(pos);
-		return buf0.get(localPos(pos));
-	}
-
-	@Override
-	public short getShort(long pos)
-	{
-		checkSafeLengthBounds(pos, 2);
-		ByteBuffer buf0 = findBuffer(pos);
-		if (((pos+1)&(BLOCK_MASK&~1)) != 0) {
-			return buf0.getShort(localPos(pos));
-		}
-		else {
-			ByteBuffer buf1 = findBuffer(pos+1);
-			return (short) (!isBigEndian ?
-					(buf0.get(localPos(pos))&0xff) | buf1.get(localPos(pos+1))<<8 :
-					buf0.get(localPos(pos))<<8 | buf1.get(localPos(pos+1))&0xff);
-		}
-	}
-
-	@Override
-	public int getInt(long pos)
-	{
-		checkSafeLengthBounds(pos, 4);
-		if (((pos+3)&(BLOCK_MASK&~3)) != 0) {
-			ByteBuffer buf0 = findBuffer(pos);
-			return buf0.getInt(localPos(pos));
-		}
-		else {
-			return (!isBigEndian ?
-					(getShort(pos)&0xffff | getShort(pos+2)<<16) :
-					(getShort(pos)<<16 | getShort(pos+2)&0xffff));
-		}
-
-	}
-
-	@Override
-	public long getLong(long pos)
-	{
-		checkSafeLengthBounds(pos, 8);
-		if (((pos+7)&(BLOCK_MASK&~7)) != 0) {
-			ByteBuffer buf0 = findBuffer(pos);
-			return buf0.getLong(localPos(pos));
-		}
-		else {
-			return (!isBigEndian ?
-					(getInt(pos)&0xffffffffL | (long) getInt(pos+4)<<32) :
-					((long) getInt(pos)<<32 | getInt(pos+4)&0xffffffffL));
-		}
-	}
-
-	@Override
-	public void getBytes(long pos, byte[] data, int offset, int length)
-	{
-		checkBounds(pos, length);
-		if ((offset|(offset+length)|(data.length-length-offset)) < 0) {
-			if (offset < 0) {
-				throw new IndexOutOfBoundsException("offset out of bounds: "+offset);
-			}
-			if (length < 0 || offset+length < 0 || offset+length > data.length) {
-				throw new IndexOutOfBoundsException("length out of bounds: "+length);
-			}
-		}
-		ByteBuffer buf0 = findBuffer(pos);
-		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
-			getFromPosition(buf0, localPos(pos), data, offset, length);
-		}
-		else {
-			ByteBuffer bufLast = findBuffer(pos+length-1);
-			int i = BLOCK_SIZE -localPos(pos);
-			getFromPosition(buf0, localPos(pos), data, offset, i);
-			for (;;) {
-				ByteBuffer bufMid = findBuffer(pos+i);
-				if (bufMid == bufLast)
-					break;
-				getFromPosition(bufMid, 0, data, offset+i, BLOCK_SIZE);
-				i += BLOCK_SIZE;
-			}
-			getFromPosition(bufLast, 0, data, offset+i, length-i);
-		}
-	}
-
-	@Override
-	public void getByteBuffer(long pos, ByteBuffer bufferRead)
-	{
-		if (bufferRead.hasArray()) {
-			getBytes(pos, bufferRead.array(), bufferRead.arrayOffset() + bufferRead.position(), bufferRead.limit() - bufferRead.position());
-		}
-		else {
-			for (int r = bufferRead.limit() - bufferRead.position(); r > 0; --r) {
-				bufferRead.put(getByte(pos + r));
-			}
-		}
-	}
-
-	@Override
-	public ByteBuffer subByteBuffer(long pos, long length)
-	{
-		checkBounds(pos, Math.toIntExact(length));
-		ByteBuffer buf0 = findBuffer(pos);
-		if (length == 0 || ((pos+length-1)&BLOCK_MASK) >= length-1) {
-			return buf0.slice(((int) pos & BLOCK_MASK), (int) length)
-					.order(getByteOrder());
-		}
-		else {
-			byte[] bytes = new byte[(int) length];
-			getBytes(pos, bytes);
-			return ByteBuffer.wrap(bytes)
-				.order(getByteOrder());
-		}
+		this(channel, mode, offset, len, false);
 	}
 
-	@Override
-	public void putByteBuffer(long pos, ByteBuffer buffer)
+	/**
+	 * Creates buffer mapping the file area in blocks.
+	 *
+	 * @param channel
+	 * 	file channel, must stay open as long as the buffer is used if lazy mapping is enabled
+	 * @param mode
+	 * 	mapping mode
+	 * @param offset
+	 * 	offset of area in file
+	 * @param len
+	 * 	length of area, negative for whole file
+	 * @param lazy
+	 * 	whether to map the blocks on first access instead of mapping all of them up front
+	 */
+	public CompositeMappedFlatBuffer(FileChannel channel, FileChannel.MapMode mode, long offset, long len, boolean lazy) throws IOException
 	{
-		int length = buffer.remaining();
-		checkBounds(pos, length);
-		ByteBuffer buf0 = findBuffer(pos);
-		if (length == 0 || ((pos+length-1)&BLOCK_MASK) >= length-1) {
-			buf0.put(((int) pos & BLOCK_MASK), buffer, buffer.position(), length);
+		super(len < 0 ? channel.size() : len);
+		this.channel = channel;
+		this.mode = mode;
+		this.offset = offset;
+		if (!lazy) {
+			initBlocks();
 		}
-		else {
-			buf0.put((int) pos & BLOCK_MASK, buffer, buffer.position(), BLOCK_SIZE - ((int) pos & BLOCK_MASK));
-			ByteBuffer buf1 = findBuffer((pos | BLOCK_MASK) + 1);
-			buf1.put(0, buffer, buffer.position() + (BLOCK_SIZE - ((int) pos & BLOCK_MASK)), length - (BLOCK_SIZE - ((int) pos & BLOCK_MASK)));
-		}
-		buffer.position(buffer.position() + length);
 	}
 
 	@Override
-	public void putByte(long pos, byte val)
+	public CompositeMappedFlatBuffer releaseEagerly(boolean releaseEagerly)
 	{
-		checkSafeLengthBounds(pos, 1);
-		ByteBuffer buf0 = findBuffer(pos);
-		buf0.put(localPos(pos), val);
-	}
-
-	@Override
-	public void putShort(long pos, short val)
-	{
-		checkSafeLengthBounds(pos, 2);
-		ByteBuffer buf0 = findBuffer(pos);
-		if (((pos+1)&(BLOCK_MASK&~1)) != 0) {
-			buf0.putShort(localPos(pos), val);
-		}
-		else {
-			ByteBuffer buf1 = findBuffer(pos+1);
-			buf0.put(localPos(pos), (byte) (!isBigEndian ? val : val>>>8));
-			buf1.put(localPos(pos+1), (byte) (!isBigEndian ? val>>>8 : val));
-		}
-	}
-
-	@Override
-	public void putInt(long pos, int val)
-	{
-		checkSafeLengthBounds(pos, 4);
-		if (((pos+3)&(BLOCK_MASK&~3)) != 0) {
-			ByteBuffer buf0 = findBuffer(pos);
-			buf0.putInt(localPos(pos), val);
-		}
-		else {
-			putShort(pos, (short) (!isBigEndian ? val : (val>>>16)));
-			putShort(pos+2, (short) (!isBigEndian ? val>>>16 : val));
-		}
-	}
-
-	@Override
-	public void putLong(long pos, long val)
-	{
-		checkSafeLengthBounds(pos, 8);
-		if (((pos+7)&(BLOCK_MASK&~7)) != 0) {
-			ByteBuffer buf0 = findBuffer(pos);
-			buf0.putLong(localPos(pos), val);
-		}
-		else {
-			putInt(pos, (int) (!isBigEndian ? val : (val>>>32)));
-			putInt(pos+4, (int) (!isBigEndian ? val>>>32 : val));
-		}
+		super.releaseEagerly(releaseEagerly);
+		return this;
 	}
 
-	@Override
-	public void putBytes(long pos, byte[] data, int offset, int length)
-	{
-		if ((offset|(offset+length)|(data.length-length-offset)) < 0) {
-			if (offset < 0) {
-				throw new IndexOutOfBoundsException("offset out of bounds: "+offset);
+	/**
+	 * Changes size of the buffer.  New blocks are mapped and the last block is remapped if its length changes,
+	 * mapping in read-write mode extends the file as needed.  The replaced and dropped blocks are released if
+	 * enabled by {@link #releaseEagerly(boolean)}, otherwise they are left to garbage collector, so the concurrent
+	 * readers of the retained area keep working.
+	 *
+	 * @param len
+	 * 	new length of buffer
+	 *
+	 * @throws IOException
+	 * 	if mapping fails
+	 */
+	synchronized void resize(long len) throws IOException
+	{
+		if (len < 0 || len > (long) Integer.MAX_VALUE*BLOCK_SIZE) {
+			throw new IllegalArgumentException("Invalid size, max supported size is 2^62-2^30, provided: 0x"+Long.toHexString(len));
+		}
+		ByteBuffer[] original = getBlocks();
+		ByteBuffer[] resized = Arrays.copyOf(original, (int)((len-1)/BLOCK_SIZE +1));
+		for (int i = 0; i < resized.length; ++i) {
+			long blockLength = Math.min(BLOCK_SIZE, len-i*(long) BLOCK_SIZE);
+			if (resized[i] == null ? i >= original.length : resized[i].capacity() != blockLength) {
+				resized[i] = channel.map(mode, offset+i*(long) BLOCK_SIZE, blockLength);
 			}
-			if (length < 0 || offset+length < 0 || offset+length >= data.length) {
-				throw new IndexOutOfBoundsException("length out of bounds: "+length);
-			}
-		}
-		checkBounds(pos, length);
-		ByteBuffer buf0 = findBuffer(pos);
-		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
-			putToPosition(buf0, localPos(pos), data, offset, length);
-		}
-		else {
-			ByteBuffer bufLast = findBuffer(pos+length-1);
-			int i = BLOCK_SIZE -localPos(pos);
-			putToPosition(buf0, localPos(pos), data, offset, i);
-			for (;;) {
-				ByteBuffer bufMid = findBuffer(pos+i);
-				if (bufMid == bufLast)
-					break;
-				putToPosition(bufMid, 0, data, offset+i, BLOCK_SIZE);
-				i += BLOCK_SIZE;
-			}
-			putToPosition(bufLast, 0, data, offset+i, length-i);
 		}
+		replaceBlocks(resized, len);
 	}
 
 	@Override
-	public boolean equalsBytes(long pos, byte[] data, int offset, int length)
+	protected ByteBuffer createBlock(int index, int length) throws IOException
 	{
-		ByteBuffer buf0 = findBuffer(pos);
-		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
-			return equalsAtPosition(buf0, localPos(pos), data, offset, length);
-		}
-		else {
-			ByteBuffer bufLast = findBuffer(pos+length-1);
-			int i = BLOCK_SIZE -localPos(pos);
-			if (!equalsAtPosition(buf0, localPos(pos), data, offset, i))
-				return false;
-			for (;;) {
-				ByteBuffer bufMid = findBuffer(pos+i);
-				if (bufMid == bufLast)
-					break;
-				if (!equalsAtPosition(bufMid, 0, data, offset+i, BLOCK_SIZE))
-					return false;
-				i += BLOCK_SIZE;
-			}
-			return equalsAtPosition(bufLast, 0, data, offset+i, length-i);
-		}
+		return channel.map(mode, offset+index*(long) BLOCK_SIZE, length);
 	}
 
-	@Override
-	public int compareBytes(long pos, byte[] data, int offset, int length)
+	/**
+	 * Gets the mapped file channel.
+	 *
+	 * @return
+	 * 	file channel.
+	 */
+	protected FileChannel getChannel()
 	{
-		ByteBuffer buf0 = findBuffer(pos);
-		if (length == 0 || ((pos+length-1)& BLOCK_MASK) >= length-1) {
-			return compareAtPosition(buf0, localPos(pos), data, offset, length);
-		}
-		else {
-			ByteBuffer bufLast = findBuffer(pos+length-1);
-			int i = BLOCK_SIZE -localPos(pos);
-			int r;
-			if ((r = compareAtPosition(buf0, localPos(pos), data, offset, i)) != 0)
-				return r;
-			for (;;) {
-				ByteBuffer bufMid = findBuffer(pos+i);
-				if (bufMid == bufLast)
-					break;
-				if ((r = compareAtPosition(bufMid, 0, data, offset+i, BLOCK_SIZE)) != 0)
-					return r;
-				i += BLOCK_SIZE;
-			}
-			return compareAtPosition(bufLast, 0, data, offset+i, length-i);
-		}
-	}
-
-	private void checkSafeLengthBounds(long pos, int length)
-	{
-		if ((pos|(this.size-length-pos)) < 0) {
-			if (pos < 0) {
-				throw new IndexOutOfBoundsException("position out of bounds: "+pos);
-			}
-			if (length < 0 || pos+length < 0 || pos+length > this.size) {
-				throw new IndexOutOfBoundsException("length out of bounds: "+length);
-			}
-		}
-	}
-
-	private void checkBounds(long pos, int length)
-	{
-		if ((pos|length|(pos+length)|(this.size-length-pos)) < 0) {
-			if (pos < 0) {
-				throw new IndexOutOfBoundsException("position out of bounds: "+pos);
-			}
-			if (length < 0 || pos+length < 0 || pos+length > this.size) {
-				throw new IndexOutOfBoundsException("length out of bounds: "+length);
-			}
-		}
-	}
-
-	private ByteBuffer findBuffer(long pos)
-	{
-		return buffers[(int)(pos/ BLOCK_SIZE)];
-	}
-
-	private static int localPos(long pos)
-	{
-		return (int) pos & BLOCK_MASK;
-	}
-
-	private static void getFromPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
-	{
-		buf.get(pos, data, offset, length);
+		return this.channel;
 	}
 
-	private static void putToPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
+	/**
+	 * Gets the offset of mapped area in file.
+	 *
+	 * @return
+	 * 	offset of area in file.
+	 */
+	protected long getOffset()
 	{
-		buf.put(pos, data, offset, length);
+		return this.offset;
 	}
 
-	private static boolean equalsAtPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
-	{
-		ByteBuffer dup = buf.duplicate();
-		dup.position(pos);
-		dup.limit(pos+length);
-		return dup.equals(ByteBuffer.wrap(data, offset, length));
-	}
-
-	private static int compareAtPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
-	{
-		ByteBuffer dup = buf.duplicate();
-		dup.position(pos);
-		dup.limit(pos+length);
-		return dup.compareTo(ByteBuffer.wrap(data, offset, length));
-	}
-
-	static final int BLOCK_SIZE = 1024*1024*1024;
-	static final int BLOCK_MASK = BLOCK_SIZE -1;
-
-	private final long size;
-
-	private boolean isBigEndian = true;
+	private final FileChannel channel;
 
-	private ByteBuffer buffers[];
+	private final FileChannel.MapMode mode;
 
-	private boolean isClosed = false;
+	private final long offset;
 }
@@ -0,0 +1,100 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * {@link CompositeMappedFlatBuffer} which can grow, extending the file and mapping new blocks without copying the
+ * existing data.  Writes past the end do not grow the buffer implicitly, the writer calls
+ * {@link #ensureCapacity(long)} first and {@link #truncate(long)} to trim the file to its final length.
+ *
+ * By default, blocks replaced while growing are left to garbage collector, so concurrent readers keep working.
+ * With {@link #releaseEagerly(boolean)} enabled, the replaced blocks are released immediately by
+ * {@link #ensureCapacity(long)} and {@link #truncate(long)}, which then must not run concurrently with readers.
+ * Readers see the grown area once they synchronize with the writer, typically by reading the published length
+ * with {@link #getLongAcquire(long)} after writer stored it with {@link #putLongRelease(long, long)}.
+ */
+public class GrowableMappedFlatBuffer extends CompositeMappedFlatBuffer
+{
+	/**
+	 * Maps the file area from offset to the current end of file.
+	 *
+	 * @param channel
+	 * 	file channel, opened for reading and writing, must stay open as long as the buffer is used
+	 * @param offset
+	 * 	offset of area in file
+	 *
+	 * @throws IOException
+	 * 	if mapping fails
+	 */
+	public GrowableMappedFlatBuffer(FileChannel channel, long offset) throws IOException
+	{
+		super(channel, FileChannel.MapMode.READ_WRITE, offset, Math.max(0, channel.size()-offset));
+	}
+
+	/**
+	 * Ensures the buffer is at least of given size, extending the file if needed.  The growth is geometric, up to
+	 * the block size, so the resulting size may be bigger than requested.
+	 *
+	 * @param capacity
+	 * 	requested minimal size
+	 *
+	 * @throws IOException
+	 * 	if extending the file or mapping fails
+	 */
+	public synchronized void ensureCapacity(long capacity) throws IOException
+	{
+		long current = size();
+		if (capacity <= current) {
+			return;
+		}
+		resize(Math.max(capacity, current+Math.min(Math.max(current, MIN_GROWTH), BLOCK_SIZE)));
+	}
+
+	/**
+	 * Truncates the buffer and the file to given length.  Does nothing if the buffer is already shorter.
+	 *
+	 * Unlike growing, truncating is not safe for concurrent readers in either mode.  With
+	 * {@link #releaseEagerly(boolean)} enabled, the dropped blocks are unmapped before the file is truncated.  By
+	 * default they stay mapped until garbage collected, so a reader still holding them, racing with this call or
+	 * using a ByteBuffer previously returned by {@link #subByteBuffer(long, long)} over the truncated area, touches
+	 * pages past the end of file and the JVM fails with SIGBUS instead of throwing exception.  The caller must
+	 * guarantee no such access happens after truncating.
+	 *
+	 * @param length
+	 * 	new length of buffer
+	 *
+	 * @throws IOException
+	 * 	if truncating the file or mapping fails
+	 */
+	public synchronized void truncate(long length) throws IOException
+	{
+		if (length >= size()) {
+			return;
+		}
+		resize(length);
+		getChannel().truncate(getOffset()+length);
+	}
+
+	/** Minimal growth of buffer, 1 MiB. */
+	private static final long MIN_GROWTH = 1024*1024;
+}
@@ -0,0 +1,802 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.file;
+
+import net.dryuf.bigio.MappedFlatBuffer;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+
+
+/**
+ * {@link MappedFlatBuffer} mapping the whole area as single {@code java.lang.foreign.MemorySegment}, allocated in
+ * shared {@code Arena}.  There is no block lookup nor boundary handling, the accessors go directly to
+ * {@code ValueLayout} accessors in the byte order of this buffer.
+ *
+ * The Foreign Function and Memory API is final since JDK 22 while the project builds for JDK 17, therefore the API
+ * is accessed through method handles resolved at runtime.  {@link MappedFlatBuffer#from} chooses this
+ * implementation when {@link #isSupported()}, otherwise it falls back to {@link SmallMappedFlatBuffer} and
+ * {@link CompositeMappedFlatBuffer}.
+ *
+ * {@link #close()} unmaps the file immediately.  Any later access through this buffer, from any thread, including
+ * ByteBuffers previously returned by {@link #subByteBuffer(long, long)}, throws {@link IllegalStateException}.
+ */
+public class MemorySegmentFlatBuffer extends MappedFlatBuffer
+{
+	/**
+	 * Creates buffer mapping the file area.
+	 *
+	 * @param channel
+	 * 	file channel, may be closed once the buffer is created
+	 * @param mode
+	 * 	mapping mode
+	 * @param offset
+	 * 	offset of area in file
+	 * @param len
+	 * 	length of area, negative for whole file
+	 *
+	 * @throws UnsupportedOperationException
+	 * 	if Foreign Function and Memory API is not available
+	 */
+	public MemorySegmentFlatBuffer(FileChannel channel, FileChannel.MapMode mode, long offset, long len) throws IOException
+	{
+		if (!AVAILABLE) {
+			throw new UnsupportedOperationException("Foreign Function and Memory API not available");
+		}
+		if (len < 0) {
+			len = channel.size();
+		}
+		this.size = len;
+		Object arena = invokeArenaOfShared();
+		try {
+			this.segment = Ffm.MAP.invokeExact(channel, mode, offset, len, arena);
+		}
+		catch (IOException|RuntimeException|Error ex) {
+			closeArena(arena);
+			throw ex;
+		}
+		catch (Throwable ex) {
+			closeArena(arena);
+			throw rethrow(ex);
+		}
+		this.arena = arena;
+	}
+
+	/**
+	 * Checks whether the implementation is supported by current runtime and is therefore chosen by
+	 * {@link MappedFlatBuffer#from}.  It requires JDK 22 or later, where the Foreign Function and Memory API is
+	 * final.
+	 *
+	 * @return
+	 * 	true if supported.
+	 */
+	public static boolean isSupported()
+	{
+		return AVAILABLE && Runtime.version().feature() >= 22;
+	}
+
+	/**
+	 * Checks whether the Foreign Function and Memory API can be used at all, including preview versions.
+	 */
+	static boolean isAvailable()
+	{
+		return AVAILABLE;
+	}
+
+	/**
+	 * Closes the buffer and unmaps the file immediately.  Accesses racing with close, on this buffer or on views
+	 * returned by {@link #subByteBuffer(long, long)}, either complete before the unmapping or throw
+	 * {@link IllegalStateException}, they never touch the unmapped memory.
+	 *
+	 * The runtime refuses closing while other thread is in the middle of access or while the memory is used by
+	 * I/O operation on a view, close therefore retries until the memory is released.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (isClosed)
+			return;
+		for (;;) {
+			try {
+				closeArena(arena);
+				break;
+			}
+			catch (IllegalStateException ex) {
+				Thread.yield();
+			}
+		}
+		isClosed = true;
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+
+	@Override
+	public ByteOrder getByteOrder()
+	{
+		return isBigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+	}
+
+	@Override
+	public MappedFlatBuffer order(ByteOrder order)
+	{
+		isBigEndian = order.equals(ByteOrder.BIG_ENDIAN);
+		return this;
+	}
+
+	@Override
+	public byte getByte(long pos)
+	{
+		checkRange(pos, 1);
+		try {
+			return (byte) Ffm.GET_BYTE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public short getShort(long pos)
+	{
+		checkRange(pos, 2);
+		try {
+			return isBigEndian ? (short) Ffm.GET_SHORT_BE.invokeExact(segment, pos) : (short) Ffm.GET_SHORT_LE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public int getInt(long pos)
+	{
+		checkRange(pos, 4);
+		try {
+			return isBigEndian ? (int) Ffm.GET_INT_BE.invokeExact(segment, pos) : (int) Ffm.GET_INT_LE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public long getLong(long pos)
+	{
+		checkRange(pos, 8);
+		try {
+			return isBigEndian ? (long) Ffm.GET_LONG_BE.invokeExact(segment, pos) : (long) Ffm.GET_LONG_LE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putByte(long pos, byte val)
+	{
+		checkRange(pos, 1);
+		try {
+			Ffm.PUT_BYTE.invokeExact(segment, pos, val);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putShort(long pos, short val)
+	{
+		checkRange(pos, 2);
+		try {
+			if (isBigEndian) {
+				Ffm.PUT_SHORT_BE.invokeExact(segment, pos, val);
+			}
+			else {
+				Ffm.PUT_SHORT_LE.invokeExact(segment, pos, val);
+			}
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putInt(long pos, int val)
+	{
+		checkRange(pos, 4);
+		try {
+			if (isBigEndian) {
+				Ffm.PUT_INT_BE.invokeExact(segment, pos, val);
+			}
+			else {
+				Ffm.PUT_INT_LE.invokeExact(segment, pos, val);
+			}
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putLong(long pos, long val)
+	{
+		checkRange(pos, 8);
+		try {
+			if (isBigEndian) {
+				Ffm.PUT_LONG_BE.invokeExact(segment, pos, val);
+			}
+			else {
+				Ffm.PUT_LONG_LE.invokeExact(segment, pos, val);
+			}
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void getBytes(long pos, byte[] data, int offset, int length)
+	{
+		copyToArray(pos, Ffm.BYTE, 0, data, offset, length, data.length);
+	}
+
+	@Override
+	public void putBytes(long pos, byte[] data, int offset, int length)
+	{
+		copyFromArray(pos, Ffm.BYTE, 0, data, offset, length, data.length);
+	}
+
+	@Override
+	public void getShorts(long pos, short[] data, int offset, int length)
+	{
+		copyToArray(pos, isBigEndian ? Ffm.SHORT_BE : Ffm.SHORT_LE, 1, data, offset, length, data.length);
+	}
+
+	@Override
+	public void putShorts(long pos, short[] data, int offset, int length)
+	{
+		copyFromArray(pos, isBigEndian ? Ffm.SHORT_BE : Ffm.SHORT_LE, 1, data, offset, length, data.length);
+	}
+
+	@Override
+	public void getInts(long pos, int[] data, int offset, int length)
+	{
+		copyToArray(pos, isBigEndian ? Ffm.INT_BE : Ffm.INT_LE, 2, data, offset, length, data.length);
+	}
+
+	@Override
+	public void putInts(long pos, int[] data, int offset, int length)
+	{
+		copyFromArray(pos, isBigEndian ? Ffm.INT_BE : Ffm.INT_LE, 2, data, offset, length, data.length);
+	}
+
+	@Override
+	public void getLongs(long pos, long[] data, int offset, int length)
+	{
+		copyToArray(pos, isBigEndian ? Ffm.LONG_BE : Ffm.LONG_LE, 3, data, offset, length, data.length);
+	}
+
+	@Override
+	public void putLongs(long pos, long[] data, int offset, int length)
+	{
+		copyFromArray(pos, isBigEndian ? Ffm.LONG_BE : Ffm.LONG_LE, 3, data, offset, length, data.length);
+	}
+
+	@Override
+	public void getFloats(long pos, float[] data, int offset, int length)
+	{
+		copyToArray(pos, isBigEndian ? Ffm.FLOAT_BE : Ffm.FLOAT_LE, 2, data, offset, length, data.length);
+	}
+
+	@Override
+	public void putFloats(long pos, float[] data, int offset, int length)
+	{
+		copyFromArray(pos, isBigEndian ? Ffm.FLOAT_BE : Ffm.FLOAT_LE, 2, data, offset, length, data.length);
+	}
+
+	@Override
+	public void getDoubles(long pos, double[] data, int offset, int length)
+	{
+		copyToArray(pos, isBigEndian ? Ffm.DOUBLE_BE : Ffm.DOUBLE_LE, 3, data, offset, length, data.length);
+	}
+
+	@Override
+	public void putDoubles(long pos, double[] data, int offset, int length)
+	{
+		copyFromArray(pos, isBigEndian ? Ffm.DOUBLE_BE : Ffm.DOUBLE_LE, 3, data, offset, length, data.length);
+	}
+
+	@Override
+	public void getByteBuffer(long pos, ByteBuffer bufferRead)
+	{
+		int length = bufferRead.remaining();
+		bufferRead.put(bufferRead.position(), subByteBuffer(pos, length), 0, length);
+	}
+
+	@Override
+	public void putByteBuffer(long pos, ByteBuffer buffer)
+	{
+		int length = buffer.remaining();
+		subByteBuffer(pos, length).put(0, buffer, buffer.position(), length);
+		buffer.position(buffer.position() + length);
+	}
+
+	@Override
+	public ByteBuffer subByteBuffer(long pos, long length)
+	{
+		checkRange(pos, Math.toIntExact(length));
+		try {
+			return ((ByteBuffer) Ffm.AS_BYTE_BUFFER.invokeExact(Ffm.AS_SLICE.invokeExact(segment, pos, length)))
+				.order(getByteOrder());
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public int getIntVolatile(long pos)
+	{
+		checkAtomic(pos, 4);
+		try {
+			return isBigEndian ? (int) Ffm.INT_BE_GET_VOLATILE.invokeExact(segment, pos) : (int) Ffm.INT_LE_GET_VOLATILE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putIntVolatile(long pos, int val)
+	{
+		checkAtomic(pos, 4);
+		try {
+			if (isBigEndian) {
+				Ffm.INT_BE_SET_VOLATILE.invokeExact(segment, pos, val);
+			}
+			else {
+				Ffm.INT_LE_SET_VOLATILE.invokeExact(segment, pos, val);
+			}
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public int getIntAcquire(long pos)
+	{
+		checkAtomic(pos, 4);
+		try {
+			return isBigEndian ? (int) Ffm.INT_BE_GET_ACQUIRE.invokeExact(segment, pos) : (int) Ffm.INT_LE_GET_ACQUIRE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putIntRelease(long pos, int val)
+	{
+		checkAtomic(pos, 4);
+		try {
+			if (isBigEndian) {
+				Ffm.INT_BE_SET_RELEASE.invokeExact(segment, pos, val);
+			}
+			else {
+				Ffm.INT_LE_SET_RELEASE.invokeExact(segment, pos, val);
+			}
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public boolean compareAndSetInt(long pos, int expected, int val)
+	{
+		checkAtomic(pos, 4);
+		try {
+			return isBigEndian ? (boolean) Ffm.INT_BE_COMPARE_AND_SET.invokeExact(segment, pos, expected, val) : (boolean) Ffm.INT_LE_COMPARE_AND_SET.invokeExact(segment, pos, expected, val);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public int getAndAddInt(long pos, int delta)
+	{
+		checkAtomic(pos, 4);
+		try {
+			return isBigEndian ? (int) Ffm.INT_BE_GET_AND_ADD.invokeExact(segment, pos, delta) : (int) Ffm.INT_LE_GET_AND_ADD.invokeExact(segment, pos, delta);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public long getLongVolatile(long pos)
+	{
+		checkAtomic(pos, 8);
+		try {
+			return isBigEndian ? (long) Ffm.LONG_BE_GET_VOLATILE.invokeExact(segment, pos) : (long) Ffm.LONG_LE_GET_VOLATILE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putLongVolatile(long pos, long val)
+	{
+		checkAtomic(pos, 8);
+		try {
+			if (isBigEndian) {
+				Ffm.LONG_BE_SET_VOLATILE.invokeExact(segment, pos, val);
+			}
+			else {
+				Ffm.LONG_LE_SET_VOLATILE.invokeExact(segment, pos, val);
+			}
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public long getLongAcquire(long pos)
+	{
+		checkAtomic(pos, 8);
+		try {
+			return isBigEndian ? (long) Ffm.LONG_BE_GET_ACQUIRE.invokeExact(segment, pos) : (long) Ffm.LONG_LE_GET_ACQUIRE.invokeExact(segment, pos);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void putLongRelease(long pos, long val)
+	{
+		checkAtomic(pos, 8);
+		try {
+			if (isBigEndian) {
+				Ffm.LONG_BE_SET_RELEASE.invokeExact(segment, pos, val);
+			}
+			else {
+				Ffm.LONG_LE_SET_RELEASE.invokeExact(segment, pos, val);
+			}
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public boolean compareAndSetLong(long pos, long expected, long val)
+	{
+		checkAtomic(pos, 8);
+		try {
+			return isBigEndian ? (boolean) Ffm.LONG_BE_COMPARE_AND_SET.invokeExact(segment, pos, expected, val) : (boolean) Ffm.LONG_LE_COMPARE_AND_SET.invokeExact(segment, pos, expected, val);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public long getAndAddLong(long pos, long delta)
+	{
+		checkAtomic(pos, 8);
+		try {
+			return isBigEndian ? (long) Ffm.LONG_BE_GET_AND_ADD.invokeExact(segment, pos, delta) : (long) Ffm.LONG_LE_GET_AND_ADD.invokeExact(segment, pos, delta);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	@Override
+	public void copyWithin(long sourcePos, long targetPos, long length)
+	{
+		checkRange(sourcePos, length);
+		checkRange(targetPos, length);
+		try {
+			Ffm.COPY_SEGMENT.invokeExact(segment, sourcePos, segment, targetPos, length);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	private void copyToArray(long pos, Object layout, int shift, Object data, int offset, int length, int dataLength)
+	{
+		Objects.checkFromIndexSize(offset, length, dataLength);
+		checkRange(pos, (long) length<<shift);
+		try {
+			Ffm.COPY_TO_ARRAY.invokeExact(segment, layout, pos, data, offset, length);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	private void copyFromArray(long pos, Object layout, int shift, Object data, int offset, int length, int dataLength)
+	{
+		Objects.checkFromIndexSize(offset, length, dataLength);
+		checkRange(pos, (long) length<<shift);
+		try {
+			Ffm.COPY_FROM_ARRAY.invokeExact(data, offset, segment, layout, pos, length);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	private void checkRange(long pos, long length)
+	{
+		if (pos < 0 || length < 0 || pos > size-length) {
+			throw new IllegalArgumentException("range behind size: pos=" + pos + " length=" + length);
+		}
+	}
+
+	private void checkAtomic(long pos, int length)
+	{
+		checkRange(pos, length);
+		checkAtomicAlignment(pos, length);
+	}
+
+	private static Object invokeArenaOfShared()
+	{
+		try {
+			return Ffm.ARENA_OF_SHARED.invokeExact();
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	private static void closeArena(Object arena)
+	{
+		try {
+			Ffm.ARENA_CLOSE.invokeExact(arena);
+		}
+		catch (Throwable ex) {
+			throw rethrow(ex);
+		}
+	}
+
+	private static RuntimeException rethrow(Throwable ex)
+	{
+		if (ex instanceof RuntimeException) {
+			return (RuntimeException) ex;
+		}
+		if (ex instanceof Error) {
+			throw (Error) ex;
+		}
+		return new IllegalStateException("Foreign memory access failed", ex);
+	}
+
+	private static boolean probe()
+	{
+		try {
+			return Ffm.MEMORY_SEGMENT != null;
+		}
+		catch (LinkageError ex) {
+			return false;
+		}
+	}
+
+	private static final boolean AVAILABLE = probe();
+
+	private final long size;
+
+	private final Object segment;
+
+	private final Object arena;
+
+	private boolean isBigEndian = true;
+
+	private boolean isClosed = false;
+
+	/**
+	 * Method handles to Foreign Function and Memory API, adapted to Object instead of API types.  Kept in separate
+	 * class, so its initialization failure on older JDK only disables this implementation.
+	 */
+	private static final class Ffm
+	{
+		static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+		static final Class<?> MEMORY_SEGMENT = findClass("java.lang.foreign.MemorySegment");
+		static final Class<?> ARENA = findClass("java.lang.foreign.Arena");
+		static final Class<?> VALUE_LAYOUT = findClass("java.lang.foreign.ValueLayout");
+
+		static final Object BYTE = layout("JAVA_BYTE", ByteOrder.BIG_ENDIAN);
+		static final Object SHORT_BE = layout("JAVA_SHORT_UNALIGNED", ByteOrder.BIG_ENDIAN);
+		static final Object SHORT_LE = layout("JAVA_SHORT_UNALIGNED", ByteOrder.LITTLE_ENDIAN);
+		static final Object INT_BE = layout("JAVA_INT_UNALIGNED", ByteOrder.BIG_ENDIAN);
+		static final Object INT_LE = layout("JAVA_INT_UNALIGNED", ByteOrder.LITTLE_ENDIAN);
+		static final Object LONG_BE = layout("JAVA_LONG_UNALIGNED", ByteOrder.BIG_ENDIAN);
+		static final Object LONG_LE = layout("JAVA_LONG_UNALIGNED", ByteOrder.LITTLE_ENDIAN);
+		static final Object FLOAT_BE = layout("JAVA_FLOAT_UNALIGNED", ByteOrder.BIG_ENDIAN);
+		static final Object FLOAT_LE = layout("JAVA_FLOAT_UNALIGNED", ByteOrder.LITTLE_ENDIAN);
+		static final Object DOUBLE_BE = layout("JAVA_DOUBLE_UNALIGNED", ByteOrder.BIG_ENDIAN);
+		static final Object DOUBLE_LE = layout("JAVA_DOUBLE_UNALIGNED", ByteOrder.LITTLE_ENDIAN);
+		static final Object ATOMIC_INT_BE = layout("JAVA_INT", ByteOrder.BIG_ENDIAN);
+		static final Object ATOMIC_INT_LE = layout("JAVA_INT", ByteOrder.LITTLE_ENDIAN);
+		static final Object ATOMIC_LONG_BE = layout("JAVA_LONG", ByteOrder.BIG_ENDIAN);
+		static final Object ATOMIC_LONG_LE = layout("JAVA_LONG", ByteOrder.LITTLE_ENDIAN);
+
+		static final MethodHandle ARENA_OF_SHARED = staticMethod(ARENA, "ofShared", MethodType.methodType(ARENA))
+			.asType(MethodType.methodType(Object.class));
+		static final MethodHandle ARENA_CLOSE = virtualMethod(ARENA, "close", MethodType.methodType(void.class))
+			.asType(MethodType.methodType(void.class, Object.class));
+		static final MethodHandle MAP = virtualMethod(FileChannel.class, "map", MethodType.methodType(MEMORY_SEGMENT, FileChannel.MapMode.class, long.class, long.class, ARENA))
+			.asType(MethodType.methodType(Object.class, FileChannel.class, FileChannel.MapMode.class, long.class, long.class, Object.class));
+		static final MethodHandle AS_SLICE = virtualMethod(MEMORY_SEGMENT, "asSlice", MethodType.methodType(MEMORY_SEGMENT, long.class, long.class))
+			.asType(MethodType.methodType(Object.class, Object.class, long.class, long.class));
+		static final MethodHandle AS_BYTE_BUFFER = virtualMethod(MEMORY_SEGMENT, "asByteBuffer", MethodType.methodType(ByteBuffer.class))
+			.asType(MethodType.methodType(ByteBuffer.class, Object.class));
+		static final MethodHandle COPY_SEGMENT = staticMethod(MEMORY_SEGMENT, "copy", MethodType.methodType(void.class, MEMORY_SEGMENT, long.class, MEMORY_SEGMENT, long.class, long.class))
+			.asType(MethodType.methodType(void.class, Object.class, long.class, Object.class, long.class, long.class));
+		static final MethodHandle COPY_TO_ARRAY = staticMethod(MEMORY_SEGMENT, "copy", MethodType.methodType(void.class, MEMORY_SEGMENT, VALUE_LAYOUT, long.class, Object.class, int.class, int.class))
+			.asType(MethodType.methodType(void.class, Object.class, Object.class, long.class, Object.class, int.class, int.class));
+		static final MethodHandle COPY_FROM_ARRAY = staticMethod(MEMORY_SEGMENT, "copy", MethodType.methodType(void.class, Object.class, int.class, MEMORY_SEGMENT, VALUE_LAYOUT, long.class, int.class))
+			.asType(MethodType.methodType(void.class, Object.class, int.class, Object.class, Object.class, long.class, int.class));
+
+		static final MethodHandle GET_BYTE = getter(BYTE, "OfByte", byte.class);
+		static final MethodHandle PUT_BYTE = setter(BYTE, "OfByte", byte.class);
+		static final MethodHandle GET_SHORT_BE = getter(SHORT_BE, "OfShort", short.class);
+		static final MethodHandle GET_SHORT_LE = getter(SHORT_LE, "OfShort", short.class);
+		static final MethodHandle PUT_SHORT_BE = setter(SHORT_BE, "OfShort", short.class);
+		static final MethodHandle PUT_SHORT_LE = setter(SHORT_LE, "OfShort", short.class);
+		static final MethodHandle GET_INT_BE = getter(INT_BE, "OfInt", int.class);
+		static final MethodHandle GET_INT_LE = getter(INT_LE, "OfInt", int.class);
+		static final MethodHandle PUT_INT_BE = setter(INT_BE, "OfInt", int.class);
+		static final MethodHandle PUT_INT_LE = setter(INT_LE, "OfInt", int.class);
+		static final MethodHandle GET_LONG_BE = getter(LONG_BE, "OfLong", long.class);
+		static final MethodHandle GET_LONG_LE = getter(LONG_LE, "OfLong", long.class);
+		static final MethodHandle PUT_LONG_BE = setter(LONG_BE, "OfLong", long.class);
+		static final MethodHandle PUT_LONG_LE = setter(LONG_LE, "OfLong", long.class);
+
+		static final MethodHandle INT_BE_GET_VOLATILE = atomic(ATOMIC_INT_BE, VarHandle.AccessMode.GET_VOLATILE, int.class);
+		static final MethodHandle INT_LE_GET_VOLATILE = atomic(ATOMIC_INT_LE, VarHandle.AccessMode.GET_VOLATILE, int.class);
+		static final MethodHandle INT_BE_SET_VOLATILE = atomic(ATOMIC_INT_BE, VarHandle.AccessMode.SET_VOLATILE, void.class, int.class);
+		static final MethodHandle INT_LE_SET_VOLATILE = atomic(ATOMIC_INT_LE, VarHandle.AccessMode.SET_VOLATILE, void.class, int.class);
+		static final MethodHandle INT_BE_GET_ACQUIRE = atomic(ATOMIC_INT_BE, VarHandle.AccessMode.GET_ACQUIRE, int.class);
+		static final MethodHandle INT_LE_GET_ACQUIRE = atomic(ATOMIC_INT_LE, VarHandle.AccessMode.GET_ACQUIRE, int.class);
+		static final MethodHandle INT_BE_SET_RELEASE = atomic(ATOMIC_INT_BE, VarHandle.AccessMode.SET_RELEASE, void.class, int.class);
+		static final MethodHandle INT_LE_SET_RELEASE = atomic(ATOMIC_INT_LE, VarHandle.AccessMode.SET_RELEASE, void.class, int.class);
+		static final MethodHandle INT_BE_COMPARE_AND_SET = atomic(ATOMIC_INT_BE, VarHandle.AccessMode.COMPARE_AND_SET, boolean.class, int.class, int.class);
+		static final MethodHandle INT_LE_COMPARE_AND_SET = atomic(ATOMIC_INT_LE, VarHandle.AccessMode.COMPARE_AND_SET, boolean.class, int.class, int.class);
+		static final MethodHandle INT_BE_GET_AND_ADD = atomic(ATOMIC_INT_BE, VarHandle.AccessMode.GET_AND_ADD, int.class, int.class);
+		static final MethodHandle INT_LE_GET_AND_ADD = atomic(ATOMIC_INT_LE, VarHandle.AccessMode.GET_AND_ADD, int.class, int.class);
+		static final MethodHandle LONG_BE_GET_VOLATILE = atomic(ATOMIC_LONG_BE, VarHandle.AccessMode.GET_VOLATILE, long.class);
+		static final MethodHandle LONG_LE_GET_VOLATILE = atomic(ATOMIC_LONG_LE, VarHandle.AccessMode.GET_VOLATILE, long.class);
+		static final MethodHandle LONG_BE_SET_VOLATILE = atomic(ATOMIC_LONG_BE, VarHandle.AccessMode.SET_VOLATILE, void.class, long.class);
+		static final MethodHandle LONG_LE_SET_VOLATILE = atomic(ATOMIC_LONG_LE, VarHandle.AccessMode.SET_VOLATILE, void.class, long.class);
+		static final MethodHandle LONG_BE_GET_ACQUIRE = atomic(ATOMIC_LONG_BE, VarHandle.AccessMode.GET_ACQUIRE, long.class);
+		static final MethodHandle LONG_LE_GET_ACQUIRE = atomic(ATOMIC_LONG_LE, VarHandle.AccessMode.GET_ACQUIRE, long.class);
+		static final MethodHandle LONG_BE_SET_RELEASE = atomic(ATOMIC_LONG_BE, VarHandle.AccessMode.SET_RELEASE, void.class, long.class);
+		static final MethodHandle LONG_LE_SET_RELEASE = atomic(ATOMIC_LONG_LE, VarHandle.AccessMode.SET_RELEASE, void.class, long.class);
+		static final MethodHandle LONG_BE_COMPARE_AND_SET = atomic(ATOMIC_LONG_BE, VarHandle.AccessMode.COMPARE_AND_SET, boolean.class, long.class, long.class);
+		static final MethodHandle LONG_LE_COMPARE_AND_SET = atomic(ATOMIC_LONG_LE, VarHandle.AccessMode.COMPARE_AND_SET, boolean.class, long.class, long.class);
+		static final MethodHandle LONG_BE_GET_AND_ADD = atomic(ATOMIC_LONG_BE, VarHandle.AccessMode.GET_AND_ADD, long.class, long.class);
+		static final MethodHandle LONG_LE_GET_AND_ADD = atomic(ATOMIC_LONG_LE, VarHandle.AccessMode.GET_AND_ADD, long.class, long.class);
+
+		private static Class<?> findClass(String name)
+		{
+			try {
+				return Class.forName(name);
+			}
+			catch (ClassNotFoundException ex) {
+				throw new UnsupportedOperationException("Class not available: "+name, ex);
+			}
+		}
+
+		private static Object layout(String name, ByteOrder order)
+		{
+			try {
+				return VALUE_LAYOUT.getMethod("withOrder", ByteOrder.class).invoke(VALUE_LAYOUT.getField(name).get(null), order);
+			}
+			catch (ReflectiveOperationException ex) {
+				throw new UnsupportedOperationException("Layout not available: "+name, ex);
+			}
+		}
+
+		private static MethodHandle staticMethod(Class<?> clazz, String name, MethodType type)
+		{
+			try {
+				return LOOKUP.findStatic(clazz, name, type);
+			}
+			catch (ReflectiveOperationException ex) {
+				throw new UnsupportedOperationException("Method not available: "+name+type, ex);
+			}
+		}
+
+		private static MethodHandle virtualMethod(Class<?> clazz, String name, MethodType type)
+		{
+			try {
+				return LOOKUP.findVirtual(clazz, name, type);
+			}
+			catch (ReflectiveOperationException ex) {
+				throw new UnsupportedOperationException("Method not available: "+name+type, ex);
+			}
+		}
+
+		private static MethodHandle getter(Object layout, String layoutType, Class<?> carrier)
+		{
+			MethodHandle handle = virtualMethod(MEMORY_SEGMENT, "get", MethodType.methodType(carrier, findClass(VALUE_LAYOUT.getName()+"$"+layoutType), long.class));
+			return MethodHandles.insertArguments(handle, 1, layout)
+				.asType(MethodType.methodType(carrier, Object.class, long.class));
+		}
+
+		private static MethodHandle setter(Object layout, String layoutType, Class<?> carrier)
+		{
+			MethodHandle handle = virtualMethod(MEMORY_SEGMENT, "set", MethodType.methodType(void.class, findClass(VALUE_LAYOUT.getName()+"$"+layoutType), long.class, carrier));
+			return MethodHandles.insertArguments(handle, 1, layout)
+				.asType(MethodType.methodType(void.class, Object.class, long.class, carrier));
+		}
+
+		/**
+		 * Creates method handle for atomic access mode, with coordinates (segment, offset) followed by values.
+		 * JDK 21 provides such handle by MethodHandles.memorySegmentViewVarHandle, later versions by
+		 * ValueLayout.varHandle.
+		 */
+		private static MethodHandle atomic(Object layout, VarHandle.AccessMode mode, Class<?> returnType, Class<?>... values)
+		{
+			VarHandle handle;
+			try {
+				Method viewHandle = MethodHandles.class.getMethod("memorySegmentViewVarHandle", VALUE_LAYOUT);
+				handle = (VarHandle) viewHandle.invoke(null, layout);
+			}
+			catch (NoSuchMethodException ex) {
+				try {
+					handle = (VarHandle) VALUE_LAYOUT.getMethod("varHandle").invoke(layout);
+				}
+				catch (ReflectiveOperationException ex2) {
+					throw new UnsupportedOperationException("VarHandle not available", ex2);
+				}
+			}
+			catch (ReflectiveOperationException ex) {
+				throw new UnsupportedOperationException("VarHandle not available", ex);
+			}
+			Class<?>[] parameters = new Class<?>[2+values.length];
+			parameters[0] = Object.class;
+			parameters[1] = long.class;
+			System.arraycopy(values, 0, parameters, 2, values.length);
+			return handle.toMethodHandle(mode)
+				.asType(MethodType.methodType(returnType, parameters));
+		}
+	}
+}
@@ -21,6 +21,8 @@ package net.dryuf.bigio.file;
 import net.dryuf.bigio.MappedFlatBuffer;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
@@ -41,6 +43,7 @@ public class SmallMappedFlatBuffer extends MappedFlatBuffer
 		}
 		this.size = (int) len;
 		buffer = channel.map(mode, offset, size);
+		owned = true;
 	}
 
 	public SmallMappedFlatBuffer(ByteBuffer buffer) throws IOException
@@ -50,12 +53,45 @@ public class SmallMappedFlatBuffer extends MappedFlatBuffer
 		this.isBigEndian = this.buffer.order() == ByteOrder.BIG_ENDIAN;
 	}
 
+	/**
+	 * Enables releasing the mapping immediately on {@link #close()}, without waiting for garbage collector.  Only
+	 * mappings created by this buffer are released, wrapped ByteBuffers are left untouched.
+	 *
+	 * The caller must guarantee that no other thread accesses the buffer during or after close and that no
+	 * ByteBuffer previously returned by {@link #subByteBuffer(long, long)} is used after close.  There is no guard
+	 * protecting racing accesses, accessing the released memory crashes the JVM instead of throwing exception.
+	 * Safe deterministic unmapping is provided only by {@link MemorySegmentFlatBuffer}, chosen by
+	 * {@link MappedFlatBuffer#from} on JDK 22 and later.
+	 *
+	 * @param releaseEagerly
+	 * 	whether to release the mapping on close
+	 *
+	 * @return
+	 * 	this buffer.
+	 */
+	public SmallMappedFlatBuffer releaseEagerly(boolean releaseEagerly)
+	{
+		this.releaseEagerly = releaseEagerly;
+		return this;
+	}
+
+	/**
+	 * Closes the buffer.  Any later access through this buffer throws {@link IllegalStateException}.  The mapping
+	 * is released immediately only if enabled by {@link #releaseEagerly(boolean)}, otherwise it is left to garbage
+	 * collector, so outstanding views and racing readers stay safe.
+	 */
 	@Override
 	public synchronized void close()
 	{
 		if (isClosed)
 			return;
 		isClosed = true;
+		ByteBuffer mapped = buffer;
+		size = 0;
+		buffer = ByteBuffer.allocate(0).order(mapped.order());
+		if (owned && releaseEagerly) {
+			BufferReleaser.release(mapped);
+		}
 	}
 
 	@Override
@@ -164,6 +200,201 @@ public class SmallMappedFlatBuffer extends MappedFlatBuffer
 		putToPosition(buffer, localPos(pos), data, offset, length);
 	}
 
+	@Override
+	public void getShorts(long pos, short[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<1);
+		buffer.slice(local, length<<1).order(buffer.order()).asShortBuffer().get(data, offset, length);
+	}
+
+	@Override
+	public void putShorts(long pos, short[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<1);
+		buffer.slice(local, length<<1).order(buffer.order()).asShortBuffer().put(data, offset, length);
+	}
+
+	@Override
+	public void getInts(long pos, int[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<2);
+		buffer.slice(local, length<<2).order(buffer.order()).asIntBuffer().get(data, offset, length);
+	}
+
+	@Override
+	public void putInts(long pos, int[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<2);
+		buffer.slice(local, length<<2).order(buffer.order()).asIntBuffer().put(data, offset, length);
+	}
+
+	@Override
+	public void getLongs(long pos, long[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<3);
+		buffer.slice(local, length<<3).order(buffer.order()).asLongBuffer().get(data, offset, length);
+	}
+
+	@Override
+	public void putLongs(long pos, long[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<3);
+		buffer.slice(local, length<<3).order(buffer.order()).asLongBuffer().put(data, offset, length);
+	}
+
+	@Override
+	public void getFloats(long pos, float[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<2);
+		buffer.slice(local, length<<2).order(buffer.order()).asFloatBuffer().get(data, offset, length);
+	}
+
+	@Override
+	public void putFloats(long pos, float[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<2);
+		buffer.slice(local, length<<2).order(buffer.order()).asFloatBuffer().put(data, offset, length);
+	}
+
+	@Override
+	public void getDoubles(long pos, double[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<3);
+		buffer.slice(local, length<<3).order(buffer.order()).asDoubleBuffer().get(data, offset, length);
+	}
+
+	@Override
+	public void putDoubles(long pos, double[] data, int offset, int length)
+	{
+		int local = localRange(pos, (long) length<<3);
+		buffer.slice(local, length<<3).order(buffer.order()).asDoubleBuffer().put(data, offset, length);
+	}
+
+	@Override
+	public int getIntVolatile(long pos)
+	{
+		int local = localRange(pos, 4);
+		return isBigEndian ? (int) INT_BE_HANDLE.getVolatile(buffer, local) : (int) INT_LE_HANDLE.getVolatile(buffer, local);
+	}
+
+	@Override
+	public void putIntVolatile(long pos, int val)
+	{
+		int local = localRange(pos, 4);
+		if (isBigEndian) {
+			INT_BE_HANDLE.setVolatile(buffer, local, val);
+		}
+		else {
+			INT_LE_HANDLE.setVolatile(buffer, local, val);
+		}
+	}
+
+	@Override
+	public int getIntAcquire(long pos)
+	{
+		int local = localRange(pos, 4);
+		return isBigEndian ? (int) INT_BE_HANDLE.getAcquire(buffer, local) : (int) INT_LE_HANDLE.getAcquire(buffer, local);
+	}
+
+	@Override
+	public void putIntRelease(long pos, int val)
+	{
+		int local = localRange(pos, 4);
+		if (isBigEndian) {
+			INT_BE_HANDLE.setRelease(buffer, local, val);
+		}
+		else {
+			INT_LE_HANDLE.setRelease(buffer, local, val);
+		}
+	}
+
+	@Override
+	public boolean compareAndSetInt(long pos, int expected, int val)
+	{
+		int local = localRange(pos, 4);
+		return isBigEndian ? (boolean) INT_BE_HANDLE.compareAndSet(buffer, local, expected, val) : (boolean) INT_LE_HANDLE.compareAndSet(buffer, local, expected, val);
+	}
+
+	@Override
+	public int getAndAddInt(long pos, int delta)
+	{
+		int local = localRange(pos, 4);
+		return isBigEndian ? (int) INT_BE_HANDLE.getAndAdd(buffer, local, delta) : (int) INT_LE_HANDLE.getAndAdd(buffer, local, delta);
+	}
+
+	@Override
+	public long getLongVolatile(long pos)
+	{
+		int local = localRange(pos, 8);
+		return isBigEndian ? (long) LONG_BE_HANDLE.getVolatile(buffer, local) : (long) LONG_LE_HANDLE.getVolatile(buffer, local);
+	}
+
+	@Override
+	public void putLongVolatile(long pos, long val)
+	{
+		int local = localRange(pos, 8);
+		if (isBigEndian) {
+			LONG_BE_HANDLE.setVolatile(buffer, local, val);
+		}
+		else {
+			LONG_LE_HANDLE.setVolatile(buffer, local, val);
+		}
+	}
+
+	@Override
+	public long getLongAcquire(long pos)
+	{
+		int local = localRange(pos, 8);
+		return isBigEndian ? (long) LONG_BE_HANDLE.getAcquire(buffer, local) : (long) LONG_LE_HANDLE.getAcquire(buffer, local);
+	}
+
+	@Override
+	public void putLongRelease(long pos, long val)
+	{
+		int local = localRange(pos, 8);
+		if (isBigEndian) {
+			LONG_BE_HANDLE.setRelease(buffer, local, val);
+		}
+		else {
+			LONG_LE_HANDLE.setRelease(buffer, local, val);
+		}
+	}
+
+	@Override
+	public boolean compareAndSetLong(long pos, long expected, long val)
+	{
+		int local = localRange(pos, 8);
+		return isBigEndian ? (boolean) LONG_BE_HANDLE.compareAndSet(buffer, local, expected, val) : (boolean) LONG_LE_HANDLE.compareAndSet(buffer, local, expected, val);
+	}
+
+	@Override
+	public long getAndAddLong(long pos, long delta)
+	{
+		int local = localRange(pos, 8);
+		return isBigEndian ? (long) LONG_BE_HANDLE.getAndAdd(buffer, local, delta) : (long) LONG_LE_HANDLE.getAndAdd(buffer, local, delta);
+	}
+
+	@Override
+	public void swapRegions(long pos0, long pos1, int length)
+	{
+		swapAtPositions(buffer, localRange(pos0, length), localRange(pos1, length), length);
+	}
+
+	@Override
+	public void copyWithin(long sourcePos, long targetPos, long length)
+	{
+		int source = localRange(sourcePos, length), target = localRange(targetPos, length);
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset()+source, buffer.array(), buffer.arrayOffset()+target, (int) length);
+		}
+		else if (Math.abs(target-source) >= length) {
+			buffer.put(target, buffer, source, (int) length);
+		}
+		else {
+			super.copyWithin(sourcePos, targetPos, length);
+		}
+	}
+
 	@Override
 	public boolean equalsBytes(long pos, byte[] data, int offset, int length)
 	{
@@ -179,11 +410,43 @@ public class SmallMappedFlatBuffer extends MappedFlatBuffer
 	private int localPos(long pos)
 	{
 		if (pos < 0 || pos >= size) {
+			checkClosed();
 			throw new IllegalArgumentException("pos behind size: pos=" + pos);
 		}
 		return (int) pos;
 	}
 
+	private int localRange(long pos, long length)
+	{
+		if (pos < 0 || length < 0 || pos+length > size) {
+			checkClosed();
+			throw new IllegalArgumentException("range behind size: pos=" + pos + " length=" + length);
+		}
+		return (int) pos;
+	}
+
+	private void checkClosed()
+	{
+		if (isClosed) {
+			throw new IllegalStateException("Buffer already closed");
+		}
+	}
+
+	static void swapAtPositions(ByteBuffer buf, int pos0, int pos1, int length)
+	{
+		int i = 0;
+		for (; i <= length-8; i += 8) {
+			long v0 = buf.getLong(pos0+i), v1 = buf.getLong(pos1+i);
+			buf.putLong(pos0+i, v1);
+			buf.putLong(pos1+i, v0);
+		}
+		for (; i < length; ++i) {
+			byte v0 = buf.get(pos0+i), v1 = buf.get(pos1+i);
+			buf.put(pos0+i, v1);
+			buf.put(pos1+i, v0);
+		}
+	}
+
 	private static void getFromPosition(ByteBuffer buf, int pos, byte[] data, int offset, int length)
 	{
 		buf.get(pos, data, offset, length);
@@ -210,11 +473,20 @@ public class SmallMappedFlatBuffer extends MappedFlatBuffer
 		return dup.compareTo(ByteBuffer.wrap(data, offset, length));
 	}
 
-	private final int size;
+	static final VarHandle INT_BE_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	static final VarHandle INT_LE_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	static final VarHandle LONG_BE_HANDLE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	static final VarHandle LONG_LE_HANDLE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private int size;
 
 	private boolean isBigEndian = true;
 
 	private ByteBuffer buffer;
 
 	private boolean isClosed = false;
+
+	private boolean owned = false;
+
+	private boolean releaseEagerly = false;
 }
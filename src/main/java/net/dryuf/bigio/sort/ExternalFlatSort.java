@@ -0,0 +1,231 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.FlatChannel;
+import net.dryuf.bigio.FlatChannels;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * External merge sort of fixed size records.  The input is split into runs fitting into memory, each run is sorted by
+ * {@link FlatSort} and written into temporary file.  The runs are then k-way merged into the output, possibly in
+ * several passes if the number of runs exceeds merge fan-in.  Both the runs and merges access the channels
+ * sequentially only.
+ */
+public class ExternalFlatSort
+{
+	/**
+	 * Creates new external sorter.
+	 *
+	 * @param objectSize
+	 * 	size of single record
+	 * @param comparator
+	 * 	record comparator
+	 * @param memorySize
+	 * 	size of memory used for sorting runs and merge buffers, must be at least three records
+	 * @param tempDirectory
+	 * 	directory for temporary files, null for system default
+	 */
+	public ExternalFlatSort(int objectSize, FlatSort.FlatBufferComparator comparator, int memorySize, Path tempDirectory)
+	{
+		if (objectSize <= 0) {
+			throw new IllegalArgumentException("objectSize must be positive: "+objectSize);
+		}
+		if (memorySize / 3 < objectSize) {
+			throw new IllegalArgumentException("memorySize must hold at least three records: "+memorySize);
+		}
+		this.objectSize = objectSize;
+		this.comparator = comparator;
+		this.memorySize = memorySize - memorySize % objectSize;
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Sets byte order of buffers passed to comparator.  Default is {@link ByteOrder#BIG_ENDIAN}.
+	 *
+	 * @param byteOrder
+	 * 	byte order of records
+	 *
+	 * @return
+	 * 	this object.
+	 */
+	public ExternalFlatSort order(ByteOrder byteOrder)
+	{
+		this.byteOrder = byteOrder;
+		return this;
+	}
+
+	/**
+	 * Sets progress monitor.  The monitor collects statistics of in-memory run sorts and allows cancelling the
+	 * sort, which is checked also between merges.
+	 *
+	 * @param monitor
+	 * 	progress monitor
+	 *
+	 * @return
+	 * 	this object.
+	 */
+	public ExternalFlatSort monitor(SortMonitor monitor)
+	{
+		this.monitor = monitor;
+		return this;
+	}
+
+	public void sort(FlatBuffer input, long start, long length, FlatBuffer output, long outputPos) throws IOException
+	{
+		sort(FlatChannels.fromBuffer(input), start, length, FlatChannels.fromBuffer(output), outputPos);
+	}
+
+	public void sort(FlatBuffer input, long start, long length, FlatChannel output, long outputPos) throws IOException
+	{
+		sort(FlatChannels.fromBuffer(input), start, length, output, outputPos);
+	}
+
+	public void sort(FlatChannel input, long start, long length, FlatBuffer output, long outputPos) throws IOException
+	{
+		sort(input, start, length, FlatChannels.fromBuffer(output), outputPos);
+	}
+
+	/**
+	 * Sorts the records from input area and writes them into output.
+	 *
+	 * @param input
+	 * 	input channel
+	 * @param start
+	 * 	start of input area
+	 * @param length
+	 * 	length of input area, must be multiple of objectSize
+	 * @param output
+	 * 	output channel
+	 * @param outputPos
+	 * 	position in output channel
+	 */
+	public void sort(FlatChannel input, long start, long length, FlatChannel output, long outputPos) throws IOException
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		byte[] memory = new byte[(int) Math.min(memorySize, Math.max(length, 3L*objectSize))];
+		FlatBuffer memoryBuffer = new SmallMappedFlatBuffer(ByteBuffer.wrap(memory).order(byteOrder));
+
+		if (length <= memory.length) {
+			FlatMerge.readFully(input, start, memory, 0, (int) length);
+			FlatSort.sort(memoryBuffer, objectSize, 0, length, comparator, monitor);
+			FlatMerge.writeFully(output, outputPos, memory, 0, (int) length);
+			return;
+		}
+
+		long runCount = (length - 1) / memory.length + 1;
+		if (runCount > Integer.MAX_VALUE - 1) {
+			throw new IllegalArgumentException("Too many runs for provided memorySize: "+runCount);
+		}
+		long[] runBounds = new long[(int) runCount + 1];
+		try (
+			FlatChannel first = openTemporary();
+			FlatChannel second = openTemporary()
+		) {
+			for (int i = 0; i < runCount; ++i) {
+				runBounds[i] = (long) i * memory.length;
+				int runLength = (int) Math.min(memory.length, length - runBounds[i]);
+				FlatMerge.readFully(input, start + runBounds[i], memory, 0, runLength);
+				FlatSort.sort(memoryBuffer, objectSize, 0, runLength, comparator, monitor);
+				FlatMerge.writeFully(first, runBounds[i], memory, 0, runLength);
+			}
+			runBounds[(int) runCount] = length;
+
+			int fanIn = Math.max(2, memory.length / Math.max(MERGE_BLOCK_SIZE, objectSize) - 1);
+			FlatMerge merge = new FlatMerge(objectSize, comparator, memory.length).order(byteOrder);
+			FlatChannel source = first, target = second;
+			while (runBounds.length - 1 > fanIn) {
+				int mergedCount = (runBounds.length - 2) / fanIn + 1;
+				long[] mergedBounds = new long[mergedCount + 1];
+				for (int i = 0; i < mergedCount; ++i) {
+					int from = i * fanIn, to = Math.min(from + fanIn, runBounds.length - 1);
+					mergeRuns(merge, memory, source, runBounds, from, to, target, runBounds[from]);
+					mergedBounds[i] = runBounds[from];
+				}
+				mergedBounds[mergedCount] = length;
+				runBounds = mergedBounds;
+				FlatChannel swap = source;
+				source = target;
+				target = swap;
+			}
+			mergeRuns(merge, memory, source, runBounds, 0, runBounds.length - 1, output, outputPos);
+		}
+	}
+
+	private void mergeRuns(FlatMerge merge, byte[] memory, FlatChannel source, long[] runBounds, int from, int to, FlatChannel target, long targetPos) throws IOException
+	{
+		if (monitor != null) {
+			monitor.checkCancelled();
+		}
+		int count = to - from;
+		FlatChannel[] inputs = new FlatChannel[count];
+		long[] starts = new long[count];
+		long[] lengths = new long[count];
+		for (int i = 0; i < count; ++i) {
+			inputs[i] = source;
+			starts[i] = runBounds[from + i];
+			lengths[i] = runBounds[from + i + 1] - runBounds[from + i];
+		}
+		merge.merge(memory, inputs, starts, lengths, target, targetPos);
+	}
+
+	private FlatChannel openTemporary() throws IOException
+	{
+		Path file = tempDirectory == null ? Files.createTempFile("flatsort", ".run") : Files.createTempFile(tempDirectory, "flatsort", ".run");
+		try {
+			return FlatChannels.fromFile(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE));
+		}
+		catch (IOException|RuntimeException ex) {
+			try {
+				Files.deleteIfExists(file);
+			}
+			catch (IOException e) {
+				ex.addSuppressed(e);
+			}
+			throw ex;
+		}
+	}
+
+	/** Preferred size of block read from single run during merge. */
+	static final int MERGE_BLOCK_SIZE = 1024*1024;
+
+	private final int objectSize;
+
+	private final FlatSort.FlatBufferComparator comparator;
+
+	private final int memorySize;
+
+	private final Path tempDirectory;
+
+	private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+
+	private SortMonitor monitor;
+}
@@ -0,0 +1,338 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.FlatChannel;
+import net.dryuf.bigio.FlatChannels;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+
+/**
+ * K-way merge of sorted areas of fixed size records.  The inputs are read in blocks into memory buffer, the records
+ * are selected by loser tree and written into output in big sequential batches.  The merge is stable, i.e. equal
+ * records keep the order of inputs.  Optionally, equal records can be combined into single one.
+ */
+public class FlatMerge
+{
+	/**
+	 * Creates new merger.
+	 *
+	 * @param objectSize
+	 * 	size of single record
+	 * @param comparator
+	 * 	record comparator
+	 * @param memorySize
+	 * 	size of memory for input blocks and output batch
+	 */
+	public FlatMerge(int objectSize, FlatSort.FlatBufferComparator comparator, int memorySize)
+	{
+		if (objectSize <= 0) {
+			throw new IllegalArgumentException("objectSize must be positive: "+objectSize);
+		}
+		this.objectSize = objectSize;
+		this.comparator = comparator;
+		this.memorySize = memorySize - memorySize % objectSize;
+	}
+
+	/**
+	 * Sets byte order of buffers passed to comparator and combiner.  Default is {@link ByteOrder#BIG_ENDIAN}.
+	 *
+	 * @param byteOrder
+	 * 	byte order of records
+	 *
+	 * @return
+	 * 	this object.
+	 */
+	public FlatMerge order(ByteOrder byteOrder)
+	{
+		this.byteOrder = byteOrder;
+		return this;
+	}
+
+	/**
+	 * Sets combiner of equal records.  When set, the output contains single record for each group of equal
+	 * records.
+	 *
+	 * @param combiner
+	 * 	combiner of equal records, {@link #KEEP_FIRST} for plain deduplication
+	 *
+	 * @return
+	 * 	this object.
+	 */
+	public FlatMerge combiner(Combiner combiner)
+	{
+		this.combiner = combiner;
+		return this;
+	}
+
+	public long merge(List<FlatBuffer> inputs, FlatBuffer output, long outputPos) throws IOException
+	{
+		return merge(inputs, FlatChannels.fromBuffer(output), outputPos);
+	}
+
+	/**
+	 * Merges sorted buffers into output.
+	 *
+	 * @param inputs
+	 * 	sorted input buffers, each of them is merged whole
+	 * @param output
+	 * 	output channel
+	 * @param outputPos
+	 * 	position in output
+	 *
+	 * @return
+	 * 	number of bytes written.
+	 */
+	public long merge(List<FlatBuffer> inputs, FlatChannel output, long outputPos) throws IOException
+	{
+		FlatChannel[] channels = new FlatChannel[inputs.size()];
+		long[] starts = new long[inputs.size()];
+		long[] lengths = new long[inputs.size()];
+		for (int i = 0; i < channels.length; ++i) {
+			channels[i] = FlatChannels.fromBuffer(inputs.get(i));
+			lengths[i] = inputs.get(i).size();
+		}
+		return merge(channels, starts, lengths, output, outputPos);
+	}
+
+	/**
+	 * Merges sorted channel areas into output.
+	 *
+	 * @param inputs
+	 * 	sorted input channels, the same channel may be repeated with different areas
+	 * @param starts
+	 * 	starts of input areas
+	 * @param lengths
+	 * 	lengths of input areas, must be multiple of objectSize
+	 * @param output
+	 * 	output channel
+	 * @param outputPos
+	 * 	position in output
+	 *
+	 * @return
+	 * 	number of bytes written.
+	 */
+	public long merge(FlatChannel[] inputs, long[] starts, long[] lengths, FlatChannel output, long outputPos) throws IOException
+	{
+		long total = 0;
+		for (long length: lengths) {
+			if (length % objectSize != 0) {
+				throw new IllegalArgumentException("Area size is not dividable by objectSize");
+			}
+			total += length;
+		}
+		int minMemory = (inputs.length + 1) * objectSize * (combiner != null ? 2 : 1);
+		byte[] memory = new byte[(int) Math.max(minMemory, Math.min(memorySize, total + objectSize))];
+		return merge(memory, inputs, starts, lengths, output, outputPos);
+	}
+
+	long merge(byte[] memory, FlatChannel[] inputs, long[] starts, long[] lengths, FlatChannel output, long outputPos) throws IOException
+	{
+		return new Merger(memory, inputs, starts, lengths).run(output, outputPos);
+	}
+
+	/**
+	 * State of single merge.  Memory is split into block per input and output block at the end.  The loser tree
+	 * holds indices of inputs, tree[0] being the current winner.
+	 */
+	private class Merger
+	{
+		public Merger(byte[] memory, FlatChannel[] inputs, long[] starts, long[] lengths) throws IOException
+		{
+			int count = inputs.length;
+			this.memory = memory;
+			this.memoryBuffer = new SmallMappedFlatBuffer(ByteBuffer.wrap(memory).order(byteOrder));
+			this.inputs = inputs;
+			this.blockSize = memory.length / (count + 1) / objectSize * objectSize;
+			if (blockSize < objectSize * (combiner != null ? 2 : 1)) {
+				throw new IllegalArgumentException("Memory too small for "+count+" inputs: "+memory.length);
+			}
+			this.readPos = new long[count];
+			this.readEnd = new long[count];
+			this.heads = new int[count];
+			this.ends = new int[count];
+			this.tree = new int[Math.max(count, 1)];
+			for (int i = 0; i < count; ++i) {
+				readPos[i] = starts[i];
+				readEnd[i] = starts[i] + lengths[i];
+				fill(i);
+			}
+		}
+
+		public long run(FlatChannel output, long outputPos) throws IOException
+		{
+			int count = inputs.length;
+			if (count == 0) {
+				return 0;
+			}
+			java.util.Arrays.fill(tree, -1);
+			for (int i = count - 1; i >= 0; --i) {
+				adjust(i);
+			}
+
+			int outputStart = count * blockSize, outputLimit = outputStart + blockSize;
+			int outputEnd = outputStart;
+			long written = 0;
+			for (int winner = tree[0]; heads[winner] < ends[winner]; winner = tree[0]) {
+				if (combiner != null && outputEnd > outputStart && comparator.compare(memoryBuffer, outputEnd - objectSize, heads[winner]) == 0) {
+					combiner.combine(memoryBuffer, outputEnd - objectSize, heads[winner]);
+				}
+				else {
+					if (outputEnd == outputLimit) {
+						// With combiner, the last record must stay for combining with following ones:
+						int flushEnd = combiner != null ? outputEnd - objectSize : outputEnd;
+						writeFully(output, outputPos + written, memory, outputStart, flushEnd - outputStart);
+						written += flushEnd - outputStart;
+						System.arraycopy(memory, flushEnd, memory, outputStart, outputEnd - flushEnd);
+						outputEnd = outputStart + (outputEnd - flushEnd);
+					}
+					System.arraycopy(memory, heads[winner], memory, outputEnd, objectSize);
+					outputEnd += objectSize;
+				}
+				heads[winner] += objectSize;
+				if (heads[winner] == ends[winner]) {
+					fill(winner);
+				}
+				adjust(winner);
+			}
+			writeFully(output, outputPos + written, memory, outputStart, outputEnd - outputStart);
+			return written + (outputEnd - outputStart);
+		}
+
+		private void adjust(int s)
+		{
+			for (int t = (s + tree.length) >> 1; t > 0; t >>= 1) {
+				if (beats(tree[t], s)) {
+					int swap = s;
+					s = tree[t];
+					tree[t] = swap;
+				}
+			}
+			tree[0] = s;
+		}
+
+		private boolean beats(int a, int b)
+		{
+			if (a < 0) {
+				return true;
+			}
+			else if (b < 0) {
+				return false;
+			}
+			else if (heads[a] == ends[a]) {
+				return false;
+			}
+			else if (heads[b] == ends[b]) {
+				return true;
+			}
+			int cmp = comparator.compare(memoryBuffer, heads[a], heads[b]);
+			return cmp < 0 || cmp == 0 && a < b;
+		}
+
+		private void fill(int input) throws IOException
+		{
+			int length = (int) Math.min(blockSize, readEnd[input] - readPos[input]);
+			heads[input] = input * blockSize;
+			ends[input] = heads[input] + length;
+			readFully(inputs[input], readPos[input], memory, heads[input], length);
+			readPos[input] += length;
+		}
+
+		private final byte[] memory;
+
+		private final FlatBuffer memoryBuffer;
+
+		private final FlatChannel[] inputs;
+
+		private final int blockSize;
+
+		private final long[] readPos;
+
+		private final long[] readEnd;
+
+		private final int[] heads;
+
+		private final int[] ends;
+
+		private final int[] tree;
+	}
+
+	static void readFully(FlatChannel channel, long position, byte[] data, int offset, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+		while (buffer.hasRemaining()) {
+			int r = channel.read(buffer, position);
+			if (r <= 0) {
+				throw new EOFException("Unexpected end of channel at position: "+position);
+			}
+			position += r;
+		}
+	}
+
+	static void writeFully(FlatChannel channel, long position, byte[] data, int offset, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+		while (buffer.hasRemaining()) {
+			int r = channel.write(buffer, position);
+			if (r <= 0) {
+				throw new IOException("Failed to write channel at position: "+position);
+			}
+			position += r;
+		}
+	}
+
+	/**
+	 * Combiner of equal records.
+	 */
+	@FunctionalInterface
+	public interface Combiner
+	{
+		/**
+		 * Combines next record into accumulated one.
+		 *
+		 * @param buffer
+		 * 	buffer containing both records
+		 * @param accumulated
+		 * 	position of accumulated record, to be updated
+		 * @param next
+		 * 	position of next equal record
+		 */
+		void combine(FlatBuffer buffer, long accumulated, long next);
+	}
+
+	/** Combiner keeping the first of equal records. */
+	public static final Combiner KEEP_FIRST = (buffer, accumulated, next) -> {};
+
+	private final int objectSize;
+
+	private final FlatSort.FlatBufferComparator comparator;
+
+	private final int memorySize;
+
+	private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+
+	private Combiner combiner;
+}
@@ -0,0 +1,297 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+
+
+/**
+ * Searching of sorted {@link FlatBuffer} records.  All the methods work on area of fixed size records and return
+ * positions of records, the end of area if no record matches.
+ */
+public class FlatSearch
+{
+	/**
+	 * Finds first record which is not less than key.
+	 *
+	 * @param buffer
+	 * 	buffer with sorted records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area, must be multiple of objectSize
+	 * @param key
+	 * 	comparator of record against searched key
+	 *
+	 * @return
+	 * 	position of first record not less than key, start + length if there is no such.
+	 */
+	public static long lowerBound(FlatBuffer buffer, int objectSize, long start, long length, KeyComparator key)
+	{
+		checkArea(objectSize, length);
+		return lowerBoundInternal(buffer, objectSize, 0, length / objectSize, start, key);
+	}
+
+	/**
+	 * Finds first record which is greater than key.
+	 *
+	 * @param buffer
+	 * 	buffer with sorted records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area, must be multiple of objectSize
+	 * @param key
+	 * 	comparator of record against searched key
+	 *
+	 * @return
+	 * 	position of first record greater than key, start + length if there is no such.
+	 */
+	public static long upperBound(FlatBuffer buffer, int objectSize, long start, long length, KeyComparator key)
+	{
+		checkArea(objectSize, length);
+		return upperBoundInternal(buffer, objectSize, 0, length / objectSize, start, key);
+	}
+
+	/**
+	 * Finds range of records equal to key.
+	 *
+	 * @param buffer
+	 * 	buffer with sorted records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area, must be multiple of objectSize
+	 * @param key
+	 * 	comparator of record against searched key
+	 *
+	 * @return
+	 * 	two elements array, containing position of first equal record and position after last equal record.
+	 */
+	public static long[] equalRange(FlatBuffer buffer, int objectSize, long start, long length, KeyComparator key)
+	{
+		checkArea(objectSize, length);
+		long lo = 0, hi = length / objectSize;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			int cmp = key.compare(buffer, start + mid * objectSize);
+			if (cmp < 0) {
+				lo = mid + 1;
+			}
+			else if (cmp > 0) {
+				hi = mid;
+			}
+			else {
+				// Both bounds are within already narrowed window:
+				return new long[]{
+					lowerBoundInternal(buffer, objectSize, lo, mid, start, key),
+					upperBoundInternal(buffer, objectSize, mid + 1, hi, start, key)
+				};
+			}
+		}
+		return new long[]{ start + lo * objectSize, start + lo * objectSize };
+	}
+
+	/**
+	 * Finds lower bounds for many probes at once.  The probes must be sorted, the search for each probe continues
+	 * from result of previous one, galloping forward, so dense probes cost only few comparisons each.
+	 *
+	 * @param buffer
+	 * 	buffer with sorted records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area, must be multiple of objectSize
+	 * @param probes
+	 * 	buffer with sorted probes
+	 * @param probeSize
+	 * 	size of single probe
+	 * @param probeStart
+	 * 	start of probes area
+	 * @param probeCount
+	 * 	number of probes
+	 * @param comparator
+	 * 	comparator of record against probe
+	 * @param results
+	 * 	output array of positions of first record not less than probe, for each probe
+	 */
+	public static void lowerBounds(FlatBuffer buffer, int objectSize, long start, long length, FlatBuffer probes, int probeSize, long probeStart, int probeCount, ProbeComparator comparator, long[] results)
+	{
+		checkArea(objectSize, length);
+		if (results.length < probeCount) {
+			throw new IllegalArgumentException("results array too small: "+results.length);
+		}
+		long count = length / objectSize;
+		long lo = 0;
+		for (int i = 0; i < probeCount; ++i) {
+			long probe = probeStart + (long) i * probeSize;
+			KeyComparator key = (b, pos) -> comparator.compare(b, pos, probes, probe);
+			long hi = count;
+			for (long step = 1; lo + step - 1 < count; step <<= 1) {
+				if (key.compare(buffer, start + (lo + step - 1) * objectSize) >= 0) {
+					hi = lo + step - 1;
+					break;
+				}
+				lo += step;
+			}
+			lo = (lowerBoundInternal(buffer, objectSize, lo, hi, start, key) - start) / objectSize;
+			results[i] = start + lo * objectSize;
+		}
+	}
+
+	/**
+	 * Finds first record whose numeric key is not less than searched key, using interpolation search.  For
+	 * uniformly distributed keys this needs O(log log n) probes instead of O(log n), which reduces number of page
+	 * faults on mapped files.  The search falls back to bisection when interpolation does not narrow the window
+	 * enough.
+	 *
+	 * @param buffer
+	 * 	buffer with records sorted by key
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area, must be multiple of objectSize
+	 * @param keyFunction
+	 * 	function extracting signed key from record
+	 * @param key
+	 * 	searched key
+	 *
+	 * @return
+	 * 	position of first record with key not less than searched key, start + length if there is no such.
+	 */
+	public static long interpolationLowerBound(FlatBuffer buffer, int objectSize, long start, long length, LongKeyFunction keyFunction, long key)
+	{
+		checkArea(objectSize, length);
+		long lo = 0, hi = length / objectSize;
+		boolean bisect = false;
+		while (lo < hi) {
+			long mid;
+			if (bisect) {
+				mid = (lo + hi) >>> 1;
+			}
+			else {
+				long loKey = keyFunction.key(buffer, start + lo * objectSize);
+				if (loKey >= key) {
+					break;
+				}
+				long hiKey = keyFunction.key(buffer, start + (hi - 1) * objectSize);
+				if (hiKey < key) {
+					lo = hi;
+					break;
+				}
+				// loKey < key <= hiKey, so the fraction is within (0, 1]:
+				double fraction = ((double) key - (double) loKey) / ((double) hiKey - (double) loKey);
+				mid = Math.min(hi - 1, Math.max(lo + 1, lo + (long) (fraction * (hi - 1 - lo))));
+			}
+			long window = hi - lo;
+			if (keyFunction.key(buffer, start + mid * objectSize) < key) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+			// interpolation must at least halve the window once per two steps, otherwise bisect:
+			bisect = !bisect && hi - lo > window / 2;
+		}
+		return start + lo * objectSize;
+	}
+
+	private static long lowerBoundInternal(FlatBuffer buffer, int objectSize, long lo, long hi, long start, KeyComparator key)
+	{
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (key.compare(buffer, start + mid * objectSize) < 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return start + lo * objectSize;
+	}
+
+	private static long upperBoundInternal(FlatBuffer buffer, int objectSize, long lo, long hi, long start, KeyComparator key)
+	{
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (key.compare(buffer, start + mid * objectSize) <= 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return start + lo * objectSize;
+	}
+
+	private static void checkArea(int objectSize, long length)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+	}
+
+	/**
+	 * Comparator of record against searched key.
+	 */
+	@FunctionalInterface
+	public interface KeyComparator
+	{
+		/**
+		 * Compares record with key.
+		 *
+		 * @param buffer
+		 * 	buffer with records
+		 * @param pos
+		 * 	position of record
+		 *
+		 * @return
+		 * 	negative if record is less than key, positive if greater, 0 if equal.
+		 */
+		int compare(FlatBuffer buffer, long pos);
+	}
+
+	/**
+	 * Comparator of record against probe stored in another buffer.
+	 */
+	@FunctionalInterface
+	public interface ProbeComparator
+	{
+		int compare(FlatBuffer buffer, long pos, FlatBuffer probes, long probePos);
+	}
+
+	/**
+	 * Function extracting numeric key from record.
+	 */
+	@FunctionalInterface
+	public interface LongKeyFunction
+	{
+		long key(FlatBuffer buffer, long pos);
+	}
+}
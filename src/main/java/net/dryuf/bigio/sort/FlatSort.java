@@ -1,9 +1,23 @@
 package net.dryuf.bigio.sort;
 
 import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.OffHeapFlatBuffer;
+import net.dryuf.bigio.SwappedBytesFlatBuffer;
+import net.dryuf.bigio.file.BufferReleaser;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class FlatSort
@@ -16,27 +30,890 @@ public class FlatSort
 		if (length <= objectSize) {
 			return;
 		}
-		byte[] tmp1 = new byte[objectSize];
-		byte[] tmp2 = new byte[objectSize];
-
-		sortInternal(buffer, objectSize, start, start + length - objectSize, comparator, tmp1, tmp2);
+		sortInternal(buffer, objectSize, start, start + length - objectSize, comparator);
 	}
 
 	public static void sort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator)
+	{
+		sort(buffer, objectSize, start, length, comparator, null);
+	}
+
+	/**
+	 * Sorts the area in place, reporting progress to monitor.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param comparator
+	 * 	record comparator
+	 * @param monitor
+	 * 	progress monitor, can be null
+	 *
+	 * @throws java.util.concurrent.CancellationException
+	 * 	if the sort was cancelled via monitor
+	 */
+	public static void sort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, SortMonitor monitor)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (monitor != null) {
+			monitor.begin();
+		}
+		if (length <= objectSize) {
+			if (monitor != null) {
+				monitor.sorted(0, 0, length);
+			}
+			return;
+		}
+		long end = start + length - objectSize;
+		int depthLimit = depthLimit(length / objectSize);
+		sortInternal(buffer, objectSize, start, end, comparator, new long[2], depthLimit, depthLimit, monitor);
+	}
+
+	/**
+	 * Sorts the area in parallel, using common {@link ForkJoinPool}.
+	 *
+	 * @see #parallelSort(FlatBuffer, int, long, long, FlatBufferComparator, ForkJoinPool, long)
+	 */
+	public static void parallelSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator)
+	{
+		parallelSort(buffer, objectSize, start, length, comparator, ForkJoinPool.commonPool(), PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Sorts the area in parallel, using provided {@link ForkJoinPool}.
+	 *
+	 * @see #parallelSort(FlatBuffer, int, long, long, FlatBufferComparator, ForkJoinPool, long)
+	 */
+	public static void parallelSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, ForkJoinPool pool)
+	{
+		parallelSort(buffer, objectSize, start, length, comparator, pool, PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Sorts the area in place in parallel.  Partitions bigger than threshold are split and their parts are
+	 * processed as separate {@link ForkJoinPool} tasks, smaller partitions are sorted sequentially.  The buffer must
+	 * support concurrent access to distinct regions, which is the case for all the provided implementations.
+	 *
+	 * If any part fails, the other parts stop at their next partition and the exception is thrown only once no task
+	 * accesses the buffer anymore, leaving the area partially sorted.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param comparator
+	 * 	record comparator
+	 * @param pool
+	 * 	pool to run the tasks in
+	 * @param threshold
+	 * 	minimal number of records in partition to be split into parallel tasks
+	 */
+	public static void parallelSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, ForkJoinPool pool, long threshold)
+	{
+		parallelSort(buffer, objectSize, start, length, comparator, pool, threshold, null);
+	}
+
+	/**
+	 * Sorts the area in place in parallel, reporting progress to monitor.
+	 *
+	 * @see #parallelSort(FlatBuffer, int, long, long, FlatBufferComparator, ForkJoinPool, long)
+	 *
+	 * @param monitor
+	 * 	progress monitor, can be null
+	 *
+	 * @throws java.util.concurrent.CancellationException
+	 * 	if the sort was cancelled via monitor
+	 */
+	public static void parallelSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, ForkJoinPool pool, long threshold, SortMonitor monitor)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (monitor != null) {
+			monitor.begin();
+		}
+		if (length <= objectSize) {
+			if (monitor != null) {
+				monitor.sorted(0, 0, length);
+			}
+			return;
+		}
+		int depthLimit = depthLimit(length / objectSize);
+		pool.invoke(new ParallelSortTask(buffer, objectSize, start, start + length - objectSize, comparator, Math.max(threshold, INSERTION_THRESHOLD) * objectSize, depthLimit, depthLimit, monitor, new AtomicBoolean()));
+	}
+
+	/**
+	 * Sorts the area into target in parallel, using common {@link ForkJoinPool}.
+	 *
+	 * @see #parallelSampleSort(FlatBuffer, int, long, long, FlatBufferComparator, FlatBuffer, long, ForkJoinPool)
+	 */
+	public static void parallelSampleSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, FlatBuffer target, long targetPos)
+	{
+		parallelSampleSort(buffer, objectSize, start, length, comparator, target, targetPos, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Sorts the area into target in parallel, using sample sort.  Unlike {@link #parallelSort}, the first level
+	 * does not partition on single thread: the splitters are selected from sorted random sample, the records are
+	 * counted and scattered into bucket areas of target by parallel tasks, each processing its own chunk of source,
+	 * and the buckets are then sorted independently.
+	 *
+	 * Note the comparator may be called with small heap buffer containing the splitters and copy of classified
+	 * record, instead of original buffer.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param comparator
+	 * 	record comparator
+	 * @param target
+	 * 	target buffer, must not overlap with sorted area
+	 * @param targetPos
+	 * 	position in target buffer
+	 * @param pool
+	 * 	pool to run the tasks in
+	 */
+	public static void parallelSampleSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, FlatBuffer target, long targetPos, ForkJoinPool pool)
 	{
 		if (length % objectSize != 0) {
 			throw new IllegalArgumentException("Area size is not dividable by objectSize");
 		}
+		new SampleFlatSorter(buffer, objectSize, comparator, pool).sort(start, length, target, targetPos);
+	}
+
+	/**
+	 * Selects k-th record, i.e. moves into k-th position the record which would be there if the area was sorted.
+	 * All records before are less or equal and all records after are greater or equal.  Runs in expected linear
+	 * time, falls back to heap sort for degenerate inputs.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area, must be multiple of objectSize
+	 * @param k
+	 * 	index of record to select
+	 * @param comparator
+	 * 	record comparator
+	 */
+	public static void select(FlatBuffer buffer, int objectSize, long start, long length, long k, FlatBufferComparator comparator)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (k < 0 || k >= length / objectSize) {
+			throw new IllegalArgumentException("k outside of area: "+k);
+		}
+		selectInternal(buffer, objectSize, start, start + length - objectSize, start + k * objectSize, comparator);
+	}
+
+	/**
+	 * Sorts first k records of the area, i.e. moves k smallest records to the beginning, in sorted order.  The
+	 * order of remaining records is undefined.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area, must be multiple of objectSize
+	 * @param k
+	 * 	number of records to sort
+	 * @param comparator
+	 * 	record comparator
+	 */
+	public static void partialSort(FlatBuffer buffer, int objectSize, long start, long length, long k, FlatBufferComparator comparator)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative: "+k);
+		}
+		long count = length / objectSize;
+		if (k >= count) {
+			sort(buffer, objectSize, start, length, comparator);
+			return;
+		}
+		if (k == 0) {
+			return;
+		}
+		selectInternal(buffer, objectSize, start, start + length - objectSize, start + k * objectSize, comparator);
+		sort(buffer, objectSize, start, k * objectSize, comparator);
+	}
+
+	static void selectInternal(FlatBuffer buffer, int objectSize, long offset, long end, long target, FlatBufferComparator comparator)
+	{
+		long[] bounds = new long[2];
+		int depthLimit = depthLimit((end - offset) / objectSize + 1);
+		for (;;) {
+			if (end - offset < INSERTION_THRESHOLD * objectSize) {
+				insertionSort(buffer, objectSize, offset, end, comparator);
+				return;
+			}
+			if (--depthLimit < 0) {
+				heapSort(buffer, objectSize, offset, end, comparator);
+				return;
+			}
+			partition(buffer, objectSize, offset, end, comparator, bounds);
+			if (target < bounds[0]) {
+				end = bounds[0] - objectSize;
+			}
+			else if (target > bounds[1]) {
+				offset = bounds[1] + objectSize;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sorts the area stably, using scratch buffer of up to {@link #STABLE_SCRATCH_SIZE} bytes allocated off-heap.
+	 * The scratch buffer is released once the sort finishes, so the comparator must not keep the buffers it was
+	 * called with.
+	 *
+	 * @see #stableSort(FlatBuffer, int, long, long, FlatBufferComparator, FlatBuffer)
+	 */
+	public static void stableSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator)
+	{
+		checkStableArea(buffer, objectSize, start, length);
+		if (length <= objectSize) {
+			return;
+		}
+		long scratchSize = Math.max(objectSize, Math.min((length / objectSize + 1) / 2 * objectSize, STABLE_SCRATCH_SIZE / objectSize * objectSize));
+		ByteBuffer scratchBuffer = ByteBuffer.allocateDirect((int) scratchSize).order(buffer.getByteOrder());
+		try {
+			stableSort(buffer, objectSize, start, length, comparator, new SmallMappedFlatBuffer(scratchBuffer));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		finally {
+			BufferReleaser.release(scratchBuffer);
+		}
+	}
+
+	/**
+	 * Sorts the area stably, i.e. equal records keep their original order.  The sort detects natural runs and
+	 * merges them with galloping, so it is close to linear for presorted input.  Merges go through scratch buffer,
+	 * merges bigger than scratch are split using rotations.
+	 *
+	 * Note the comparator may be called with view joining the sorted buffer and scratch buffer, instead of original
+	 * buffer.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param comparator
+	 * 	record comparator
+	 * @param scratch
+	 * 	scratch buffer, of any size, the bigger the faster
+	 */
+	public static void stableSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, FlatBuffer scratch)
+	{
+		checkStableArea(buffer, objectSize, start, length);
 		if (length <= objectSize) {
 			return;
 		}
-		byte[] tmp1 = new byte[objectSize];
-		byte[] tmp2 = new byte[objectSize];
+		if (scratch.getByteOrder() != buffer.getByteOrder()) {
+			scratch = new SwappedBytesFlatBuffer(scratch);
+		}
+		new StableFlatSorter(buffer, objectSize, comparator, scratch).sort(start, length);
+	}
+
+	private static void checkStableArea(FlatBuffer buffer, int objectSize, long start, long length)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (start < 0 || length < 0 || start > buffer.size() - length) {
+			throw new IllegalArgumentException("Area out of buffer: start="+start+" length="+length+" size="+buffer.size());
+		}
+	}
+
+	/**
+	 * Sorts index of records instead of records themselves.  The index is filled with offsets of records (as long in
+	 * index byte order) and the offsets are sorted according to records they point to.  This is significantly
+	 * faster than sorting the records directly when they are big.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param comparator
+	 * 	record comparator
+	 * @param index
+	 * 	index buffer, at least {@link #INDEX_ENTRY_SIZE} bytes per record
+	 */
+	public static void sortIndex(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, FlatBuffer index)
+	{
+		long count = checkIndex(objectSize, length, index, INDEX_ENTRY_SIZE);
+		for (long i = 0; i < count; ++i) {
+			index.putLong(i * INDEX_ENTRY_SIZE, start + i * objectSize);
+		}
+		sort(index, INDEX_ENTRY_SIZE, 0, count * INDEX_ENTRY_SIZE,
+			(ib, left, right) -> comparator.compare(buffer, ib.getLong(left), ib.getLong(right)));
+	}
+
+	/**
+	 * Sorts index of records instead of records themselves, caching key prefix in index.  Each index entry consists
+	 * of 8-byte key prefix and 8-byte record offset.  Entries are compared by prefix as unsigned numbers first and
+	 * only if prefixes are equal, the comparator is called.  The prefix function must be consistent with
+	 * comparator.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param prefixFunction
+	 * 	function extracting key prefix of record
+	 * @param comparator
+	 * 	record comparator
+	 * @param index
+	 * 	index buffer, at least {@link #PREFIX_INDEX_ENTRY_SIZE} bytes per record
+	 */
+	public static void sortIndex(FlatBuffer buffer, int objectSize, long start, long length, KeyPrefixFunction prefixFunction, FlatBufferComparator comparator, FlatBuffer index)
+	{
+		long count = checkIndex(objectSize, length, index, PREFIX_INDEX_ENTRY_SIZE);
+		for (long i = 0; i < count; ++i) {
+			long offset = start + i * objectSize;
+			index.putLong(i * PREFIX_INDEX_ENTRY_SIZE, prefixFunction.prefix(buffer, offset));
+			index.putLong(i * PREFIX_INDEX_ENTRY_SIZE + 8, offset);
+		}
+		sort(index, PREFIX_INDEX_ENTRY_SIZE, 0, count * PREFIX_INDEX_ENTRY_SIZE,
+			(ib, left, right) -> {
+				int cmp = Long.compareUnsigned(ib.getLong(left), ib.getLong(right));
+				return cmp != 0 ? cmp : comparator.compare(buffer, ib.getLong(left + 8), ib.getLong(right + 8));
+			});
+	}
+
+	/**
+	 * Sorts index of normalized keys.  Each index entry consists of normalized key as produced by encoder, padded to
+	 * multiple of 8 bytes, and 8-byte record offset.  The keys are compared as unsigned 8-byte words, the first
+	 * word being the cached key prefix, so the records are not accessed during sorting at all.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param encoder
+	 * 	encoder of record keys
+	 * @param index
+	 * 	index buffer, at least {@link KeyEncoder#indexEntrySize()} bytes per record
+	 */
+	public static void sortIndex(FlatBuffer buffer, int objectSize, long start, long length, KeyEncoder encoder, FlatBuffer index)
+	{
+		int entrySize = encoder.indexEntrySize();
+		long count = checkIndex(objectSize, length, index, entrySize);
+		byte[] scratch = new byte[entrySize - 8];
+		for (long i = 0; i < count; ++i) {
+			encoder.fillIndexEntry(buffer, start + i * objectSize, scratch, index, i * entrySize);
+		}
+		int keyLength = scratch.length;
+		sort(index, entrySize, 0, count * entrySize,
+			(ib, left, right) -> {
+				for (int i = 0; i < keyLength; i += 8) {
+					int cmp = Long.compareUnsigned(ib.getLong(left + i), ib.getLong(right + i));
+					if (cmp != 0) {
+						return cmp;
+					}
+				}
+				return 0;
+			});
+	}
+
+	/**
+	 * Copies records in order given by index into target.  The target is written sequentially.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param index
+	 * 	index, as created by sortIndex methods
+	 * @param indexEntrySize
+	 * 	size of index entry, {@link #INDEX_ENTRY_SIZE}, {@link #PREFIX_INDEX_ENTRY_SIZE} or
+	 * 	{@link KeyEncoder#indexEntrySize()}, record offset is in its last 8 bytes
+	 * @param count
+	 * 	number of records
+	 * @param target
+	 * 	target buffer
+	 * @param targetPos
+	 * 	position in target buffer
+	 */
+	public static void permute(FlatBuffer buffer, int objectSize, FlatBuffer index, int indexEntrySize, long count, FlatBuffer target, long targetPos)
+	{
+		byte[] record = new byte[objectSize];
+		for (long i = 0; i < count; ++i) {
+			buffer.getBytes(index.getLong(i * indexEntrySize + indexEntrySize - 8), record);
+			target.putBytes(targetPos + i * objectSize, record);
+		}
+	}
+
+	/**
+	 * Sorts records from buffer into target, sorting offset index first and copying records in single sequential
+	 * pass.
+	 *
+	 * @see #sortIndex(FlatBuffer, int, long, long, FlatBufferComparator, FlatBuffer)
+	 * @see #permute(FlatBuffer, int, FlatBuffer, int, long, FlatBuffer, long)
+	 */
+	public static void indexSort(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, FlatBuffer index, FlatBuffer target, long targetPos)
+	{
+		sortIndex(buffer, objectSize, start, length, comparator, index);
+		permute(buffer, objectSize, index, INDEX_ENTRY_SIZE, length / objectSize, target, targetPos);
+	}
+
+	private static long checkIndex(int objectSize, long length, FlatBuffer index, int entrySize)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		long count = length / objectSize;
+		if (index.size() / entrySize < count) {
+			throw new IllegalArgumentException("Index too small for "+count+" records: "+index.size());
+		}
+		return count;
+	}
+
+	/**
+	 * Sorts the area by 32-bit integer key, using in-place MSD radix (American flag) sort.  No comparator is called,
+	 * the records are distributed directly according to key bytes.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param keyOffset
+	 * 	offset of key within record
+	 * @param signed
+	 * 	whether key is signed
+	 * @param byteOrder
+	 * 	byte order of key
+	 */
+	public static void radixSortByInt(FlatBuffer buffer, int objectSize, long start, long length, int keyOffset, boolean signed, ByteOrder byteOrder)
+	{
+		radixSort(buffer, objectSize, start, length, keyOffset, Integer.BYTES, signed, byteOrder);
+	}
+
+	/**
+	 * Sorts the area by 64-bit integer key, using in-place MSD radix (American flag) sort.  No comparator is called,
+	 * the records are distributed directly according to key bytes.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param keyOffset
+	 * 	offset of key within record
+	 * @param signed
+	 * 	whether key is signed
+	 * @param byteOrder
+	 * 	byte order of key
+	 */
+	public static void radixSortByLong(FlatBuffer buffer, int objectSize, long start, long length, int keyOffset, boolean signed, ByteOrder byteOrder)
+	{
+		radixSort(buffer, objectSize, start, length, keyOffset, Long.BYTES, signed, byteOrder);
+	}
+
+	/**
+	 * Sorts the area of records by primitive key, using introsort on cached key values.  Records of size stride are
+	 * moved as whole while only the key is read and compared, without calling any comparator.  The pivot key is
+	 * kept in local variable during partitioning so each comparison reads only single key from buffer.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param stride
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of stride
+	 * @param keyOffset
+	 * 	offset of key within record
+	 * @param keyWidth
+	 * 	width of key in bytes, one of 1, 2, 4 or 8
+	 * @param signed
+	 * 	whether key is signed
+	 * @param byteOrder
+	 * 	byte order of key
+	 */
+	public static void sortByKey(FlatBuffer buffer, int stride, long start, long length, int keyOffset, int keyWidth, boolean signed, ByteOrder byteOrder)
+	{
+		if (length % stride != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by stride");
+		}
+		if (keyWidth != 1 && keyWidth != 2 && keyWidth != 4 && keyWidth != 8) {
+			throw new IllegalArgumentException("Unsupported keyWidth: "+keyWidth);
+		}
+		if (keyOffset < 0 || keyOffset + keyWidth > stride) {
+			throw new IllegalArgumentException("Key is outside of object: keyOffset="+keyOffset);
+		}
+		if (length <= stride) {
+			return;
+		}
+		KeySorter sorter = new KeySorter(buffer, stride, keyOffset, keyWidth, signed, byteOrder != buffer.getByteOrder());
+		sorter.sort(start, start + length - stride, depthLimit(length / stride));
+	}
+
+	/**
+	 * Sorts the area in place by primitive key, using key-pointer sort.
+	 *
+	 * @see #keyPointerSort(FlatBuffer, int, long, long, int, int, boolean, ByteOrder, FlatBuffer, long)
+	 */
+	public static void keyPointerSort(FlatBuffer buffer, int objectSize, long start, long length, int keyOffset, int keyWidth, boolean signed, ByteOrder byteOrder)
+	{
+		keyPointerSort(buffer, objectSize, start, length, keyOffset, keyWidth, signed, byteOrder, null, 0);
+	}
+
+	/**
+	 * Sorts the area by primitive key, using key-pointer sort.  The key and record number of each record are packed
+	 * into single long of heap array, the array is sorted by primitive sort without any comparator or buffer
+	 * access and the records are finally permuted according to it, either in place following the permutation
+	 * cycles, or into target written sequentially.  Equal keys keep their original order.  When the number of
+	 * records exceeds maximum array size, the pointers are held in {@link OffHeapFlatBuffer} instead.
+	 *
+	 * The key width is limited to 4 bytes and number of records to 2^32, wider keys can be sorted by
+	 * {@link #sortByKey(FlatBuffer, int, long, long, int, int, boolean, ByteOrder)}.
+	 *
+	 * @param buffer
+	 * 	buffer to sort
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param keyOffset
+	 * 	offset of key within record
+	 * @param keyWidth
+	 * 	width of key in bytes, one of 1, 2 or 4
+	 * @param signed
+	 * 	whether key is signed
+	 * @param byteOrder
+	 * 	byte order of key
+	 * @param target
+	 * 	target buffer, null to sort in place
+	 * @param targetPos
+	 * 	position in target buffer
+	 */
+	public static void keyPointerSort(FlatBuffer buffer, int objectSize, long start, long length, int keyOffset, int keyWidth, boolean signed, ByteOrder byteOrder, FlatBuffer target, long targetPos)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (keyWidth != 1 && keyWidth != 2 && keyWidth != 4) {
+			throw new IllegalArgumentException("Unsupported keyWidth: "+keyWidth);
+		}
+		if (keyOffset < 0 || keyOffset + keyWidth > objectSize) {
+			throw new IllegalArgumentException("Key is outside of object: keyOffset="+keyOffset);
+		}
+		long count = length / objectSize;
+		if (count > MAX_OFF_HEAP_KEY_POINTER_COUNT) {
+			throw new IllegalArgumentException("Too many records for key-pointer sort: "+count);
+		}
+		if (count <= MAX_KEY_POINTER_COUNT) {
+			keyPointerSortHeap(buffer, objectSize, start, (int) count, keyOffset, keyWidth, signed, byteOrder, target, targetPos);
+		}
+		else {
+			keyPointerSortOffHeap(buffer, objectSize, start, count, keyOffset, keyWidth, signed, byteOrder, target, targetPos);
+		}
+	}
+
+	private static void keyPointerSortHeap(FlatBuffer buffer, int objectSize, long start, int count, int keyOffset, int keyWidth, boolean signed, ByteOrder byteOrder, FlatBuffer target, long targetPos)
+	{
+		boolean swapBytes = byteOrder != buffer.getByteOrder();
+		long signFlip = signed ? 1L << (keyWidth * 8 - 1) : 0;
+		long[] pointers = new long[count];
+		for (int i = 0; i < pointers.length; ++i) {
+			long key = unsignedKey(buffer, start + i * (long) objectSize + keyOffset, keyWidth, swapBytes) ^ signFlip;
+			// Flipping the top bit converts unsigned packed value into signed order of primitive sort:
+			pointers[i] = (key << 32 | i) ^ Long.MIN_VALUE;
+		}
+		Arrays.sort(pointers);
+		for (int i = 0; i < pointers.length; ++i) {
+			pointers[i] &= 0xffffffffL;
+		}
+
+		if (target != null) {
+			byte[] record = new byte[objectSize];
+			for (int i = 0; i < pointers.length; ++i) {
+				buffer.getBytes(start + pointers[i] * objectSize, record);
+				target.putBytes(targetPos + i * (long) objectSize, record);
+			}
+		}
+		else {
+			permuteCycles(buffer, objectSize, start, pointers);
+		}
+	}
+
+	/**
+	 * Key-pointer sort with pointers held in off-heap buffer, for counts exceeding maximum array size.  The packed
+	 * pointers are sorted by {@link #sortByKey(FlatBuffer, int, long, long, int, int, boolean, ByteOrder)} as
+	 * unsigned 8-byte keys, record number occupies the low 32 bits.
+	 */
+	static void keyPointerSortOffHeap(FlatBuffer buffer, int objectSize, long start, long count, int keyOffset, int keyWidth, boolean signed, ByteOrder byteOrder, FlatBuffer target, long targetPos)
+	{
+		boolean swapBytes = byteOrder != buffer.getByteOrder();
+		long signFlip = signed ? 1L << (keyWidth * 8 - 1) : 0;
+		try (OffHeapFlatBuffer pointers = OffHeapFlatBuffer.allocate(count * Long.BYTES)) {
+			pointers.order(ByteOrder.nativeOrder());
+			for (long i = 0; i < count; ++i) {
+				long key = unsignedKey(buffer, start + i * objectSize + keyOffset, keyWidth, swapBytes) ^ signFlip;
+				pointers.putLong(i * Long.BYTES, key << 32 | i);
+			}
+			sortByKey(pointers, Long.BYTES, 0, count * Long.BYTES, 0, Long.BYTES, false, pointers.getByteOrder());
+
+			if (target != null) {
+				byte[] record = new byte[objectSize];
+				for (long i = 0; i < count; ++i) {
+					long source = pointers.getLong(i * Long.BYTES) & 0xffffffffL;
+					buffer.getBytes(start + source * objectSize, record);
+					target.putBytes(targetPos + i * objectSize, record);
+				}
+			}
+			else {
+				for (long i = 0; i < count; ++i) {
+					pointers.putLong(i * Long.BYTES, pointers.getLong(i * Long.BYTES) & 0xffffffffL);
+				}
+				permuteCycles(buffer, objectSize, start, pointers, count);
+			}
+		}
+	}
+
+	/**
+	 * Permutes records in place, so position i gets record originally at position sources[i].  Follows the
+	 * permutation cycles, each record is moved once.  The sources array is destroyed.
+	 */
+	private static void permuteCycles(FlatBuffer buffer, int objectSize, long start, long[] sources)
+	{
+		byte[] record = new byte[objectSize];
+		for (int i = 0; i < sources.length; ++i) {
+			if (sources[i] < 0 || sources[i] == i) {
+				continue;
+			}
+			buffer.getBytes(start + i * (long) objectSize, record);
+			int j = i;
+			for (;;) {
+				int k = (int) sources[j];
+				sources[j] = -1;
+				if (k == i) {
+					buffer.putBytes(start + j * (long) objectSize, record);
+					break;
+				}
+				buffer.copyWithin(start + k * (long) objectSize, start + j * (long) objectSize, objectSize);
+				j = k;
+			}
+		}
+	}
+
+	/**
+	 * Permutes records in place, equivalent of {@link #permuteCycles(FlatBuffer, int, long, long[])} with sources
+	 * held in buffer of native longs.
+	 */
+	private static void permuteCycles(FlatBuffer buffer, int objectSize, long start, FlatBuffer sources, long count)
+	{
+		byte[] record = new byte[objectSize];
+		for (long i = 0; i < count; ++i) {
+			long first = sources.getLong(i * Long.BYTES);
+			if (first < 0 || first == i) {
+				continue;
+			}
+			buffer.getBytes(start + i * objectSize, record);
+			long j = i;
+			for (;;) {
+				long k = sources.getLong(j * Long.BYTES);
+				sources.putLong(j * Long.BYTES, -1);
+				if (k == i) {
+					buffer.putBytes(start + j * objectSize, record);
+					break;
+				}
+				buffer.copyWithin(start + k * objectSize, start + j * objectSize, objectSize);
+				j = k;
+			}
+		}
+	}
+
+	/**
+	 * Removes duplicates from sorted area in place, keeping the first of equal records.
+	 *
+	 * @see #reduceSorted(FlatBuffer, int, long, long, FlatBufferComparator, FlatMerge.Combiner)
+	 */
+	public static long unique(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator)
+	{
+		return reduceSorted(buffer, objectSize, start, length, comparator, null);
+	}
+
+	/**
+	 * Collapses groups of equal records in sorted area in place, in single sequential pass.  The first record of
+	 * each group is kept at the beginning of compacted area and the following equal records are combined into it.
+	 * The combiner must not modify the compared key.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param comparator
+	 * 	key comparator
+	 * @param combiner
+	 * 	combiner of equal records, null to keep the first one only
+	 *
+	 * @return
+	 * 	length of compacted area.
+	 */
+	public static long reduceSorted(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, FlatMerge.Combiner combiner)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (length == 0) {
+			return 0;
+		}
+		long last = start;
+		for (long pos = start + objectSize, end = start + length; pos < end; pos += objectSize) {
+			if (comparator.compare(buffer, last, pos) == 0) {
+				if (combiner != null) {
+					combiner.combine(buffer, last, pos);
+				}
+			}
+			else {
+				last += objectSize;
+				if (last != pos) {
+					buffer.copyWithin(pos, last, objectSize);
+				}
+			}
+		}
+		return last + objectSize - start;
+	}
 
-		sortInternal(buffer, objectSize, start, start + length - objectSize, comparator, tmp1, tmp2);
+	/**
+	 * Collapses groups of equal records in sorted area and writes them into target, in single sequential pass.
+	 * The source is not modified, the records are combined in small heap buffer, so the combiner is called with
+	 * that buffer instead of the source one.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param objectSize
+	 * 	size of single record
+	 * @param start
+	 * 	start of sorted area
+	 * @param length
+	 * 	length of sorted area, must be multiple of objectSize
+	 * @param comparator
+	 * 	key comparator
+	 * @param combiner
+	 * 	combiner of equal records, null to keep the first one only
+	 * @param target
+	 * 	target buffer
+	 * @param targetPos
+	 * 	position in target buffer
+	 *
+	 * @return
+	 * 	number of bytes written.
+	 */
+	public static long reduceSorted(FlatBuffer buffer, int objectSize, long start, long length, FlatBufferComparator comparator, FlatMerge.Combiner combiner, FlatBuffer target, long targetPos)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (length == 0) {
+			return 0;
+		}
+		byte[] records = new byte[2 * objectSize];
+		FlatBuffer recordsBuffer;
+		try {
+			recordsBuffer = new SmallMappedFlatBuffer(ByteBuffer.wrap(records).order(buffer.getByteOrder()));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		long written = 0;
+		long first = start;
+		buffer.getBytes(first, records, 0, objectSize);
+		for (long pos = start + objectSize, end = start + length; pos < end; pos += objectSize) {
+			if (comparator.compare(buffer, first, pos) == 0) {
+				if (combiner != null) {
+					buffer.getBytes(pos, records, objectSize, objectSize);
+					combiner.combine(recordsBuffer, 0, objectSize);
+				}
+			}
+			else {
+				target.putBytes(targetPos + written, records, 0, objectSize);
+				written += objectSize;
+				first = pos;
+				buffer.getBytes(first, records, 0, objectSize);
+			}
+		}
+		target.putBytes(targetPos + written, records, 0, objectSize);
+		return written + objectSize;
+	}
+
+	private static void radixSort(FlatBuffer buffer, int objectSize, long start, long length, int keyOffset, int keySize, boolean signed, ByteOrder byteOrder)
+	{
+		if (length % objectSize != 0) {
+			throw new IllegalArgumentException("Area size is not dividable by objectSize");
+		}
+		if (keyOffset < 0 || keyOffset + keySize > objectSize) {
+			throw new IllegalArgumentException("Key is outside of object: keyOffset="+keyOffset);
+		}
+		if (length <= objectSize) {
+			return;
+		}
+		RadixSorter sorter = new RadixSorter(buffer, objectSize, keyOffset, keySize, signed, byteOrder != buffer.getByteOrder());
+		sorter.sort(start, start + length, (keySize - 1) * 8);
 	}
 
-	static void sortInternal(FlatBuffer buffer, int objectSize, long offset, long end, Comparator<ByteBuffer> comparator, byte[] tmp1, byte[] tmp2)
+	static void sortInternal(FlatBuffer buffer, int objectSize, long offset, long end, Comparator<ByteBuffer> comparator)
 	{
 		for (;;) {
 			if (end - offset <= objectSize) {
@@ -46,7 +923,7 @@ public class FlatSort
 				ByteBuffer left = buffer.subByteBuffer(offset, objectSize);
 				ByteBuffer right = buffer.subByteBuffer(offset + objectSize, objectSize);
 				if (comparator.compare(left, right) > 0) {
-					_swapOffsets(buffer, offset, offset + objectSize, tmp1, tmp2, 0L);
+					_swapOffsets(buffer, offset, offset + objectSize, objectSize, 0L);
 				}
 				return;
 			}
@@ -59,7 +936,7 @@ public class FlatSort
 				ByteBuffer eb = buffer.subByteBuffer(eq, objectSize);
 				int cmp = comparator.compare(eb, pivot);
 				if (cmp < 0) {
-					long pivotNew = _swapOffsets(buffer, eq, lt, tmp1, tmp2, pivotPos);
+					long pivotNew = _swapOffsets(buffer, eq, lt, objectSize, pivotPos);
 					if (pivotNew != pivotPos) {
 						pivotPos = pivotNew;
 						pivot = buffer.subByteBuffer(pivotPos, objectSize);
@@ -68,7 +945,7 @@ public class FlatSort
 					eq += objectSize;
 				}
 				else if (cmp > 0) {
-					long pivotNew = _swapOffsets(buffer, eq, gt, tmp1, tmp2, pivotPos);
+					long pivotNew = _swapOffsets(buffer, eq, gt, objectSize, pivotPos);
 					if (pivotNew != pivotPos) {
 						pivotPos = pivotNew;
 						pivot = buffer.subByteBuffer(pivotPos, objectSize);
@@ -82,68 +959,215 @@ public class FlatSort
 
 			// Smaller goes recursive, bigger is TCO:
 			if (lt - offset < end - gt) {
-				sortInternal(buffer, objectSize, offset, lt - objectSize, comparator, tmp1, tmp2);
+				sortInternal(buffer, objectSize, offset, lt - objectSize, comparator);
 				offset = gt + objectSize;
 			}
 			else {
-				sortInternal(buffer, objectSize, gt + objectSize, end, comparator, tmp1, tmp2);
+				sortInternal(buffer, objectSize, gt + objectSize, end, comparator);
 				end = lt - objectSize;
 			}
 		}
 	}
 
-	static void sortInternal(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator, byte[] tmp1, byte[] tmp2)
+	static void sortInternal(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator)
+	{
+		long[] bounds = new long[2];
+		int depthLimit = depthLimit((end - offset) / objectSize + 1);
+		sortInternal(buffer, objectSize, offset, end, comparator, bounds, depthLimit, depthLimit, null);
+	}
+
+	/**
+	 * Introsort of the area between offset and end (inclusive).  Uses three-way partitioning around median-of-three
+	 * or ninther pivot, insertion sort for small partitions and falls back to heap sort once depthLimit is exhausted.
+	 * Reports the progress to monitor, if not null, the depth being computed against initialDepthLimit this sort
+	 * started with.
+	 */
+	static void sortInternal(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator, long[] bounds, int depthLimit, int initialDepthLimit, SortMonitor monitor)
 	{
 		for (;;) {
-			if (end - offset <= objectSize) {
-				if (end - offset <= 0) {
-					return;
-				}
-				if (comparator.compare(buffer, offset, offset + objectSize) > 0) {
-					_swapOffsetsPivot(buffer, offset, offset + objectSize, tmp1, tmp2, 0);
+			if (end - offset < INSERTION_THRESHOLD * objectSize) {
+				long swaps = insertionSort(buffer, objectSize, offset, end, comparator);
+				if (monitor != null) {
+					monitor.sorted((end - offset) / objectSize + swaps, swaps, end - offset + objectSize);
 				}
 				return;
 			}
-			long pivot = offset + ((end - offset) - (end - offset) % (2L*objectSize)) / 2;
-
-			long lt = offset, eq = offset, gt = end;
-			while (eq <= gt) {
-				int cmp = comparator.compare(buffer, eq, pivot);
-				if (cmp < 0) {
-					pivot = _swapOffsetsPivot(buffer, eq, lt, tmp1, tmp2, pivot);
-					lt += objectSize;
-					eq += objectSize;
-				}
-				else if (cmp > 0) {
-					pivot = _swapOffsetsPivot(buffer, eq, gt, tmp1, tmp2, pivot);
-					gt -= objectSize;
-				}
-				else {
-					eq += objectSize;
+			if (--depthLimit < 0) {
+				long swaps = heapSort(buffer, objectSize, offset, end, comparator, monitor);
+				if (monitor != null) {
+					monitor.heapSorted(2 * (swaps + (end - offset) / objectSize), swaps, end - offset + objectSize);
 				}
+				return;
+			}
+			long swaps = partition(buffer, objectSize, offset, end, comparator, bounds);
+			long lt = bounds[0], gt = bounds[1];
+			if (monitor != null) {
+				monitor.partitioned(initialDepthLimit - depthLimit, partitionComparisons(objectSize, offset, end), swaps, gt - lt + objectSize);
 			}
 
 			// Smaller goes recursive, bigger is TCO:
 			if (lt - offset < end - gt) {
-				sortInternal(buffer, objectSize, offset, lt - objectSize, comparator, tmp1, tmp2);
+				sortInternal(buffer, objectSize, offset, lt - objectSize, comparator, bounds, depthLimit, initialDepthLimit, monitor);
 				offset = gt + objectSize;
 			}
 			else {
-				sortInternal(buffer, objectSize, gt + objectSize, end, comparator, tmp1, tmp2);
+				sortInternal(buffer, objectSize, gt + objectSize, end, comparator, bounds, depthLimit, initialDepthLimit, monitor);
 				end = lt - objectSize;
 			}
 		}
 	}
 
-	private static long _swapOffsets(FlatBuffer buffer, long i0, long i1, byte[] tmp1, byte[] tmp2, long pivotPos)
+	/**
+	 * Estimates number of comparisons done by partition, i.e. one per record and those of pivot selection.
+	 */
+	private static long partitionComparisons(int objectSize, long offset, long end)
+	{
+		long count = (end - offset) / objectSize + 1;
+		return count + (count < NINTHER_THRESHOLD ? 3 : 12);
+	}
+
+	/**
+	 * Three-way partitions the area between offset and end (inclusive).  On return, bounds[0] contains offset of
+	 * first element equal to pivot and bounds[1] contains offset of last element equal to pivot.
+	 *
+	 * @return
+	 * 	number of swaps.
+	 */
+	static long partition(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator, long[] bounds)
+	{
+		long pivot = selectPivot(buffer, objectSize, offset, end, comparator);
+
+		long lt = offset, eq = offset, gt = end;
+		long swaps = 0;
+		while (eq <= gt) {
+			int cmp = comparator.compare(buffer, eq, pivot);
+			if (cmp < 0) {
+				pivot = _swapOffsets(buffer, eq, lt, objectSize, pivot);
+				++swaps;
+				lt += objectSize;
+				eq += objectSize;
+			}
+			else if (cmp > 0) {
+				pivot = _swapOffsets(buffer, eq, gt, objectSize, pivot);
+				++swaps;
+				gt -= objectSize;
+			}
+			else {
+				eq += objectSize;
+			}
+		}
+		bounds[0] = lt;
+		bounds[1] = gt;
+		return swaps;
+	}
+
+	/**
+	 * Selects pivot as median of first, middle and last element, or as Tukey's ninther for bigger areas.
+	 */
+	static long selectPivot(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator)
+	{
+		long count = (end - offset) / objectSize + 1;
+		long middle = offset + count / 2 * objectSize;
+		if (count < NINTHER_THRESHOLD) {
+			return median3(buffer, offset, middle, end, comparator);
+		}
+		long step = count / 8 * objectSize;
+		return median3(buffer,
+			median3(buffer, offset, offset + step, offset + 2 * step, comparator),
+			median3(buffer, middle - step, middle, middle + step, comparator),
+			median3(buffer, end - 2 * step, end - step, end, comparator),
+			comparator
+		);
+	}
+
+	private static long median3(FlatBuffer buffer, long a, long b, long c, FlatBufferComparator comparator)
+	{
+		if (comparator.compare(buffer, a, b) < 0) {
+			if (comparator.compare(buffer, b, c) < 0) {
+				return b;
+			}
+			return comparator.compare(buffer, a, c) < 0 ? c : a;
+		}
+		else {
+			if (comparator.compare(buffer, b, c) > 0) {
+				return b;
+			}
+			return comparator.compare(buffer, a, c) > 0 ? c : a;
+		}
+	}
+
+	static long insertionSort(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator)
+	{
+		long swaps = 0;
+		for (long i = offset + objectSize; i <= end; i += objectSize) {
+			for (long j = i; j > offset && comparator.compare(buffer, j - objectSize, j) > 0; j -= objectSize) {
+				_swapOffsets(buffer, j - objectSize, j, objectSize, 0L);
+				++swaps;
+			}
+		}
+		return swaps;
+	}
+
+	static long heapSort(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator)
+	{
+		return heapSort(buffer, objectSize, offset, end, comparator, null);
+	}
+
+	/**
+	 * Heap sort of the area between offset and end (inclusive).  Checks cancellation of monitor, if not null, on
+	 * every sift, as the area may be large.
+	 */
+	static long heapSort(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator, SortMonitor monitor)
+	{
+		long count = (end - offset) / objectSize + 1;
+		long swaps = 0;
+		for (long i = count / 2 - 1; i >= 0; --i) {
+			if (monitor != null) {
+				monitor.checkCancelled();
+			}
+			swaps += siftDown(buffer, objectSize, offset, i, count, comparator);
+		}
+		for (long n = count - 1; n > 0; --n) {
+			if (monitor != null) {
+				monitor.checkCancelled();
+			}
+			_swapOffsets(buffer, offset, offset + n * objectSize, objectSize, 0L);
+			swaps += 1 + siftDown(buffer, objectSize, offset, 0, n, comparator);
+		}
+		return swaps;
+	}
+
+	private static long siftDown(FlatBuffer buffer, int objectSize, long offset, long i, long count, FlatBufferComparator comparator)
+	{
+		long swaps = 0;
+		for (;;) {
+			long child = 2 * i + 1;
+			if (child >= count) {
+				return swaps;
+			}
+			if (child + 1 < count && comparator.compare(buffer, offset + child * objectSize, offset + (child + 1) * objectSize) < 0) {
+				++child;
+			}
+			if (comparator.compare(buffer, offset + i * objectSize, offset + child * objectSize) >= 0) {
+				return swaps;
+			}
+			_swapOffsets(buffer, offset + i * objectSize, offset + child * objectSize, objectSize, 0L);
+			++swaps;
+			i = child;
+		}
+	}
+
+	static int depthLimit(long count)
+	{
+		return 2 * (64 - Long.numberOfLeadingZeros(count));
+	}
+
+	private static long _swapOffsets(FlatBuffer buffer, long i0, long i1, int objectSize, long pivotPos)
 	{
 		if (i0 == i1) {
 			return pivotPos;
 		}
-		buffer.getBytes(i0, tmp1);
-		buffer.getBytes(i1, tmp2);
-		buffer.putBytes(i0, tmp2);
-		buffer.putBytes(i1, tmp1);
+		buffer.swapRegions(i0, i1, objectSize);
 		if (i0 == pivotPos) {
 			return i1;
 		}
@@ -155,24 +1179,393 @@ public class FlatSort
 		}
 	}
 
-	private static long _swapOffsetsPivot(FlatBuffer buffer, long i0, long i1, byte[] tmp1, byte[] tmp2, long pivot)
+	/**
+	 * In-place MSD radix sort state.  Keys are converted to unsigned form, counts and bucket pointers are allocated
+	 * once per key byte level.
+	 */
+	private static class RadixSorter
 	{
-		if (i0 == i1) {
-			return pivot;
+		public RadixSorter(FlatBuffer buffer, int objectSize, int keyOffset, int keySize, boolean signed, boolean swapBytes)
+		{
+			this.buffer = buffer;
+			this.objectSize = objectSize;
+			this.keyOffset = keyOffset;
+			this.keySize = keySize;
+			this.signFlip = signed ? 1L << (keySize * 8 - 1) : 0;
+			this.swapBytes = swapBytes;
+			this.counts = new long[keySize][256];
+			this.nexts = new long[keySize][256];
 		}
-		buffer.getBytes(i0, tmp1);
-		buffer.getBytes(i1, tmp2);
-		buffer.putBytes(i0, tmp2);
-		buffer.putBytes(i1, tmp1);
-		if (pivot == i0) {
-			return i1;
+
+		public void sort(long offset, long end, int shift)
+		{
+			if (end - offset <= RADIX_INSERTION_THRESHOLD * objectSize) {
+				insertionSort(offset, end);
+				return;
+			}
+			int level = shift / 8;
+			long[] count = counts[level];
+			long[] next = nexts[level];
+			Arrays.fill(count, 0);
+			for (long pos = offset; pos < end; pos += objectSize) {
+				++count[(int) (key(pos) >>> shift) & 0xff];
+			}
+			long bucketStart = offset;
+			for (int b = 0; b < 256; ++b) {
+				next[b] = bucketStart;
+				bucketStart += count[b] * objectSize;
+				count[b] = bucketStart;
+			}
+			// count now holds bucket ends, next holds the first not yet placed record of bucket:
+			for (int b = 0; b < 256; ++b) {
+				while (next[b] < count[b]) {
+					int digit = (int) (key(next[b]) >>> shift) & 0xff;
+					if (digit == b) {
+						next[b] += objectSize;
+					}
+					else {
+						_swapOffsets(buffer, next[b], next[digit], objectSize, 0L);
+						next[digit] += objectSize;
+					}
+				}
+			}
+			if (shift == 0) {
+				return;
+			}
+			long bucketOffset = offset;
+			for (int b = 0; b < 256; ++b) {
+				long bucketEnd = count[b];
+				if (bucketEnd - bucketOffset > objectSize) {
+					sort(bucketOffset, bucketEnd, shift - 8);
+				}
+				bucketOffset = bucketEnd;
+			}
 		}
-		else if (pivot == i1) {
-			return i0;
+
+		private void insertionSort(long offset, long end)
+		{
+			for (long i = offset + objectSize; i < end; i += objectSize) {
+				long k = key(i);
+				for (long j = i; j > offset && Long.compareUnsigned(key(j - objectSize), k) > 0; j -= objectSize) {
+					_swapOffsets(buffer, j - objectSize, j, objectSize, 0L);
+				}
+			}
 		}
-		else {
-			return pivot;
+
+		private long key(long pos)
+		{
+			return unsignedKey(buffer, pos + keyOffset, keySize, swapBytes) ^ signFlip;
+		}
+
+		private final FlatBuffer buffer;
+
+		private final int objectSize;
+
+		private final int keyOffset;
+
+		private final int keySize;
+
+		private final long signFlip;
+
+		private final boolean swapBytes;
+
+		private final long[][] counts;
+
+		private final long[][] nexts;
+	}
+
+	/**
+	 * Introsort of records by primitive key.  Keys are converted to unsigned form, so single unsigned comparison
+	 * covers all key widths and signedness.
+	 */
+	private static class KeySorter
+	{
+		public KeySorter(FlatBuffer buffer, int stride, int keyOffset, int keyWidth, boolean signed, boolean swapBytes)
+		{
+			this.buffer = buffer;
+			this.stride = stride;
+			this.keyOffset = keyOffset;
+			this.keyWidth = keyWidth;
+			this.signFlip = signed ? 1L << (keyWidth * 8 - 1) : 0;
+			this.swapBytes = swapBytes;
+		}
+
+		public void sort(long offset, long end, int depthLimit)
+		{
+			for (;;) {
+				if (end - offset < INSERTION_THRESHOLD * stride) {
+					insertionSort(offset, end);
+					return;
+				}
+				if (--depthLimit < 0) {
+					heapSort(offset, end);
+					return;
+				}
+				long pivot = pivotKey(offset, end);
+
+				long lt = offset, eq = offset, gt = end;
+				while (eq <= gt) {
+					long k = key(eq);
+					if (Long.compareUnsigned(k, pivot) < 0) {
+						_swapOffsets(buffer, eq, lt, stride, 0L);
+						lt += stride;
+						eq += stride;
+					}
+					else if (k != pivot) {
+						_swapOffsets(buffer, eq, gt, stride, 0L);
+						gt -= stride;
+					}
+					else {
+						eq += stride;
+					}
+				}
+
+				// Smaller goes recursive, bigger is TCO:
+				if (lt - offset < end - gt) {
+					sort(offset, lt - stride, depthLimit);
+					offset = gt + stride;
+				}
+				else {
+					sort(gt + stride, end, depthLimit);
+					end = lt - stride;
+				}
+			}
+		}
+
+		private long pivotKey(long offset, long end)
+		{
+			long count = (end - offset) / stride + 1;
+			long middle = offset + count / 2 * stride;
+			if (count < NINTHER_THRESHOLD) {
+				return median3(key(offset), key(middle), key(end));
+			}
+			long step = count / 8 * stride;
+			return median3(
+				median3(key(offset), key(offset + step), key(offset + 2 * step)),
+				median3(key(middle - step), key(middle), key(middle + step)),
+				median3(key(end - 2 * step), key(end - step), key(end))
+			);
+		}
+
+		private void insertionSort(long offset, long end)
+		{
+			for (long i = offset + stride; i <= end; i += stride) {
+				long k = key(i);
+				for (long j = i; j > offset && Long.compareUnsigned(key(j - stride), k) > 0; j -= stride) {
+					_swapOffsets(buffer, j - stride, j, stride, 0L);
+				}
+			}
+		}
+
+		private void heapSort(long offset, long end)
+		{
+			long count = (end - offset) / stride + 1;
+			for (long i = count / 2 - 1; i >= 0; --i) {
+				siftDown(offset, i, count);
+			}
+			for (long n = count - 1; n > 0; --n) {
+				_swapOffsets(buffer, offset, offset + n * stride, stride, 0L);
+				siftDown(offset, 0, n);
+			}
+		}
+
+		private void siftDown(long offset, long i, long count)
+		{
+			long k = key(offset + i * stride);
+			for (;;) {
+				long child = 2 * i + 1;
+				if (child >= count) {
+					return;
+				}
+				long childKey = key(offset + child * stride);
+				if (child + 1 < count) {
+					long rightKey = key(offset + (child + 1) * stride);
+					if (Long.compareUnsigned(childKey, rightKey) < 0) {
+						++child;
+						childKey = rightKey;
+					}
+				}
+				if (Long.compareUnsigned(k, childKey) >= 0) {
+					return;
+				}
+				_swapOffsets(buffer, offset + i * stride, offset + child * stride, stride, 0L);
+				i = child;
+			}
+		}
+
+		private static long median3(long a, long b, long c)
+		{
+			if (Long.compareUnsigned(a, b) > 0) {
+				long t = a;
+				a = b;
+				b = t;
+			}
+			if (Long.compareUnsigned(b, c) <= 0) {
+				return b;
+			}
+			return Long.compareUnsigned(a, c) > 0 ? a : c;
+		}
+
+		private long key(long pos)
+		{
+			return unsignedKey(buffer, pos + keyOffset, keyWidth, swapBytes) ^ signFlip;
+		}
+
+		private final FlatBuffer buffer;
+
+		private final int stride;
+
+		private final int keyOffset;
+
+		private final int keyWidth;
+
+		private final long signFlip;
+
+		private final boolean swapBytes;
+	}
+
+	/**
+	 * Reads key of given width as unsigned number, reversing the bytes if key byte order differs from buffer one.
+	 */
+	static long unsignedKey(FlatBuffer buffer, long pos, int keyWidth, boolean swapBytes)
+	{
+		switch (keyWidth) {
+		case Byte.BYTES:
+			return buffer.getByte(pos) & 0xffL;
+
+		case Short.BYTES: {
+			short k = buffer.getShort(pos);
+			return (swapBytes ? Short.reverseBytes(k) : k) & 0xffffL;
 		}
+
+		case Integer.BYTES: {
+			int k = buffer.getInt(pos);
+			return (swapBytes ? Integer.reverseBytes(k) : k) & 0xffffffffL;
+		}
+
+		case Long.BYTES: {
+			long k = buffer.getLong(pos);
+			return swapBytes ? Long.reverseBytes(k) : k;
+		}
+
+		default:
+			throw new IllegalArgumentException("Unsupported keyWidth: "+keyWidth);
+		}
+	}
+
+	/**
+	 * Waits for all forked tasks, so none of them accesses the buffer once the caller returns or throws.  Note that
+	 * {@link ForkJoinTask#cancel(boolean)} cannot be used for stopping them, as it completes the task without
+	 * waiting for its running compute.
+	 *
+	 * @param forked
+	 * 	forked tasks
+	 * @param rethrow
+	 * 	whether to rethrow the first failure of forked tasks
+	 */
+	static void joinAll(List<? extends ForkJoinTask<?>> forked, boolean rethrow)
+	{
+		for (ForkJoinTask<?> task: forked) {
+			task.quietlyJoin();
+		}
+		if (rethrow) {
+			for (ForkJoinTask<?> task: forked) {
+				task.join();
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class ParallelSortTask extends RecursiveAction
+	{
+		public ParallelSortTask(FlatBuffer buffer, int objectSize, long offset, long end, FlatBufferComparator comparator, long thresholdSize, int depthLimit, int initialDepthLimit, SortMonitor monitor, AtomicBoolean aborted)
+		{
+			this.buffer = buffer;
+			this.objectSize = objectSize;
+			this.offset = offset;
+			this.end = end;
+			this.comparator = comparator;
+			this.thresholdSize = thresholdSize;
+			this.depthLimit = depthLimit;
+			this.initialDepthLimit = initialDepthLimit;
+			this.monitor = monitor;
+			this.aborted = aborted;
+		}
+
+		@Override
+		protected void compute()
+		{
+			long[] bounds = new long[2];
+			List<ParallelSortTask> forked = new ArrayList<>();
+
+			boolean completed = false;
+			try {
+				long offset = this.offset, end = this.end;
+				int depthLimit = this.depthLimit;
+				while (end - offset >= thresholdSize && depthLimit > 0) {
+					if (aborted.get()) {
+						// Other part failed and its exception is propagated, leave the rest unsorted:
+						completed = true;
+						return;
+					}
+					--depthLimit;
+					long swaps = partition(buffer, objectSize, offset, end, comparator, bounds);
+					long lt = bounds[0], gt = bounds[1];
+					if (monitor != null) {
+						monitor.partitioned(initialDepthLimit - depthLimit, partitionComparisons(objectSize, offset, end), swaps, gt - lt + objectSize);
+					}
+
+					// Smaller is forked, bigger continues in this task:
+					if (lt - offset < end - gt) {
+						forked.add(forkPart(offset, lt - objectSize, depthLimit));
+						offset = gt + objectSize;
+					}
+					else {
+						forked.add(forkPart(gt + objectSize, end, depthLimit));
+						end = lt - objectSize;
+					}
+				}
+				if (!aborted.get()) {
+					sortInternal(buffer, objectSize, offset, end, comparator, bounds, depthLimit, initialDepthLimit, monitor);
+				}
+				completed = true;
+			}
+			catch (RuntimeException|Error ex) {
+				aborted.set(true);
+				throw ex;
+			}
+			finally {
+				joinAll(forked, completed);
+			}
+		}
+
+		private ParallelSortTask forkPart(long offset, long end, int depthLimit)
+		{
+			ParallelSortTask task = new ParallelSortTask(buffer, objectSize, offset, end, comparator, thresholdSize, depthLimit, initialDepthLimit, monitor, aborted);
+			task.fork();
+			return task;
+		}
+
+		private final FlatBuffer buffer;
+
+		private final int objectSize;
+
+		private final long offset;
+
+		private final long end;
+
+		private final FlatBufferComparator comparator;
+
+		private final long thresholdSize;
+
+		private final int depthLimit;
+
+		private final int initialDepthLimit;
+
+		private final SortMonitor monitor;
+
+		/** Shared by all tasks of the sort, set once any of them fails. */
+		private final AtomicBoolean aborted;
 	}
 
 	@FunctionalInterface
@@ -180,4 +1573,41 @@ public class FlatSort
 	{
 		int compare(FlatBuffer buffer, long left, long right);
 	}
+
+	/**
+	 * Function extracting 8-byte prefix of record key.  The prefixes are compared as unsigned numbers, records with
+	 * different prefixes must compare in the same way as their prefixes.
+	 */
+	@FunctionalInterface
+	public interface KeyPrefixFunction
+	{
+		long prefix(FlatBuffer buffer, long pos);
+	}
+
+	/** Size of index entry containing record offset. */
+	public static final int INDEX_ENTRY_SIZE = 8;
+
+	/** Size of index entry containing key prefix and record offset. */
+	public static final int PREFIX_INDEX_ENTRY_SIZE = 16;
+
+	/** Default minimal number of records in partition to be processed by parallel tasks. */
+	public static final long PARALLEL_THRESHOLD = 16384;
+
+	/** Maximum size of scratch buffer allocated by stable sort. */
+	public static final long STABLE_SCRATCH_SIZE = 64*1024*1024;
+
+	/** Maximum number of records in partition to be sorted by insertion sort. */
+	static final int INSERTION_THRESHOLD = 16;
+
+	/** Minimum number of records in partition to select pivot as ninther instead of median of three. */
+	static final int NINTHER_THRESHOLD = 64;
+
+	/** Maximum number of records sortable by key-pointer sort with pointers in heap array. */
+	static final int MAX_KEY_POINTER_COUNT = Integer.MAX_VALUE - 8;
+
+	/** Maximum number of records sortable by key-pointer sort, limited by record number packed into 32 bits. */
+	static final long MAX_OFF_HEAP_KEY_POINTER_COUNT = 1L << 32;
+
+	/** Maximum number of records in radix bucket to be sorted by insertion sort. */
+	static final int RADIX_INSERTION_THRESHOLD = 32;
 }
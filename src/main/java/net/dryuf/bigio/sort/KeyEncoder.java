@@ -0,0 +1,258 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Encoder of typed record columns into normalized binary key.  The normalized key compares as unsigned bytes
+ * (memcmp) in the same way as the columns compare in their declared order: numbers are stored as big endian with
+ * sign bit flipped for signed columns, descending columns have all bits inverted.
+ *
+ * The encoder serves as comparator, as key prefix function and as source of normalized index entries for
+ * {@link FlatSort#sortIndex(FlatBuffer, int, long, long, KeyEncoder, FlatBuffer)}.  Numeric columns are read in
+ * byte order of the buffer.
+ */
+public class KeyEncoder implements FlatSort.FlatBufferComparator, FlatSort.KeyPrefixFunction
+{
+	/**
+	 * Adds 32-bit integer column.
+	 *
+	 * @param offset
+	 * 	offset of column within record
+	 * @param signed
+	 * 	whether column is signed
+	 * @param descending
+	 * 	whether column is sorted in descending order
+	 *
+	 * @return
+	 * 	this object.
+	 */
+	public KeyEncoder intColumn(int offset, boolean signed, boolean descending)
+	{
+		return addColumn(new Column(offset, Integer.BYTES, true, signed, descending));
+	}
+
+	/**
+	 * Adds 64-bit integer column.
+	 *
+	 * @param offset
+	 * 	offset of column within record
+	 * @param signed
+	 * 	whether column is signed
+	 * @param descending
+	 * 	whether column is sorted in descending order
+	 *
+	 * @return
+	 * 	this object.
+	 */
+	public KeyEncoder longColumn(int offset, boolean signed, boolean descending)
+	{
+		return addColumn(new Column(offset, Long.BYTES, true, signed, descending));
+	}
+
+	/**
+	 * Adds fixed length byte string column, compared as unsigned bytes.
+	 *
+	 * @param offset
+	 * 	offset of column within record
+	 * @param length
+	 * 	length of column
+	 * @param descending
+	 * 	whether column is sorted in descending order
+	 *
+	 * @return
+	 * 	this object.
+	 */
+	public KeyEncoder bytesColumn(int offset, int length, boolean descending)
+	{
+		return addColumn(new Column(offset, length, false, false, descending));
+	}
+
+	/**
+	 * Gets size of normalized key.
+	 *
+	 * @return
+	 * 	size of normalized key in bytes.
+	 */
+	public int keySize()
+	{
+		return keySize;
+	}
+
+	/**
+	 * Gets size of index entry created by
+	 * {@link FlatSort#sortIndex(FlatBuffer, int, long, long, KeyEncoder, FlatBuffer)}.  The entry consists of
+	 * normalized key padded to multiple of 8 bytes and 8-byte record offset.
+	 *
+	 * @return
+	 * 	size of index entry in bytes.
+	 */
+	public int indexEntrySize()
+	{
+		return (keySize + 7) / 8 * 8 + 8;
+	}
+
+	/**
+	 * Encodes normalized key of record.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param pos
+	 * 	position of record
+	 * @param key
+	 * 	target array
+	 * @param keyOffset
+	 * 	offset in target array
+	 */
+	public void encode(FlatBuffer buffer, long pos, byte[] key, int keyOffset)
+	{
+		for (Column column: columns) {
+			if (column.numeric) {
+				long value = column.normalized(buffer, pos);
+				for (int i = column.length - 1; i >= 0; --i) {
+					key[keyOffset + i] = (byte) value;
+					value >>>= 8;
+				}
+			}
+			else {
+				for (int i = 0; i < column.length; ++i) {
+					key[keyOffset + i] = (byte) (buffer.getByte(pos + column.offset + i) ^ column.invert);
+				}
+			}
+			keyOffset += column.length;
+		}
+	}
+
+	/**
+	 * Computes first 8 bytes of normalized key as unsigned number, padded by zeros if key is shorter.
+	 */
+	@Override
+	public long prefix(FlatBuffer buffer, long pos)
+	{
+		long prefix = 0;
+		int filled = 0;
+		for (Column column: columns) {
+			int take = Math.min(column.length, Long.BYTES - filled);
+			if (column.numeric) {
+				long value = column.normalized(buffer, pos);
+				prefix |= (value >>> (column.length - take) * 8) << (Long.BYTES - filled - take) * 8;
+			}
+			else {
+				for (int i = 0; i < take; ++i) {
+					prefix |= ((buffer.getByte(pos + column.offset + i) ^ column.invert) & 0xffL) << (Long.BYTES - filled - i - 1) * 8;
+				}
+			}
+			filled += take;
+			if (filled == Long.BYTES) {
+				break;
+			}
+		}
+		return prefix;
+	}
+
+	/**
+	 * Compares records column by column, consistently with normalized key.
+	 */
+	@Override
+	public int compare(FlatBuffer buffer, long left, long right)
+	{
+		for (Column column: columns) {
+			int cmp;
+			if (column.numeric) {
+				cmp = Long.compareUnsigned(column.normalized(buffer, left), column.normalized(buffer, right));
+			}
+			else {
+				cmp = 0;
+				for (int i = 0; i < column.length && cmp == 0; ++i) {
+					cmp = Integer.compare((buffer.getByte(left + column.offset + i) ^ column.invert) & 0xff, (buffer.getByte(right + column.offset + i) ^ column.invert) & 0xff);
+				}
+			}
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Fills index entry with normalized key, stored as 8-byte unsigned words, and record offset.
+	 */
+	void fillIndexEntry(FlatBuffer buffer, long pos, byte[] scratch, FlatBuffer index, long indexPos)
+	{
+		encode(buffer, pos, scratch, 0);
+		ByteBuffer words = ByteBuffer.wrap(scratch);
+		int wordsSize = scratch.length;
+		for (int i = 0; i < wordsSize; i += Long.BYTES) {
+			index.putLong(indexPos + i, words.getLong(i));
+		}
+		index.putLong(indexPos + wordsSize, pos);
+	}
+
+	private KeyEncoder addColumn(Column column)
+	{
+		if (column.offset < 0 || column.length <= 0) {
+			throw new IllegalArgumentException("Invalid column: offset="+column.offset+" length="+column.length);
+		}
+		columns.add(column);
+		keySize += column.length;
+		return this;
+	}
+
+	private static class Column
+	{
+		public Column(int offset, int length, boolean numeric, boolean signed, boolean descending)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.numeric = numeric;
+			this.signFlip = signed ? 1L << (length * 8 - 1) : 0;
+			this.invert = descending ? -1 : 0;
+		}
+
+		/**
+		 * Reads numeric column, converted to unsigned number occupying lowest length bytes.
+		 */
+		public long normalized(FlatBuffer buffer, long pos)
+		{
+			long value = length == Integer.BYTES ? buffer.getInt(pos + offset) & 0xffffffffL : buffer.getLong(pos + offset);
+			value ^= signFlip ^ invert;
+			return length == Integer.BYTES ? value & 0xffffffffL : value;
+		}
+
+		private final int offset;
+
+		private final int length;
+
+		private final boolean numeric;
+
+		private final long signFlip;
+
+		private final int invert;
+	}
+
+	private final List<Column> columns = new ArrayList<>();
+
+	private int keySize;
+}
@@ -0,0 +1,271 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * Parallel sample sort of {@link FlatBuffer} records into target buffer.  Splitters are selected from sorted sample,
+ * then the source is split into chunks and each chunk is classified by parallel task, first counting the bucket
+ * sizes and then scattering the records into their bucket areas in target.  The buckets are finally sorted in
+ * parallel.
+ *
+ * Records are classified in small heap buffer holding the splitters, the comparator is therefore called with that
+ * buffer instead of the source one.
+ */
+class SampleFlatSorter
+{
+	public SampleFlatSorter(FlatBuffer buffer, int objectSize, FlatSort.FlatBufferComparator comparator, ForkJoinPool pool)
+	{
+		this.buffer = buffer;
+		this.objectSize = objectSize;
+		this.comparator = comparator;
+		this.pool = pool;
+	}
+
+	public void sort(long start, long length, FlatBuffer target, long targetPos)
+	{
+		long count = length / objectSize;
+		int parallelism = pool.getParallelism();
+		int bucketCount = (int) Math.min(parallelism * BUCKETS_PER_THREAD, count / FlatSort.PARALLEL_THRESHOLD);
+		if (bucketCount < 2) {
+			copy(start, length, target, targetPos);
+			FlatSort.parallelSort(target, objectSize, targetPos, length, comparator, pool);
+			return;
+		}
+		int chunkCount = (int) Math.min(parallelism * CHUNKS_PER_THREAD, count / FlatSort.PARALLEL_THRESHOLD);
+		byte[] splitters = selectSplitters(start, count, bucketCount);
+
+		long[] chunkBounds = new long[chunkCount + 1];
+		for (int c = 0; c <= chunkCount; ++c) {
+			chunkBounds[c] = start + count * c / chunkCount * objectSize;
+		}
+
+		long[][] counts = new long[chunkCount][];
+		List<ForkJoinTask<?>> countTasks = new ArrayList<>(chunkCount);
+		for (int c = 0; c < chunkCount; ++c) {
+			int chunk = c;
+			countTasks.add(ForkJoinTask.adapt(() -> {
+				counts[chunk] = new Classifier(splitters, bucketCount, 0).count(chunkBounds[chunk], chunkBounds[chunk + 1]);
+			}));
+		}
+		runAll(countTasks);
+
+		// Convert counts to starting positions of each chunk's part of bucket:
+		long[] bucketBounds = new long[bucketCount + 1];
+		long pos = targetPos;
+		for (int b = 0; b < bucketCount; ++b) {
+			bucketBounds[b] = pos;
+			for (int c = 0; c < chunkCount; ++c) {
+				long size = counts[c][b] * objectSize;
+				counts[c][b] = pos;
+				pos += size;
+			}
+		}
+		bucketBounds[bucketCount] = pos;
+
+		List<ForkJoinTask<?>> scatterTasks = new ArrayList<>(chunkCount);
+		for (int c = 0; c < chunkCount; ++c) {
+			int chunk = c;
+			scatterTasks.add(ForkJoinTask.adapt(() -> {
+				new Classifier(splitters, bucketCount, Math.max(1, STAGE_SIZE / objectSize))
+					.scatter(chunkBounds[chunk], chunkBounds[chunk + 1], target, counts[chunk]);
+			}));
+		}
+		runAll(scatterTasks);
+
+		List<ForkJoinTask<?>> sortTasks = new ArrayList<>(bucketCount);
+		for (int b = 0; b < bucketCount; ++b) {
+			long bucketStart = bucketBounds[b], bucketLength = bucketBounds[b + 1] - bucketBounds[b];
+			if (bucketLength > objectSize) {
+				sortTasks.add(ForkJoinTask.adapt(() -> {
+					FlatSort.parallelSort(target, objectSize, bucketStart, bucketLength, comparator, pool);
+				}));
+			}
+		}
+		runAll(sortTasks);
+	}
+
+	/**
+	 * Sorts random sample of records and picks bucketCount-1 evenly distributed splitters from it.
+	 *
+	 * @return
+	 * 	array with splitters, starting at second record, first record is reserved for classified record.
+	 */
+	private byte[] selectSplitters(long start, long count, int bucketCount)
+	{
+		int sampleCount = (int) Math.min(count, (long) bucketCount * OVERSAMPLING);
+		byte[] sample = new byte[sampleCount * objectSize];
+		Random random = new Random(count);
+		long step = count / sampleCount;
+		for (int i = 0; i < sampleCount; ++i) {
+			long index = i * step + (long) (random.nextDouble() * step);
+			buffer.getBytes(start + index * objectSize, sample, i * objectSize, objectSize);
+		}
+		FlatBuffer sampleBuffer = wrap(sample);
+		FlatSort.sort(sampleBuffer, objectSize, 0, sample.length, comparator);
+
+		byte[] splitters = new byte[bucketCount * objectSize];
+		for (int b = 1; b < bucketCount; ++b) {
+			System.arraycopy(sample, (int) ((long) sampleCount * b / bucketCount) * objectSize, splitters, b * objectSize, objectSize);
+		}
+		return splitters;
+	}
+
+	private void copy(long start, long length, FlatBuffer target, long targetPos)
+	{
+		byte[] block = new byte[(int) Math.min(length, COPY_BLOCK_SIZE)];
+		for (long done = 0; done < length; ) {
+			int size = (int) Math.min(block.length, length - done);
+			buffer.getBytes(start + done, block, 0, size);
+			target.putBytes(targetPos + done, block, 0, size);
+			done += size;
+		}
+	}
+
+	private void runAll(List<ForkJoinTask<?>> tasks)
+	{
+		for (ForkJoinTask<?> task: tasks) {
+			pool.execute(task);
+		}
+		FlatSort.joinAll(tasks, true);
+	}
+
+	private FlatBuffer wrap(byte[] data)
+	{
+		try {
+			return new SmallMappedFlatBuffer(ByteBuffer.wrap(data).order(buffer.getByteOrder()));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Per task state of classification.  The work buffer contains classified record at position 0, followed by
+	 * splitters and optionally by per bucket staging areas, which are flushed to target in batches.
+	 */
+	private class Classifier
+	{
+		public Classifier(byte[] splitters, int bucketCount, int stageRecords)
+		{
+			this.work = new byte[splitters.length + bucketCount * stageRecords * objectSize];
+			System.arraycopy(splitters, 0, work, 0, splitters.length);
+			this.workBuffer = wrap(work);
+			this.bucketCount = bucketCount;
+			this.stageStart = splitters.length;
+			this.stageSize = stageRecords * objectSize;
+		}
+
+		public long[] count(long offset, long end)
+		{
+			long[] counts = new long[bucketCount];
+			for (long pos = offset; pos < end; pos += objectSize) {
+				++counts[classify(pos)];
+			}
+			return counts;
+		}
+
+		public void scatter(long offset, long end, FlatBuffer target, long[] nexts)
+		{
+			int[] staged = new int[bucketCount];
+			for (long pos = offset; pos < end; pos += objectSize) {
+				int b = classify(pos);
+				int stagePos = stageStart + b * stageSize;
+				System.arraycopy(work, 0, work, stagePos + staged[b], objectSize);
+				staged[b] += objectSize;
+				if (staged[b] == stageSize) {
+					target.putBytes(nexts[b], work, stagePos, stageSize);
+					nexts[b] += stageSize;
+					staged[b] = 0;
+				}
+			}
+			for (int b = 0; b < bucketCount; ++b) {
+				if (staged[b] != 0) {
+					target.putBytes(nexts[b], work, stageStart + b * stageSize, staged[b]);
+					nexts[b] += staged[b];
+				}
+			}
+		}
+
+		/**
+		 * Reads the record into work buffer and finds its bucket, i.e. the number of splitters less or equal to
+		 * the record.
+		 */
+		private int classify(long pos)
+		{
+			buffer.getBytes(pos, work, 0, objectSize);
+			int lo = 1, hi = bucketCount;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (comparator.compare(workBuffer, (long) mid * objectSize, 0) <= 0) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			return lo - 1;
+		}
+
+		private final byte[] work;
+
+		private final FlatBuffer workBuffer;
+
+		private final int bucketCount;
+
+		private final int stageStart;
+
+		private final int stageSize;
+	}
+
+	/** Number of buckets per pool thread. */
+	static final int BUCKETS_PER_THREAD = 4;
+
+	/** Number of classification chunks per pool thread. */
+	static final int CHUNKS_PER_THREAD = 4;
+
+	/** Number of sampled records per bucket. */
+	static final int OVERSAMPLING = 32;
+
+	/** Size of per bucket staging area used when scattering records. */
+	static final int STAGE_SIZE = 4096;
+
+	/** Size of block used when copying small area without sorting. */
+	static final int COPY_BLOCK_SIZE = 1024*1024;
+
+	private final FlatBuffer buffer;
+
+	private final int objectSize;
+
+	private final FlatSort.FlatBufferComparator comparator;
+
+	private final ForkJoinPool pool;
+}
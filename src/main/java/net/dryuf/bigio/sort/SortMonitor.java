@@ -0,0 +1,160 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Monitor of long running sort.  Collects processed bytes, partitioning depth, comparisons and swaps and allows
+ * cooperative cancellation.  The counters are updated once per partition or small sorted area, not per single
+ * comparison, so the monitor is cheap enough to be always enabled.  Cancellation is checked on every partition and
+ * heap sort step, the sort then terminates with {@link CancellationException}, leaving the area partially sorted.
+ *
+ * Comparisons and swaps are counted exactly in partitioning and estimated for pivot selection, insertion and heap
+ * sort.  The same monitor can be shared by multiple sorts, counters are then accumulated.
+ *
+ * The monitor is supported by the comparator based introsort only, i.e. by
+ * {@link FlatSort#sort(net.dryuf.bigio.FlatBuffer, int, long, long, FlatSort.FlatBufferComparator, SortMonitor)} and
+ * {@link FlatSort#parallelSort(net.dryuf.bigio.FlatBuffer, int, long, long, FlatSort.FlatBufferComparator, java.util.concurrent.ForkJoinPool, long, SortMonitor)},
+ * and by {@link ExternalFlatSort} for its in-memory runs and merges.  The other algorithms, such as stable, radix,
+ * key-pointer, sample and index sorts and selection, do not report progress and cannot be cancelled.
+ */
+public class SortMonitor
+{
+	/**
+	 * Requests cancellation of sort.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * Gets number of bytes which already reached their final position.
+	 *
+	 * @return
+	 * 	number of finished bytes.
+	 */
+	public long getProcessedBytes()
+	{
+		return processedBytes.sum();
+	}
+
+	public long getComparisons()
+	{
+		return comparisons.sum();
+	}
+
+	public long getSwaps()
+	{
+		return swaps.sum();
+	}
+
+	public long getPartitions()
+	{
+		return partitions.sum();
+	}
+
+	/**
+	 * Gets maximum partitioning depth reached.  Depth close to limit indicates bad pivots.
+	 *
+	 * @return
+	 * 	maximum partitioning depth.
+	 */
+	public int getMaxDepth()
+	{
+		return maxDepth.get();
+	}
+
+	/**
+	 * Gets number of partitions which exhausted the depth limit and were sorted by heap sort fallback.
+	 *
+	 * @return
+	 * 	number of heap sort fallbacks.
+	 */
+	public long getHeapSortFallbacks()
+	{
+		return heapSortFallbacks.sum();
+	}
+
+	/**
+	 * Checks cancellation.
+	 *
+	 * @throws CancellationException
+	 * 	if the sort was cancelled
+	 */
+	public void checkCancelled()
+	{
+		if (cancelled) {
+			throw new CancellationException("Sort cancelled");
+		}
+	}
+
+	void begin()
+	{
+		checkCancelled();
+	}
+
+	void partitioned(int depth, long comparisons, long swaps, long finishedBytes)
+	{
+		checkCancelled();
+		partitions.increment();
+		this.comparisons.add(comparisons);
+		this.swaps.add(swaps);
+		processedBytes.add(finishedBytes);
+		if (depth > maxDepth.get()) {
+			maxDepth.accumulateAndGet(depth, Math::max);
+		}
+	}
+
+	void sorted(long comparisons, long swaps, long finishedBytes)
+	{
+		this.comparisons.add(comparisons);
+		this.swaps.add(swaps);
+		processedBytes.add(finishedBytes);
+	}
+
+	void heapSorted(long comparisons, long swaps, long finishedBytes)
+	{
+		heapSortFallbacks.increment();
+		sorted(comparisons, swaps, finishedBytes);
+	}
+
+	private volatile boolean cancelled;
+
+	private final LongAdder processedBytes = new LongAdder();
+
+	private final LongAdder comparisons = new LongAdder();
+
+	private final LongAdder swaps = new LongAdder();
+
+	private final LongAdder partitions = new LongAdder();
+
+	private final LongAdder heapSortFallbacks = new LongAdder();
+
+	private final AtomicInteger maxDepth = new AtomicInteger();
+}
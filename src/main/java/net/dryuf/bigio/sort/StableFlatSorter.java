@@ -0,0 +1,640 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.AbstractFlatBuffer;
+import net.dryuf.bigio.FlatBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Stable merge sort of {@link FlatBuffer} records, detecting natural runs and merging them with galloping, similar to
+ * TimSort.  Merges use bounded scratch buffer, merges of runs not fitting into scratch are split by rotations.
+ */
+class StableFlatSorter
+{
+	public StableFlatSorter(FlatBuffer buffer, int objectSize, FlatSort.FlatBufferComparator comparator, FlatBuffer scratch)
+	{
+		this.buffer = buffer;
+		this.objectSize = objectSize;
+		this.comparator = comparator;
+		this.scratchCapacity = scratch.size() / objectSize;
+		this.view = new JoinedFlatBuffer(buffer, scratch);
+		this.scratchBase = view.secondBase;
+		this.record = new byte[objectSize];
+	}
+
+	public void sort(long start, long length)
+	{
+		long remaining = length / objectSize;
+		long minRun = minRunLength(remaining);
+		long lo = start;
+		while (remaining > 0) {
+			long runLength = countRunAndMakeAscending(lo, lo + remaining * objectSize);
+			if (runLength < minRun) {
+				long forced = Math.min(remaining, minRun);
+				binaryInsertionSort(lo, lo + forced * objectSize, runLength);
+				runLength = forced;
+			}
+			pushRun(lo, runLength);
+			mergeCollapse();
+			lo += runLength * objectSize;
+			remaining -= runLength;
+		}
+		mergeForceCollapse();
+	}
+
+	private long countRunAndMakeAscending(long lo, long hi)
+	{
+		long runHi = lo + objectSize;
+		if (runHi == hi) {
+			return 1;
+		}
+		if (comparator.compare(buffer, runHi, lo) < 0) {
+			runHi += objectSize;
+			while (runHi < hi && comparator.compare(buffer, runHi, runHi - objectSize) < 0) {
+				runHi += objectSize;
+			}
+			reverse(lo, runHi);
+		}
+		else {
+			runHi += objectSize;
+			while (runHi < hi && comparator.compare(buffer, runHi, runHi - objectSize) >= 0) {
+				runHi += objectSize;
+			}
+		}
+		return (runHi - lo) / objectSize;
+	}
+
+	private void reverse(long lo, long hi)
+	{
+		for (hi -= objectSize; lo < hi; lo += objectSize, hi -= objectSize) {
+			buffer.swapRegions(lo, hi, objectSize);
+		}
+	}
+
+	private void binaryInsertionSort(long lo, long hi, long sorted)
+	{
+		for (long i = lo + sorted * objectSize; i < hi; i += objectSize) {
+			long left = 0, right = (i - lo) / objectSize;
+			while (left < right) {
+				long mid = (left + right) >>> 1;
+				if (comparator.compare(buffer, i, lo + mid * objectSize) < 0) {
+					right = mid;
+				}
+				else {
+					left = mid + 1;
+				}
+			}
+			long pos = lo + left * objectSize;
+			if (pos < i) {
+				buffer.getBytes(i, record);
+				buffer.copyWithin(pos, pos + objectSize, i - pos);
+				buffer.putBytes(pos, record);
+			}
+		}
+	}
+
+	private void pushRun(long base, long length)
+	{
+		runBase[stackSize] = base;
+		runLength[stackSize] = length;
+		++stackSize;
+	}
+
+	private void mergeCollapse()
+	{
+		while (stackSize > 1) {
+			int n = stackSize - 2;
+			if (n > 0 && runLength[n-1] <= runLength[n] + runLength[n+1] || n > 1 && runLength[n-2] <= runLength[n] + runLength[n-1]) {
+				if (runLength[n-1] < runLength[n+1]) {
+					--n;
+				}
+			}
+			else if (runLength[n] > runLength[n+1]) {
+				break;
+			}
+			mergeAt(n);
+		}
+	}
+
+	private void mergeForceCollapse()
+	{
+		while (stackSize > 1) {
+			int n = stackSize - 2;
+			if (n > 0 && runLength[n-1] < runLength[n+1]) {
+				--n;
+			}
+			mergeAt(n);
+		}
+	}
+
+	private void mergeAt(int i)
+	{
+		long base1 = runBase[i], length1 = runLength[i];
+		long base2 = runBase[i+1], length2 = runLength[i+1];
+		runLength[i] = length1 + length2;
+		if (i == stackSize - 3) {
+			runBase[i+1] = runBase[i+2];
+			runLength[i+1] = runLength[i+2];
+		}
+		--stackSize;
+		merge(base1, length1, base2, length2);
+	}
+
+	/**
+	 * Merges two adjacent sorted runs.  Skips the prefix of first run and suffix of second run which are already in
+	 * place, then merges through scratch or splits the merge by rotation if neither run fits into scratch.
+	 */
+	private void merge(long base1, long length1, long base2, long length2)
+	{
+		if (length1 == 0 || length2 == 0) {
+			return;
+		}
+		long skip = gallop(base2, base1, length1, true, false);
+		base1 += skip * objectSize;
+		length1 -= skip;
+		if (length1 == 0) {
+			return;
+		}
+		length2 = gallop(base2 - objectSize, base2, length2, false, true);
+		if (length2 == 0) {
+			return;
+		}
+		if (length1 <= length2 && length1 <= scratchCapacity) {
+			mergeLo(base1, length1, base2, length2);
+		}
+		else if (length2 <= scratchCapacity) {
+			mergeHi(base1, length1, base2, length2);
+		}
+		else {
+			long cut1, cut2;
+			if (length1 >= length2) {
+				cut1 = length1 / 2;
+				cut2 = gallop(base1 + cut1 * objectSize, base2, length2, false, false);
+			}
+			else {
+				cut2 = length2 / 2;
+				cut1 = gallop(base2 + cut2 * objectSize, base1, length1, true, false);
+			}
+			rotate(base1 + cut1 * objectSize, base2, base2 + cut2 * objectSize);
+			long middle = base1 + (cut1 + cut2) * objectSize;
+			merge(base1, cut1, base1 + cut1 * objectSize, cut2);
+			merge(middle, length1 - cut1, middle + (length1 - cut1) * objectSize, length2 - cut2);
+		}
+	}
+
+	/**
+	 * Merges runs where the first one fits into scratch, proceeding from the beginning.
+	 */
+	private void mergeLo(long base1, long length1, long base2, long length2)
+	{
+		view.copyWithin(base1, scratchBase, length1 * objectSize);
+		long cursor1 = scratchBase, end1 = scratchBase + length1 * objectSize;
+		long cursor2 = base2, end2 = base2 + length2 * objectSize;
+		long dest = base1;
+		outer:
+		while (cursor1 < end1 && cursor2 < end2) {
+			int count1 = 0, count2 = 0;
+			do {
+				if (comparator.compare(view, cursor2, cursor1) < 0) {
+					view.copyWithin(cursor2, dest, objectSize);
+					cursor2 += objectSize;
+					++count2;
+					count1 = 0;
+				}
+				else {
+					view.copyWithin(cursor1, dest, objectSize);
+					cursor1 += objectSize;
+					++count1;
+					count2 = 0;
+				}
+				dest += objectSize;
+				if (cursor1 >= end1 || cursor2 >= end2) {
+					break outer;
+				}
+			} while ((count1 | count2) < MIN_GALLOP);
+
+			do {
+				long moved = gallop(cursor2, cursor1, (end1 - cursor1) / objectSize, true, false);
+				count1 = (int) Math.min(MIN_GALLOP, moved);
+				if (moved != 0) {
+					view.copyWithin(cursor1, dest, moved * objectSize);
+					cursor1 += moved * objectSize;
+					dest += moved * objectSize;
+					if (cursor1 >= end1) {
+						break outer;
+					}
+				}
+				view.copyWithin(cursor2, dest, objectSize);
+				cursor2 += objectSize;
+				dest += objectSize;
+				if (cursor2 >= end2) {
+					break outer;
+				}
+
+				moved = gallop(cursor1, cursor2, (end2 - cursor2) / objectSize, false, false);
+				count2 = (int) Math.min(MIN_GALLOP, moved);
+				if (moved != 0) {
+					view.copyWithin(cursor2, dest, moved * objectSize);
+					cursor2 += moved * objectSize;
+					dest += moved * objectSize;
+					if (cursor2 >= end2) {
+						break outer;
+					}
+				}
+				view.copyWithin(cursor1, dest, objectSize);
+				cursor1 += objectSize;
+				dest += objectSize;
+				if (cursor1 >= end1) {
+					break outer;
+				}
+			} while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP);
+		}
+		if (cursor1 < end1) {
+			view.copyWithin(cursor1, dest, end1 - cursor1);
+		}
+	}
+
+	/**
+	 * Merges runs where the second one fits into scratch, proceeding from the end.
+	 */
+	private void mergeHi(long base1, long length1, long base2, long length2)
+	{
+		view.copyWithin(base2, scratchBase, length2 * objectSize);
+		long start1 = base1, cursor1 = base1 + (length1 - 1) * objectSize;
+		long start2 = scratchBase, cursor2 = scratchBase + (length2 - 1) * objectSize;
+		long dest = base2 + (length2 - 1) * objectSize;
+		outer:
+		while (cursor1 >= start1 && cursor2 >= start2) {
+			int count1 = 0, count2 = 0;
+			do {
+				if (comparator.compare(view, cursor2, cursor1) < 0) {
+					view.copyWithin(cursor1, dest, objectSize);
+					cursor1 -= objectSize;
+					++count1;
+					count2 = 0;
+				}
+				else {
+					view.copyWithin(cursor2, dest, objectSize);
+					cursor2 -= objectSize;
+					++count2;
+					count1 = 0;
+				}
+				dest -= objectSize;
+				if (cursor1 < start1 || cursor2 < start2) {
+					break outer;
+				}
+			} while ((count1 | count2) < MIN_GALLOP);
+
+			do {
+				long remaining1 = (cursor1 - start1) / objectSize + 1;
+				long moved = remaining1 - gallop(cursor2, start1, remaining1, true, true);
+				count1 = (int) Math.min(MIN_GALLOP, moved);
+				if (moved != 0) {
+					view.copyWithin(cursor1 - (moved - 1) * objectSize, dest - (moved - 1) * objectSize, moved * objectSize);
+					cursor1 -= moved * objectSize;
+					dest -= moved * objectSize;
+					if (cursor1 < start1) {
+						break outer;
+					}
+				}
+				view.copyWithin(cursor2, dest, objectSize);
+				cursor2 -= objectSize;
+				dest -= objectSize;
+				if (cursor2 < start2) {
+					break outer;
+				}
+
+				long remaining2 = (cursor2 - start2) / objectSize + 1;
+				moved = remaining2 - gallop(cursor1, start2, remaining2, false, true);
+				count2 = (int) Math.min(MIN_GALLOP, moved);
+				if (moved != 0) {
+					view.copyWithin(cursor2 - (moved - 1) * objectSize, dest - (moved - 1) * objectSize, moved * objectSize);
+					cursor2 -= moved * objectSize;
+					dest -= moved * objectSize;
+					if (cursor2 < start2) {
+						break outer;
+					}
+				}
+				view.copyWithin(cursor1, dest, objectSize);
+				cursor1 -= objectSize;
+				dest -= objectSize;
+				if (cursor1 < start1) {
+					break outer;
+				}
+			} while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP);
+		}
+		if (cursor2 >= start2) {
+			view.copyWithin(start2, dest - (cursor2 - start2), cursor2 - start2 + objectSize);
+		}
+	}
+
+	/**
+	 * Finds number of leading records in the area which go before the key record.  Records equal to key go before
+	 * in upper mode and after in lower mode.  The search gallops from beginning or end of the area.
+	 */
+	private long gallop(long key, long base, long count, boolean upper, boolean fromEnd)
+	{
+		long lo = 0, hi = count;
+		if (!fromEnd) {
+			for (long ofs = 1; ofs <= count; ofs = ofs * 2 + 1) {
+				if (!before(base + (ofs - 1) * objectSize, key, upper)) {
+					hi = ofs - 1;
+					break;
+				}
+				lo = ofs;
+			}
+		}
+		else {
+			for (long ofs = 1; ofs <= count; ofs = ofs * 2 + 1) {
+				if (before(base + (count - ofs) * objectSize, key, upper)) {
+					lo = count - ofs + 1;
+					break;
+				}
+				hi = count - ofs;
+			}
+		}
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (before(base + mid * objectSize, key, upper)) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private boolean before(long element, long key, boolean upper)
+	{
+		int cmp = comparator.compare(view, element, key);
+		return upper ? cmp <= 0 : cmp < 0;
+	}
+
+	/**
+	 * Rotates the area so the part between middle and hi moves to lo, using block swaps.
+	 */
+	private void rotate(long lo, long middle, long hi)
+	{
+		long left = middle - lo, right = hi - middle;
+		while (left > 0 && right > 0) {
+			if (left <= right) {
+				swapLarge(lo, hi - left, left);
+				hi -= left;
+				right -= left;
+			}
+			else {
+				swapLarge(lo, lo + left, right);
+				lo += right;
+				left -= right;
+			}
+		}
+	}
+
+	private void swapLarge(long pos0, long pos1, long length)
+	{
+		for (long i = 0; i < length; i += SWAP_CHUNK_SIZE) {
+			buffer.swapRegions(pos0 + i, pos1 + i, (int) Math.min(SWAP_CHUNK_SIZE, length - i));
+		}
+	}
+
+	static long minRunLength(long n)
+	{
+		long r = 0;
+		while (n >= MIN_MERGE) {
+			r |= n & 1;
+			n >>= 1;
+		}
+		return n + r;
+	}
+
+	/**
+	 * View joining sorted buffer and scratch into single address space, so comparator can compare records from
+	 * both.
+	 */
+	static class JoinedFlatBuffer extends AbstractFlatBuffer
+	{
+		public JoinedFlatBuffer(FlatBuffer first, FlatBuffer second)
+		{
+			this.first = first;
+			this.second = second;
+			this.secondBase = first.size();
+			this.transfer = new byte[COPY_CHUNK_SIZE];
+		}
+
+		@Override
+		public ByteOrder getByteOrder()
+		{
+			return first.getByteOrder();
+		}
+
+		@Override
+		public FlatBuffer order(ByteOrder byteOrder)
+		{
+			if (byteOrder != first.getByteOrder()) {
+				throw new IllegalArgumentException("Cannot change byteOrder of JoinedFlatBuffer");
+			}
+			return this;
+		}
+
+		@Override
+		public long size()
+		{
+			return secondBase + second.size();
+		}
+
+		@Override
+		public byte getByte(long pos)
+		{
+			return pos < secondBase ? first.getByte(pos) : second.getByte(pos - secondBase);
+		}
+
+		@Override
+		public short getShort(long pos)
+		{
+			return pos < secondBase ? first.getShort(pos) : second.getShort(pos - secondBase);
+		}
+
+		@Override
+		public int getInt(long pos)
+		{
+			return pos < secondBase ? first.getInt(pos) : second.getInt(pos - secondBase);
+		}
+
+		@Override
+		public long getLong(long pos)
+		{
+			return pos < secondBase ? first.getLong(pos) : second.getLong(pos - secondBase);
+		}
+
+		@Override
+		public void getBytes(long pos, byte[] data, int offset, int length)
+		{
+			if (pos < secondBase) {
+				first.getBytes(pos, data, offset, length);
+			}
+			else {
+				second.getBytes(pos - secondBase, data, offset, length);
+			}
+		}
+
+		@Override
+		public void getByteBuffer(long pos, ByteBuffer buffer)
+		{
+			if (pos < secondBase) {
+				first.getByteBuffer(pos, buffer);
+			}
+			else {
+				second.getByteBuffer(pos - secondBase, buffer);
+			}
+		}
+
+		@Override
+		public ByteBuffer subByteBuffer(long pos, long length)
+		{
+			return pos < secondBase ? first.subByteBuffer(pos, length) : second.subByteBuffer(pos - secondBase, length);
+		}
+
+		@Override
+		public void putByte(long pos, byte val)
+		{
+			if (pos < secondBase) {
+				first.putByte(pos, val);
+			}
+			else {
+				second.putByte(pos - secondBase, val);
+			}
+		}
+
+		@Override
+		public void putShort(long pos, short val)
+		{
+			if (pos < secondBase) {
+				first.putShort(pos, val);
+			}
+			else {
+				second.putShort(pos - secondBase, val);
+			}
+		}
+
+		@Override
+		public void putInt(long pos, int val)
+		{
+			if (pos < secondBase) {
+				first.putInt(pos, val);
+			}
+			else {
+				second.putInt(pos - secondBase, val);
+			}
+		}
+
+		@Override
+		public void putLong(long pos, long val)
+		{
+			if (pos < secondBase) {
+				first.putLong(pos, val);
+			}
+			else {
+				second.putLong(pos - secondBase, val);
+			}
+		}
+
+		@Override
+		public void putBytes(long pos, byte[] data, int offset, int length)
+		{
+			if (pos < secondBase) {
+				first.putBytes(pos, data, offset, length);
+			}
+			else {
+				second.putBytes(pos - secondBase, data, offset, length);
+			}
+		}
+
+		@Override
+		public void putByteBuffer(long pos, ByteBuffer buffer)
+		{
+			if (pos < secondBase) {
+				first.putByteBuffer(pos, buffer);
+			}
+			else {
+				second.putByteBuffer(pos - secondBase, buffer);
+			}
+		}
+
+		@Override
+		public void copyWithin(long sourcePos, long targetPos, long length)
+		{
+			boolean sourceFirst = sourcePos < secondBase, targetFirst = targetPos < secondBase;
+			if (sourceFirst && targetFirst) {
+				first.copyWithin(sourcePos, targetPos, length);
+			}
+			else if (!sourceFirst && !targetFirst) {
+				second.copyWithin(sourcePos - secondBase, targetPos - secondBase, length);
+			}
+			else {
+				for (long i = 0; i < length; i += transfer.length) {
+					int chunk = (int) Math.min(transfer.length, length - i);
+					getBytes(sourcePos + i, transfer, 0, chunk);
+					putBytes(targetPos + i, transfer, 0, chunk);
+				}
+			}
+		}
+
+		private final FlatBuffer first;
+
+		private final FlatBuffer second;
+
+		final long secondBase;
+
+		private final byte[] transfer;
+	}
+
+	/** Minimum sort length to split into runs. */
+	static final int MIN_MERGE = 32;
+
+	/** Number of consecutive wins of one run to switch into galloping mode. */
+	static final int MIN_GALLOP = 7;
+
+	/** Maximum length of single swapRegions call. */
+	static final int SWAP_CHUNK_SIZE = 1024*1024;
+
+	private final FlatBuffer buffer;
+
+	private final int objectSize;
+
+	private final FlatSort.FlatBufferComparator comparator;
+
+	private final long scratchCapacity;
+
+	private final JoinedFlatBuffer view;
+
+	private final long scratchBase;
+
+	private final byte[] record;
+
+	private final long[] runBase = new long[85];
+
+	private final long[] runLength = new long[85];
+
+	private int stackSize = 0;
+}
@@ -0,0 +1,280 @@
+/*
+ * dryuf-bigio - Java framework for handling IO operations.
+ *
+ * Copyright 2015-2024 Zbynek Vyskovsky mailto:kvr000@gmail.com http://github.com/kvr000/ https://github.com/dryuf/dryuf-bigio/ https://www.linkedin.com/in/zbynek-vyskovsky/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+
+import java.nio.ByteOrder;
+
+
+/**
+ * Sorting of variable length records, delimited or length prefixed.  The records stay in place, the sort operates
+ * on index of (offset, length) entries, stored in provided {@link FlatBuffer}, typically off-heap or mapped file.
+ * The sorted records can be then written as compacted copy in index order.
+ */
+public class VariableFlatSort
+{
+	/**
+	 * Counts delimited records in the area.  The last record does not need to be terminated by delimiter.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area
+	 * @param delimiter
+	 * 	record delimiter, typically new line
+	 *
+	 * @return
+	 * 	number of records.
+	 */
+	public static long countDelimited(FlatBuffer buffer, long start, long length, byte delimiter)
+	{
+		return scanDelimited(buffer, start, length, delimiter, null);
+	}
+
+	/**
+	 * Fills index with delimited records from the area.  The delimiters are not part of records, the last record
+	 * does not need to be terminated by delimiter.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area
+	 * @param delimiter
+	 * 	record delimiter, typically new line
+	 * @param index
+	 * 	index buffer, at least {@link #INDEX_ENTRY_SIZE} bytes per record
+	 *
+	 * @return
+	 * 	number of records.
+	 */
+	public static long indexDelimited(FlatBuffer buffer, long start, long length, byte delimiter, FlatBuffer index)
+	{
+		return scanDelimited(buffer, start, length, delimiter, index);
+	}
+
+	/**
+	 * Fills index with length prefixed records from the area.  Each record is preceded by 4-byte length, in byte
+	 * order of the buffer.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param start
+	 * 	start of area
+	 * @param length
+	 * 	length of area
+	 * @param index
+	 * 	index buffer, at least {@link #INDEX_ENTRY_SIZE} bytes per record
+	 *
+	 * @return
+	 * 	number of records.
+	 */
+	public static long indexLengthPrefixed(FlatBuffer buffer, long start, long length, FlatBuffer index)
+	{
+		long end = start + length;
+		long count = 0;
+		for (long pos = start; pos < end; ++count) {
+			if (end - pos < Integer.BYTES) {
+				throw new IllegalArgumentException("Truncated record length at: "+pos);
+			}
+			long recordLength = buffer.getInt(pos) & 0xffffffffL;
+			pos += Integer.BYTES;
+			if (recordLength > end - pos) {
+				throw new IllegalArgumentException("Truncated record at: "+pos);
+			}
+			putEntry(index, count, pos, recordLength);
+			pos += recordLength;
+		}
+		return count;
+	}
+
+	/**
+	 * Sorts the index according to records it points to.  Records equal according to comparator are kept in
+	 * original order.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param index
+	 * 	index, as filled by index methods
+	 * @param count
+	 * 	number of records
+	 * @param comparator
+	 * 	comparator of records
+	 */
+	public static void sortIndex(FlatBuffer buffer, FlatBuffer index, long count, RecordComparator comparator)
+	{
+		FlatSort.sort(index, INDEX_ENTRY_SIZE, 0, count * INDEX_ENTRY_SIZE, (ib, left, right) -> {
+			long leftPos = ib.getLong(left), rightPos = ib.getLong(right);
+			int cmp = comparator.compare(buffer, leftPos, ib.getLong(left + 8), rightPos, ib.getLong(right + 8));
+			return cmp != 0 ? cmp : Long.compare(leftPos, rightPos);
+		});
+	}
+
+	/**
+	 * Writes records in index order, each followed by delimiter.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param index
+	 * 	index
+	 * @param count
+	 * 	number of records
+	 * @param delimiter
+	 * 	record delimiter
+	 * @param target
+	 * 	target buffer
+	 * @param targetPos
+	 * 	position in target buffer
+	 *
+	 * @return
+	 * 	number of bytes written.
+	 */
+	public static long writeDelimited(FlatBuffer buffer, FlatBuffer index, long count, byte delimiter, FlatBuffer target, long targetPos)
+	{
+		byte[] block = new byte[COPY_BLOCK_SIZE];
+		long pos = targetPos;
+		for (long i = 0; i < count; ++i) {
+			long recordLength = index.getLong(i * INDEX_ENTRY_SIZE + 8);
+			copy(buffer, index.getLong(i * INDEX_ENTRY_SIZE), recordLength, target, pos, block);
+			pos += recordLength;
+			target.putByte(pos++, delimiter);
+		}
+		return pos - targetPos;
+	}
+
+	/**
+	 * Writes records in index order, each preceded by 4-byte length in byte order of target.
+	 *
+	 * @param buffer
+	 * 	buffer with records
+	 * @param index
+	 * 	index
+	 * @param count
+	 * 	number of records
+	 * @param target
+	 * 	target buffer
+	 * @param targetPos
+	 * 	position in target buffer
+	 *
+	 * @return
+	 * 	number of bytes written.
+	 */
+	public static long writeLengthPrefixed(FlatBuffer buffer, FlatBuffer index, long count, FlatBuffer target, long targetPos)
+	{
+		byte[] block = new byte[COPY_BLOCK_SIZE];
+		long pos = targetPos;
+		for (long i = 0; i < count; ++i) {
+			long recordLength = index.getLong(i * INDEX_ENTRY_SIZE + 8);
+			target.putInt(pos, (int) recordLength);
+			pos += Integer.BYTES;
+			copy(buffer, index.getLong(i * INDEX_ENTRY_SIZE), recordLength, target, pos, block);
+			pos += recordLength;
+		}
+		return pos - targetPos;
+	}
+
+	private static long scanDelimited(FlatBuffer buffer, long start, long length, byte delimiter, FlatBuffer index)
+	{
+		byte[] block = new byte[(int) Math.min(length, COPY_BLOCK_SIZE)];
+		long count = 0;
+		long recordStart = start;
+		for (long blockStart = start, end = start + length; blockStart < end; ) {
+			int blockLength = (int) Math.min(block.length, end - blockStart);
+			buffer.getBytes(blockStart, block, 0, blockLength);
+			for (int i = 0; i < blockLength; ++i) {
+				if (block[i] == delimiter) {
+					if (index != null) {
+						putEntry(index, count, recordStart, blockStart + i - recordStart);
+					}
+					++count;
+					recordStart = blockStart + i + 1;
+				}
+			}
+			blockStart += blockLength;
+		}
+		if (recordStart < start + length) {
+			if (index != null) {
+				putEntry(index, count, recordStart, start + length - recordStart);
+			}
+			++count;
+		}
+		return count;
+	}
+
+	private static void putEntry(FlatBuffer index, long i, long pos, long length)
+	{
+		if ((i + 1) * INDEX_ENTRY_SIZE > index.size()) {
+			throw new IllegalArgumentException("Index too small for record "+i+": "+index.size());
+		}
+		index.putLong(i * INDEX_ENTRY_SIZE, pos);
+		index.putLong(i * INDEX_ENTRY_SIZE + 8, length);
+	}
+
+	private static void copy(FlatBuffer buffer, long pos, long length, FlatBuffer target, long targetPos, byte[] block)
+	{
+		for (long done = 0; done < length; ) {
+			int size = (int) Math.min(block.length, length - done);
+			buffer.getBytes(pos + done, block, 0, size);
+			target.putBytes(targetPos + done, block, 0, size);
+			done += size;
+		}
+	}
+
+	/**
+	 * Comparator of variable length records.
+	 */
+	@FunctionalInterface
+	public interface RecordComparator
+	{
+		int compare(FlatBuffer buffer, long leftPos, long leftLength, long rightPos, long rightLength);
+	}
+
+	/**
+	 * Comparator of records as unsigned byte strings, shorter record being less if it is prefix of longer one.  The
+	 * records are compared 8 bytes at once.
+	 */
+	public static final RecordComparator UNSIGNED_BYTES = (buffer, leftPos, leftLength, rightPos, rightLength) -> {
+		long common = Math.min(leftLength, rightLength);
+		boolean little = buffer.getByteOrder() == ByteOrder.LITTLE_ENDIAN;
+		long i = 0;
+		for (; i + Long.BYTES <= common; i += Long.BYTES) {
+			long l = buffer.getLong(leftPos + i), r = buffer.getLong(rightPos + i);
+			if (l != r) {
+				return little ? Long.compareUnsigned(Long.reverseBytes(l), Long.reverseBytes(r)) : Long.compareUnsigned(l, r);
+			}
+		}
+		for (; i < common; ++i) {
+			int cmp = Integer.compare(buffer.getByte(leftPos + i) & 0xff, buffer.getByte(rightPos + i) & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return Long.compare(leftLength, rightLength);
+	};
+
+	/** Size of index entry, containing 8-byte record offset and 8-byte record length. */
+	public static final int INDEX_ENTRY_SIZE = 16;
+
+	/** Size of block used for scanning and copying records. */
+	static final int COPY_BLOCK_SIZE = 64*1024;
+}
@@ -0,0 +1,202 @@
+package net.dryuf.bigio;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+public class AbstractFlatBufferTest
+{
+	@Test
+	public void testCopyWithinShort()
+	{
+		for (int length: new int[]{ 1, 7, 8, 9, 17, 256 }) {
+			for (int shift: new int[]{ -9, -3, 3, 9 }) {
+				ArrayFlatBuffer buffer = pattern(600);
+				byte[] expected = new byte[600];
+				buffer.getBytes(0, expected);
+				System.arraycopy(expected, 100, expected, 100+shift, length);
+				buffer.copyWithin(100, 100+shift, length);
+				byte[] result = new byte[600];
+				buffer.getBytes(0, result);
+				Assert.assertEquals(result, expected, "length="+length+" shift="+shift);
+			}
+		}
+	}
+
+	@Test
+	public void testCopyWithinLong()
+	{
+		ArrayFlatBuffer buffer = pattern(4000);
+		byte[] expected = new byte[4000];
+		buffer.getBytes(0, expected);
+		System.arraycopy(expected, 100, expected, 103, 3000);
+		buffer.copyWithin(100, 103, 3000);
+		byte[] result = new byte[4000];
+		buffer.getBytes(0, result);
+		Assert.assertEquals(result, expected);
+	}
+
+	@Test
+	public void testAtomicFallback()
+	{
+		ArrayFlatBuffer buffer = new ArrayFlatBuffer(32);
+		buffer.putIntVolatile(8, 5);
+		Assert.assertEquals(buffer.getIntVolatile(8), 5);
+		Assert.assertEquals(buffer.getInt(8), 5);
+		Assert.assertFalse(buffer.compareAndSetInt(8, 4, 7));
+		Assert.assertTrue(buffer.compareAndSetInt(8, 5, 7));
+		Assert.assertEquals(buffer.getAndAddInt(8, 3), 7);
+		Assert.assertEquals(buffer.getIntAcquire(8), 10);
+		buffer.putLongRelease(16, 0x0102030405060708L);
+		Assert.assertEquals(buffer.getLong(16), 0x0102030405060708L);
+		Assert.assertEquals(buffer.getAndAddLong(16, 1), 0x0102030405060708L);
+		Assert.assertTrue(buffer.compareAndSetLong(16, 0x0102030405060709L, -1L));
+		Assert.assertFalse(buffer.compareAndSetLong(16, 0, 1L));
+		Assert.assertEquals(buffer.getLongVolatile(16), -1L);
+		Assert.expectThrows(IllegalStateException.class, () -> buffer.getIntVolatile(9));
+		Assert.expectThrows(IllegalStateException.class, () -> buffer.getLongVolatile(4));
+	}
+
+	@Test
+	public void testAtomicFallbackConcurrent() throws Exception
+	{
+		ArrayFlatBuffer buffer = new ArrayFlatBuffer(32);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; ++i) {
+					buffer.getAndAddInt(4, 1);
+					buffer.getAndAddLong(8, 2);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		Assert.assertEquals(buffer.getIntVolatile(4), 40000);
+		Assert.assertEquals(buffer.getLongVolatile(8), 80000L);
+	}
+
+	private static ArrayFlatBuffer pattern(int size)
+	{
+		ArrayFlatBuffer buffer = new ArrayFlatBuffer(size);
+		for (int i = 0; i < size; ++i) {
+			buffer.putByte(i, (byte) (i*7));
+		}
+		return buffer;
+	}
+
+	/**
+	 * Minimal implementation, relying on {@link AbstractFlatBuffer} defaults wherever possible.
+	 */
+	private static class ArrayFlatBuffer extends AbstractFlatBuffer
+	{
+		public ArrayFlatBuffer(int size)
+		{
+			this.buffer = ByteBuffer.allocate(size);
+		}
+
+		@Override
+		public ByteOrder getByteOrder()
+		{
+			return buffer.order();
+		}
+
+		@Override
+		public FlatBuffer order(ByteOrder byteOrder)
+		{
+			buffer.order(byteOrder);
+			return this;
+		}
+
+		@Override
+		public long size()
+		{
+			return buffer.capacity();
+		}
+
+		@Override
+		public byte getByte(long pos)
+		{
+			return buffer.get(Math.toIntExact(pos));
+		}
+
+		@Override
+		public short getShort(long pos)
+		{
+			return buffer.getShort(Math.toIntExact(pos));
+		}
+
+		@Override
+		public int getInt(long pos)
+		{
+			return buffer.getInt(Math.toIntExact(pos));
+		}
+
+		@Override
+		public long getLong(long pos)
+		{
+			return buffer.getLong(Math.toIntExact(pos));
+		}
+
+		@Override
+		public void getBytes(long pos, byte[] data, int offset, int length)
+		{
+			buffer.get(Math.toIntExact(pos), data, offset, length);
+		}
+
+		@Override
+		public void getByteBuffer(long pos, ByteBuffer read)
+		{
+			read.put(read.position(), buffer, Math.toIntExact(pos), read.remaining());
+		}
+
+		@Override
+		public void putByte(long pos, byte val)
+		{
+			buffer.put(Math.toIntExact(pos), val);
+		}
+
+		@Override
+		public void putShort(long pos, short val)
+		{
+			buffer.putShort(Math.toIntExact(pos), val);
+		}
+
+		@Override
+		public void putInt(long pos, int val)
+		{
+			buffer.putInt(Math.toIntExact(pos), val);
+		}
+
+		@Override
+		public void putLong(long pos, long val)
+		{
+			buffer.putLong(Math.toIntExact(pos), val);
+		}
+
+		@Override
+		public void putBytes(long pos, byte[] data, int offset, int length)
+		{
+			buffer.put(Math.toIntExact(pos), data, offset, length);
+		}
+
+		@Override
+		public void putByteBuffer(long pos, ByteBuffer write)
+		{
+			buffer.put(Math.toIntExact(pos), write, write.position(), write.remaining());
+		}
+
+		@Override
+		public ByteBuffer subByteBuffer(long pos, long length)
+		{
+			return buffer.slice(Math.toIntExact(pos), Math.toIntExact(length)).order(buffer.order());
+		}
+
+		private final ByteBuffer buffer;
+	}
+}
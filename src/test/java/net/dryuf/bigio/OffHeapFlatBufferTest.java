@@ -0,0 +1,85 @@
+package net.dryuf.bigio;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteOrder;
+
+
+public class OffHeapFlatBufferTest
+{
+	private static final long BLOCK_SIZE = 1L<<30;
+
+	@Test
+	public void testAllocate()
+	{
+		OffHeapFlatBuffer closed;
+		try (OffHeapFlatBuffer buffer = OffHeapFlatBuffer.allocate(1000)) {
+			Assert.assertEquals(buffer.size(), 1000L);
+			Assert.assertEquals(buffer.getLong(992), 0L);
+			buffer.putLong(992, 0x0102030405060708L);
+			Assert.assertEquals(buffer.getByte(992), 1);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			Assert.assertEquals(buffer.getLong(992), 0x0807060504030201L);
+			Assert.expectThrows(IndexOutOfBoundsException.class, () -> buffer.getLong(996));
+			closed = buffer;
+		}
+		Assert.expectThrows(IllegalStateException.class, () -> closed.getLong(0));
+	}
+
+	@Test
+	public void testAllocateCross()
+	{
+		try (OffHeapFlatBuffer buffer = OffHeapFlatBuffer.allocate(BLOCK_SIZE+16)) {
+			buffer.putLong(BLOCK_SIZE-4, 0x0102030405060708L);
+			Assert.assertEquals(buffer.getLong(BLOCK_SIZE-4), 0x0102030405060708L);
+			Assert.assertEquals(buffer.getInt(BLOCK_SIZE), 0x05060708);
+			buffer.putLong(BLOCK_SIZE+8, -1L);
+			Assert.expectThrows(IndexOutOfBoundsException.class, () -> buffer.getByte(BLOCK_SIZE+16));
+		}
+	}
+
+	@Test
+	public void testPool()
+	{
+		try (OffHeapFlatBuffer.Pool pool = new OffHeapFlatBuffer.Pool(1024*1024)) {
+			try (OffHeapFlatBuffer first = pool.allocate(100000)) {
+				first.putInt(0, 42);
+				first.putInt(99996, 43);
+			}
+			Assert.assertEquals(pool.getRetained(), 104*1024L);
+
+			try (OffHeapFlatBuffer second = pool.allocate(99000)) {
+				Assert.assertEquals(pool.getRetained(), 0L);
+				Assert.assertEquals(second.getByteOrder(), ByteOrder.BIG_ENDIAN);
+				Assert.assertEquals(second.getInt(0), 0);
+				Assert.assertEquals(second.getInt(98996), 0);
+				second.order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			try (OffHeapFlatBuffer third = pool.allocate(100)) {
+				Assert.assertEquals(pool.getRetained(), 104*1024L);
+				Assert.assertEquals(third.getByteOrder(), ByteOrder.BIG_ENDIAN);
+			}
+			Assert.assertEquals(pool.getRetained(), (104+64)*1024L);
+
+			try (OffHeapFlatBuffer big = pool.allocate(2*1024*1024)) {
+				Assert.assertEquals(big.size(), 2*1024*1024L);
+			}
+			Assert.assertEquals(pool.getRetained(), (104+64)*1024L);
+		}
+	}
+
+	@Test
+	public void testPoolRoundCapacity()
+	{
+		Assert.assertEquals(OffHeapFlatBuffer.Pool.roundCapacity(1), 64*1024);
+		Assert.assertEquals(OffHeapFlatBuffer.Pool.roundCapacity(64*1024), 64*1024);
+		Assert.assertEquals(OffHeapFlatBuffer.Pool.roundCapacity(64*1024+1), 72*1024);
+		Assert.assertEquals(OffHeapFlatBuffer.Pool.roundCapacity(1<<30), 1<<30);
+		for (int length = 64*1024; length > 0 && length <= 1<<30; length = length*5/4+1) {
+			int capacity = OffHeapFlatBuffer.Pool.roundCapacity(length);
+			Assert.assertTrue(capacity >= length && capacity-length <= capacity/8, "length="+length);
+		}
+	}
+}
@@ -15,10 +15,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class CompositeMappedFlatBufferTest
 {
+	private static final int BLOCK_SIZE = 1<<30;
+
 	@BeforeClass
 	public void setup() throws IOException
 	{
@@ -31,13 +34,13 @@ public class CompositeMappedFlatBufferTest
 				pattern[i] = (byte) i;
 			}
 			channel.write(ByteBuffer.wrap(pattern));
-			channel.write(ByteBuffer.wrap(pattern), CompositeMappedFlatBuffer.BLOCK_SIZE -256);
-			channel.write(ByteBuffer.wrap(pattern), CompositeMappedFlatBuffer.BLOCK_SIZE);
-			channel.write(ByteBuffer.wrap(pattern), 2L*CompositeMappedFlatBuffer.BLOCK_SIZE -256);
-			channel.write(ByteBuffer.wrap(pattern), 2L*CompositeMappedFlatBuffer.BLOCK_SIZE);
-			channel.write(ByteBuffer.wrap(pattern), 3L*CompositeMappedFlatBuffer.BLOCK_SIZE -256);
-			channel.write(ByteBuffer.wrap(pattern), 3L*CompositeMappedFlatBuffer.BLOCK_SIZE);
-			channel.write(ByteBuffer.wrap(pattern), 4L*CompositeMappedFlatBuffer.BLOCK_SIZE);
+			channel.write(ByteBuffer.wrap(pattern), BLOCK_SIZE -256);
+			channel.write(ByteBuffer.wrap(pattern), BLOCK_SIZE);
+			channel.write(ByteBuffer.wrap(pattern), 2L*BLOCK_SIZE -256);
+			channel.write(ByteBuffer.wrap(pattern), 2L*BLOCK_SIZE);
+			channel.write(ByteBuffer.wrap(pattern), 3L*BLOCK_SIZE -256);
+			channel.write(ByteBuffer.wrap(pattern), 3L*BLOCK_SIZE);
+			channel.write(ByteBuffer.wrap(pattern), 4L*BLOCK_SIZE);
 		}
 
 		buffer = new CompositeMappedFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1);
@@ -53,6 +56,60 @@ public class CompositeMappedFlatBufferTest
 		Files.delete(testfile);
 	}
 
+	@Test
+	public void testClose() throws IOException
+	{
+		MappedFlatBuffer closed = new CompositeMappedFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1).releaseEagerly(true);
+		Assert.assertEquals(closed.getByte(7), 7);
+		closed.close();
+		Assert.expectThrows(IllegalStateException.class, () -> closed.getByte(7));
+		Assert.expectThrows(IllegalStateException.class, () -> closed.getLong(8));
+		Assert.expectThrows(IllegalStateException.class, () -> closed.putInt(8, 1));
+		Assert.expectThrows(IllegalStateException.class, () -> closed.getBytes(0, new byte[16]));
+		closed.close();
+
+		MappedFlatBuffer retained = new CompositeMappedFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1);
+		ByteBuffer view = retained.subByteBuffer(0, 16);
+		retained.close();
+		Assert.expectThrows(IllegalStateException.class, () -> retained.getByte(7));
+		Assert.assertEquals(view.get(7), 7);
+	}
+
+	@Test
+	public void testLazy() throws Exception
+	{
+		MappedFlatBuffer lazy = new CompositeMappedFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1, true).order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			Thread[] threads = new Thread[4];
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			for (int t = 0; t < threads.length; ++t) {
+				threads[t] = new Thread(() -> {
+					try {
+						for (long block = 4; block >= 0; --block) {
+							Assert.assertEquals(lazy.getByte(block*BLOCK_SIZE+7), 7);
+							Assert.assertEquals(lazy.getInt(block*BLOCK_SIZE+4), leBuffer.getInt(block*BLOCK_SIZE+4));
+						}
+						Assert.assertEquals(lazy.getLong(BLOCK_SIZE-4), leBuffer.getLong(BLOCK_SIZE-4));
+					}
+					catch (Throwable ex) {
+						failure.set(ex);
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread: threads) {
+				thread.join();
+			}
+			if (failure.get() != null) {
+				throw new AssertionError(failure.get());
+			}
+		}
+		finally {
+			lazy.close();
+		}
+		Assert.expectThrows(IllegalStateException.class, () -> lazy.getByte(7));
+	}
+
 	@Test
 	public void testReadByte()
 	{
@@ -106,26 +163,26 @@ public class CompositeMappedFlatBufferTest
 	@Test
 	public void testReadIntCross()
 	{
-		int result = buffer.getInt(CompositeMappedFlatBuffer.BLOCK_SIZE -1);
+		int result = buffer.getInt(BLOCK_SIZE -1);
 		Assert.assertEquals(result, (int) 0xff000102);
 	}
 
 	@Test
 	public void testReadLongCross()
 	{
-		long result = buffer.getLong(CompositeMappedFlatBuffer.BLOCK_SIZE -1);
+		long result = buffer.getLong(BLOCK_SIZE -1);
 		Assert.assertEquals(result, 0xff00010203040506L);
 	}
 
 	@Test
 	public void testReadBytesCross()
 	{
-		byte[] result = new byte[CompositeMappedFlatBuffer.BLOCK_SIZE +2];
-		buffer.getBytes(CompositeMappedFlatBuffer.BLOCK_SIZE -1, result);
+		byte[] result = new byte[BLOCK_SIZE +2];
+		buffer.getBytes(BLOCK_SIZE -1, result);
 		Assert.assertEquals(result[0], (byte) 0xff);
 		Assert.assertEquals(result[1], (byte) 0);
-		Assert.assertEquals(result[CompositeMappedFlatBuffer.BLOCK_SIZE +0], (byte) 0xff);
-		Assert.assertEquals(result[CompositeMappedFlatBuffer.BLOCK_SIZE +1], (byte) 0);
+		Assert.assertEquals(result[BLOCK_SIZE +0], (byte) 0xff);
+		Assert.assertEquals(result[BLOCK_SIZE +1], (byte) 0);
 	}
 
 	@Test
@@ -174,28 +231,28 @@ public class CompositeMappedFlatBufferTest
 	@Test
 	public void testLeReadByteCross()
 	{
-		byte result = leBuffer.getByte(CompositeMappedFlatBuffer.BLOCK_SIZE -1);
+		byte result = leBuffer.getByte(BLOCK_SIZE -1);
 		Assert.assertEquals(result, (byte) 0xff);
 	}
 
 	@Test
 	public void testLeReadShortCross()
 	{
-		short result = leBuffer.getShort(CompositeMappedFlatBuffer.BLOCK_SIZE -1);
+		short result = leBuffer.getShort(BLOCK_SIZE -1);
 		Assert.assertEquals(result, (short) 0x00ff);
 	}
 
 	@Test
 	public void testLeReadIntCross()
 	{
-		int result = leBuffer.getInt(CompositeMappedFlatBuffer.BLOCK_SIZE -1);
+		int result = leBuffer.getInt(BLOCK_SIZE -1);
 		Assert.assertEquals(result, (int) 0x020100ff);
 	}
 
 	@Test
 	public void testLeReadLongCross()
 	{
-		long result = leBuffer.getLong(CompositeMappedFlatBuffer.BLOCK_SIZE -1);
+		long result = leBuffer.getLong(BLOCK_SIZE -1);
 		Assert.assertEquals(result, 0x06050403020100ffL);
 	}
 
@@ -252,36 +309,36 @@ public class CompositeMappedFlatBufferTest
 	@Test
 	public void testWriteByteCross()
 	{
-		buffer.putByte(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, (byte) 4);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 4 });
+		buffer.putByte(3L*BLOCK_SIZE -1, (byte) 4);
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 4 });
 	}
 
 	@Test
 	public void testWriteShortCross()
 	{
-		buffer.putShort(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, (short) 0x506);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 5, 6 });
+		buffer.putShort(3L*BLOCK_SIZE -1, (short) 0x506);
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 5, 6 });
 	}
 
 	@Test
 	public void testWriteIntCross()
 	{
-		buffer.putInt(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, 0x708090a);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 7, 8, 9, 10 });
+		buffer.putInt(3L*BLOCK_SIZE -1, 0x708090a);
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 7, 8, 9, 10 });
 	}
 
 	@Test
 	public void testWriteLongCross()
 	{
-		buffer.putLong(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, 0x708090a0b0c0d0eL);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 7, 8, 9, 10, 11, 12, 13, 14 });
+		buffer.putLong(3L*BLOCK_SIZE -1, 0x708090a0b0c0d0eL);
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 7, 8, 9, 10, 11, 12, 13, 14 });
 	}
 
 	@Test
 	public void testWriteBytesCross()
 	{
-		buffer.putBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 1, 2, 3, 4, 5 });
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 1, 2, 3, 4, 5 });
+		buffer.putBytes(3L*BLOCK_SIZE -1, new byte[]{ 1, 2, 3, 4, 5 });
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 1, 2, 3, 4, 5 });
 	}
 
 	@Test
@@ -322,34 +379,34 @@ public class CompositeMappedFlatBufferTest
 	@Test
 	public void testLeWriteBytesCross()
 	{
-		byte[] bytes = new byte[CompositeMappedFlatBuffer.BLOCK_SIZE +2];
+		byte[] bytes = new byte[BLOCK_SIZE +2];
 		bytes[0] = 1;
 		bytes[1] = 2;
-		bytes[CompositeMappedFlatBuffer.BLOCK_SIZE -2] = 3;
-		bytes[CompositeMappedFlatBuffer.BLOCK_SIZE -1] = 4;
-		leBuffer.putBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, bytes);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, bytes);
+		bytes[BLOCK_SIZE -2] = 3;
+		bytes[BLOCK_SIZE -1] = 4;
+		leBuffer.putBytes(3L*BLOCK_SIZE -1, bytes);
+		assertBytes(3L*BLOCK_SIZE -1, bytes);
 	}
 
 	@Test
 	public void testLeWriteShortCross()
 	{
-		leBuffer.putShort(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, (short) 0x506);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 6, 5 });
+		leBuffer.putShort(3L*BLOCK_SIZE -1, (short) 0x506);
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 6, 5 });
 	}
 
 	@Test
 	public void testLeWriteIntCross()
 	{
-		leBuffer.putInt(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, 0x708090a);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 10, 9, 8, 7 });
+		leBuffer.putInt(3L*BLOCK_SIZE -1, 0x708090a);
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 10, 9, 8, 7 });
 	}
 
 	@Test
 	public void testLeWriteLongCross()
 	{
-		leBuffer.putLong(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, 0x708090a0b0c0d0eL);
-		assertBytes(3L*CompositeMappedFlatBuffer.BLOCK_SIZE -1, new byte[]{ 14, 13, 12, 11, 10, 9, 8, 7 });
+		leBuffer.putLong(3L*BLOCK_SIZE -1, 0x708090a0b0c0d0eL);
+		assertBytes(3L*BLOCK_SIZE -1, new byte[]{ 14, 13, 12, 11, 10, 9, 8, 7 });
 	}
 
 	@Test
@@ -363,7 +420,7 @@ public class CompositeMappedFlatBufferTest
 	public void testEqualsBytesCross()
 	{
 		byte[] expected = new byte[]{ -1, 0, 1, 2 };
-		Assert.assertTrue(buffer.equalsBytes(CompositeMappedFlatBuffer.BLOCK_SIZE -1, expected, 0, 4));
+		Assert.assertTrue(buffer.equalsBytes(BLOCK_SIZE -1, expected, 0, 4));
 	}
 
 	@Test
@@ -381,11 +438,106 @@ public class CompositeMappedFlatBufferTest
 	public void testCompareBytesCross()
 	{
 		byte[] expectedNeg = new byte[]{ -1, 1, 0, 0 };
-		Assert.assertTrue(buffer.compareBytes(CompositeMappedFlatBuffer.BLOCK_SIZE -1, expectedNeg, 0, 4) < 0);
+		Assert.assertTrue(buffer.compareBytes(BLOCK_SIZE -1, expectedNeg, 0, 4) < 0);
 		byte[] expectedZero = new byte[]{ -1, 0, 1, 2 };
-		Assert.assertTrue(buffer.compareBytes(CompositeMappedFlatBuffer.BLOCK_SIZE -1, expectedZero, 0, 4) == 0);
+		Assert.assertTrue(buffer.compareBytes(BLOCK_SIZE -1, expectedZero, 0, 4) == 0);
 		byte[] expectedPos = new byte[]{ -1, -1, 1, 2 };
-		Assert.assertTrue(buffer.compareBytes(CompositeMappedFlatBuffer.BLOCK_SIZE -1, expectedPos, 0, 4) > 0);
+		Assert.assertTrue(buffer.compareBytes(BLOCK_SIZE -1, expectedPos, 0, 4) > 0);
+	}
+
+	@Test
+	public void testMismatchCross() throws IOException
+	{
+		byte[] expected = new byte[256];
+		for (int i = 0; i < expected.length; ++i) {
+			expected[i] = (byte) (i+128);
+		}
+		SmallMappedFlatBuffer other = new SmallMappedFlatBuffer(ByteBuffer.wrap(expected));
+		Assert.assertEquals(buffer.mismatch(BLOCK_SIZE -128, other, 0, 256), -1L);
+		Assert.assertTrue(buffer.equalsBuffer(BLOCK_SIZE -128, other, 0, 256));
+		Assert.assertEquals(buffer.compareBytes(BLOCK_SIZE -128, expected, 0, 256), 0);
+		other.putByte(130, (byte) 1);
+		Assert.assertEquals(buffer.mismatch(BLOCK_SIZE -128, other, 0, 256), 130L);
+		Assert.assertFalse(buffer.equalsBuffer(BLOCK_SIZE -128, other, 0, 256));
+		Assert.assertTrue(buffer.compareBytes(BLOCK_SIZE -128, expected, 0, 256) > 0);
+	}
+
+	@Test
+	public void testBulkReadCross()
+	{
+		int[] ints = new int[8];
+		buffer.getInts(BLOCK_SIZE -14, ints, 0, 8);
+		for (int i = 0; i < 8; ++i) {
+			Assert.assertEquals(ints[i], buffer.getInt(BLOCK_SIZE -14 +4*i));
+		}
+		long[] longs = new long[4];
+		leBuffer.getLongs(BLOCK_SIZE -16, longs, 0, 4);
+		for (int i = 0; i < 4; ++i) {
+			Assert.assertEquals(longs[i], leBuffer.getLong(BLOCK_SIZE -16 +8*i));
+		}
+	}
+
+	@Test
+	public void testBulkWriteCross()
+	{
+		byte[] original = new byte[32];
+		buffer.getBytes(BLOCK_SIZE -13, original);
+		try {
+			short[] shorts = new short[]{ 0x0102, 0x0304, 0x0506, 0x0708, 0x090a, 0x0b0c, 0x0d0e, 0x0f10, 0x1112 };
+			leBuffer.putShorts(BLOCK_SIZE -13, shorts, 0, shorts.length);
+			assertBytes(BLOCK_SIZE -13, new byte[]{ 2, 1, 4, 3, 6, 5, 8, 7, 10, 9, 12, 11, 14, 13, 16, 15, 18, 17 });
+			long[] longs = new long[]{ 0x0102030405060708L, 0x1112131415161718L };
+			buffer.putLongs(BLOCK_SIZE -13, longs, 0, 2);
+			assertBytes(BLOCK_SIZE -13, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17, 0x18 });
+		}
+		finally {
+			buffer.putBytes(BLOCK_SIZE -13, original);
+		}
+	}
+
+	@Test
+	public void testAtomic()
+	{
+		long pos = 2L*BLOCK_SIZE+64;
+		buffer.putLongVolatile(pos, 10);
+		Assert.assertEquals(buffer.getAndAddLong(pos, 5), 10L);
+		Assert.assertTrue(buffer.compareAndSetLong(pos, 15, 20));
+		Assert.assertEquals(buffer.getLong(pos), 20L);
+		leBuffer.putIntRelease(pos, 0x01020304);
+		assertBytes(pos, new byte[]{ 4, 3, 2, 1 });
+		Assert.assertEquals(leBuffer.getIntAcquire(pos), 0x01020304);
+		buffer.putLongVolatile(pos, 0);
+		Assert.expectThrows(IllegalStateException.class, () -> buffer.getLongVolatile(BLOCK_SIZE-4));
+	}
+
+	@Test
+	public void testSwapRegions()
+	{
+		buffer.putBytes(300, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+		buffer.putBytes(BLOCK_SIZE+300, new byte[]{ 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31 });
+		buffer.swapRegions(300, BLOCK_SIZE+300, 11);
+		assertBytes(300, new byte[]{ 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31 });
+		assertBytes(BLOCK_SIZE+300, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+	}
+
+	@Test
+	public void testSwapRegionsCross()
+	{
+		buffer.putBytes(320, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+		buffer.putBytes(2L*BLOCK_SIZE-5, new byte[]{ 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31 });
+		buffer.swapRegions(320, 2L*BLOCK_SIZE-5, 11);
+		assertBytes(320, new byte[]{ 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31 });
+		assertBytes(2L*BLOCK_SIZE-5, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+	}
+
+	@Test
+	public void testCopyWithinOverlappingCross()
+	{
+		buffer.putBytes(4L*BLOCK_SIZE-20, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+		buffer.copyWithin(4L*BLOCK_SIZE-20, 4L*BLOCK_SIZE-18, 8);
+		assertBytes(4L*BLOCK_SIZE-20, new byte[]{ 1, 2, 1, 2, 3, 4, 5, 6, 7, 8 });
+		buffer.copyWithin(4L*BLOCK_SIZE-20, 4L*BLOCK_SIZE-6, 10);
+		assertBytes(4L*BLOCK_SIZE-6, new byte[]{ 1, 2, 1, 2, 3, 4, 5, 6, 7, 8 });
 	}
 
 	private void assertBytes(long pos, byte[] expected)
@@ -0,0 +1,135 @@
+package net.dryuf.bigio.file;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class GrowableMappedFlatBufferTest
+{
+	private static final int BLOCK_SIZE = 1<<30;
+
+	@Test
+	public void testGrow() throws IOException
+	{
+		Path testfile = Files.createTempFile("testfile", ".bin");
+		try (FileChannel channel = FileChannel.open(testfile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[]{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 }));
+			try (GrowableMappedFlatBuffer buffer = new GrowableMappedFlatBuffer(channel, 2)) {
+				Assert.assertEquals(buffer.size(), 8L);
+				ByteBuffer original = buffer.subByteBuffer(0, 8);
+				buffer.ensureCapacity(20);
+				Assert.assertTrue(buffer.size() >= 20);
+				Assert.assertEquals(channel.size(), 2+buffer.size());
+				Assert.assertEquals(buffer.getByte(7), 9);
+				buffer.putLong(12, 0x0102030405060708L);
+				buffer.putByte(0, (byte) 11);
+				Assert.assertEquals(original.get(0), 11);
+
+				buffer.truncate(20);
+				Assert.assertEquals(buffer.size(), 20L);
+				Assert.assertEquals(channel.size(), 22L);
+				Assert.assertEquals(buffer.getLong(12), 0x0102030405060708L);
+				Assert.expectThrows(IndexOutOfBoundsException.class, () -> buffer.getByte(20));
+			}
+		}
+		finally {
+			Files.delete(testfile);
+		}
+	}
+
+	@Test
+	public void testGrowReleaseEagerly() throws IOException
+	{
+		Path testfile = Files.createTempFile("testfile", ".bin");
+		try (FileChannel channel = FileChannel.open(testfile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			try (GrowableMappedFlatBuffer buffer = new GrowableMappedFlatBuffer(channel, 0)) {
+				buffer.releaseEagerly(true);
+				for (long i = 0; i < 64; ++i) {
+					buffer.ensureCapacity((i+1)*65536);
+					buffer.putLong(i*65536, i);
+				}
+				buffer.truncate(64*65536);
+				for (long i = 0; i < 64; ++i) {
+					Assert.assertEquals(buffer.getLong(i*65536), i);
+				}
+				Assert.assertEquals(channel.size(), 64*65536L);
+			}
+		}
+		finally {
+			Files.delete(testfile);
+		}
+	}
+
+	@Test
+	public void testGrowCross() throws IOException
+	{
+		Path testfile = Files.createTempFile("testfile", ".bin");
+		try (FileChannel channel = FileChannel.open(testfile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+			try (GrowableMappedFlatBuffer buffer = new GrowableMappedFlatBuffer(channel, 0)) {
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.ensureCapacity(BLOCK_SIZE-8);
+				buffer.putInt(BLOCK_SIZE-12, 0x01020304);
+				buffer.ensureCapacity(BLOCK_SIZE+16);
+				Assert.assertEquals(buffer.getInt(BLOCK_SIZE-12), 0x01020304);
+				buffer.putLong(BLOCK_SIZE-4, 0x0102030405060708L);
+				Assert.assertEquals(buffer.getLong(BLOCK_SIZE-4), 0x0102030405060708L);
+				Assert.assertEquals(buffer.getByte(BLOCK_SIZE-4), 8);
+				buffer.truncate(BLOCK_SIZE+4);
+				Assert.assertEquals(channel.size(), BLOCK_SIZE+4L);
+				Assert.assertEquals(buffer.getLong(BLOCK_SIZE-4), 0x0102030405060708L);
+			}
+		}
+		finally {
+			Files.delete(testfile);
+		}
+	}
+
+	@Test
+	public void testConcurrentReader() throws Exception
+	{
+		Path testfile = Files.createTempFile("testfile", ".bin");
+		try (FileChannel channel = FileChannel.open(testfile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(8));
+			try (GrowableMappedFlatBuffer buffer = new GrowableMappedFlatBuffer(channel, 0)) {
+				AtomicReference<Throwable> error = new AtomicReference<>();
+				Thread reader = new Thread(() -> {
+					try {
+						for (long last = 0; last < 1000; ) {
+							long current = buffer.getLongAcquire(0);
+							if (current < last) {
+								throw new AssertionError("Counter went back: last="+last+" current="+current);
+							}
+							if (current > 0) {
+								Assert.assertEquals(buffer.getLong(current*4096), current);
+							}
+							last = current;
+						}
+					}
+					catch (Throwable ex) {
+						error.set(ex);
+					}
+				});
+				reader.start();
+				for (long i = 1; i <= 1000; ++i) {
+					buffer.ensureCapacity(i*4096+8);
+					buffer.putLong(i*4096, i);
+					buffer.putLongRelease(0, i);
+				}
+				reader.join();
+				Assert.assertNull(error.get());
+			}
+		}
+		finally {
+			Files.delete(testfile);
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package net.dryuf.bigio.file;
+
+import net.dryuf.bigio.MappedFlatBuffer;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.testng.internal.junit.ArrayAsserts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class MemorySegmentFlatBufferTest
+{
+	@BeforeClass
+	public void setup() throws IOException
+	{
+		if (!MemorySegmentFlatBuffer.isAvailable()) {
+			throw new SkipException("Foreign Function and Memory API not available");
+		}
+		testfile = Files.createTempFile("testfile", ".bin");
+		testfile.toFile().deleteOnExit();
+		channel = FileChannel.open(testfile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.SPARSE);
+		{
+			byte[] pattern = new byte[512];
+			for (int i = 0; i < 256; ++i) {
+				pattern[i] = (byte) i;
+			}
+			channel.write(ByteBuffer.wrap(pattern));
+		}
+
+		buffer = new MemorySegmentFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1);
+		leBuffer = new MemorySegmentFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@AfterClass(alwaysRun = true)
+	public void teardown() throws IOException
+	{
+		if (buffer == null) {
+			return;
+		}
+		leBuffer.close();
+		buffer.close();
+		channel.close();
+		Files.delete(testfile);
+	}
+
+	@Test
+	public void testClose() throws IOException
+	{
+		MappedFlatBuffer closed = new MemorySegmentFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1);
+		ByteBuffer view = closed.subByteBuffer(0, 16);
+		Assert.assertEquals(closed.getByte(7), 7);
+		Assert.assertEquals(view.get(7), 7);
+		closed.close();
+		Assert.expectThrows(IllegalStateException.class, () -> closed.getByte(7));
+		Assert.expectThrows(IllegalStateException.class, () -> closed.getLong(8));
+		Assert.expectThrows(IllegalStateException.class, () -> closed.putInt(8, 1));
+		Assert.expectThrows(IllegalStateException.class, () -> closed.getBytes(0, new byte[16]));
+		Assert.expectThrows(IllegalStateException.class, () -> view.get(7));
+		closed.close();
+	}
+
+	@Test
+	public void testCloseConcurrent() throws Exception
+	{
+		for (int round = 0; round < 20; ++round) {
+			MappedFlatBuffer closed = new MemorySegmentFlatBuffer(channel, FileChannel.MapMode.READ_WRITE, 0, -1);
+			CountDownLatch started = new CountDownLatch(1);
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread reader = new Thread(() -> {
+				started.countDown();
+				try {
+					for (;;) {
+						closed.getLong(8);
+					}
+				}
+				catch (Throwable ex) {
+					failure.set(ex);
+				}
+			});
+			reader.start();
+			started.await();
+			closed.close();
+			reader.join();
+			Assert.assertEquals(failure.get().getClass(), IllegalStateException.class);
+		}
+	}
+
+	@Test
+	public void testFrom() throws IOException
+	{
+		try (MappedFlatBuffer mapped = MappedFlatBuffer.from(channel, FileChannel.MapMode.READ_ONLY, 0, -1)) {
+			Assert.assertEquals(mapped instanceof MemorySegmentFlatBuffer, MemorySegmentFlatBuffer.isSupported());
+			Assert.assertEquals(mapped.getByte(7), 7);
+		}
+	}
+
+	@Test
+	public void testReadByte()
+	{
+		byte result = buffer.getByte(7);
+		Assert.assertEquals(result, 7);
+	}
+
+	@Test
+	public void testReadShort()
+	{
+		short result = buffer.getShort(7);
+		Assert.assertEquals(result, (short) 0x0708);
+	}
+
+	@Test
+	public void testReadInt()
+	{
+		int result = buffer.getInt(7);
+		Assert.assertEquals(result, (int) 0x0708090a);
+	}
+
+	@Test
+	public void testReadLong()
+	{
+		long result = buffer.getLong(7);
+		Assert.assertEquals(result, 0x0708090a0b0c0d0eL);
+	}
+
+	@Test
+	public void testReadBytes()
+	{
+		byte[] result = new byte[8];
+		buffer.getBytes(7, result);
+		ArrayAsserts.assertArrayEquals(new byte[]{ 7, 8, 9, 10, 11, 12, 13, 14 }, result);
+	}
+
+	@Test
+	public void testLeReadByte()
+	{
+		byte result = leBuffer.getByte(7);
+		Assert.assertEquals(result, 7);
+	}
+
+	@Test
+	public void testLeReadShort()
+	{
+		short result = leBuffer.getShort(7);
+		Assert.assertEquals(result, (short) 0x0807);
+	}
+
+	@Test
+	public void testLeReadInt()
+	{
+		int result = leBuffer.getInt(7);
+		Assert.assertEquals(result, (int) 0x0a090807);
+	}
+
+	@Test
+	public void testLeReadLong()
+	{
+		long result = leBuffer.getLong(7);
+		Assert.assertEquals(result, 0x0e0d0c0b0a090807L);
+	}
+
+	@Test
+	public void testLeReadBytes()
+	{
+		byte[] result = new byte[8];
+		leBuffer.getBytes(7, result);
+		ArrayAsserts.assertArrayEquals(new byte[]{ 7, 8, 9, 10, 11, 12, 13, 14 }, result);
+	}
+
+	@Test
+	public void testWriteByte()
+	{
+		buffer.putByte(256, (byte) 4);
+		assertBytes(256, new byte[]{ 4 });
+	}
+
+	@Test
+	public void testWriteShort()
+	{
+		buffer.putShort(258, (short) 0x506);
+		assertBytes(258, new byte[]{ 5, 6 });
+	}
+
+	@Test
+	public void testWriteInt()
+	{
+		buffer.putInt(260, 0x708090a);
+		assertBytes(260, new byte[]{ 7, 8, 9, 10 });
+	}
+
+	@Test
+	public void testWriteLong()
+	{
+		buffer.putLong(268, 0x708090a0b0c0d0eL);
+		assertBytes(268, new byte[]{ 7, 8, 9, 10, 11, 12, 13, 14 });
+	}
+
+	@Test
+	public void testWriteBytes()
+	{
+		buffer.putBytes(280, new byte[]{ 1, 2, 3, 4, 5 });
+		assertBytes(280, new byte[]{ 1, 2, 3, 4, 5 });
+	}
+
+	@Test
+	public void testLeWriteByte()
+	{
+		leBuffer.putByte(256, (byte) 4);
+		assertBytes(256, new byte[]{ 4 });
+	}
+
+	@Test
+	public void testLeWriteShort()
+	{
+		leBuffer.putShort(258, (short) 0x506);
+		assertBytes(258, new byte[]{ 6, 5 });
+	}
+
+	@Test
+	public void testLeWriteInt()
+	{
+		leBuffer.putInt(260, 0x708090a);
+		assertBytes(260, new byte[]{ 10, 9, 8, 7 });
+	}
+
+	@Test
+	public void testLeWriteLong()
+	{
+		leBuffer.putLong(268, 0x708090a0b0c0d0eL);
+		assertBytes(268, new byte[]{ 14, 13, 12, 11, 10, 9, 8, 7 });
+	}
+
+	@Test
+	public void testLeWriteBytes()
+	{
+		leBuffer.putBytes(280, new byte[]{ 1, 2, 3, 4, 5 });
+		assertBytes(280, new byte[]{ 1, 2, 3, 4, 5 });
+	}
+
+	@Test
+	public void testEqualsBytes()
+	{
+		byte[] expected = new byte[]{ 0, 1, 2, 3 };
+		Assert.assertTrue(buffer.equalsBytes(0, expected, 0, 4));
+	}
+
+	@Test
+	public void testCompareBytes()
+	{
+		byte[] expectedNeg = new byte[]{ 0, 2, 0, 0 };
+		Assert.assertTrue(buffer.compareBytes(0, expectedNeg, 0, 4) < 0);
+		byte[] expectedZero = new byte[]{ 0, 1, 2, 3 };
+		Assert.assertTrue(buffer.compareBytes(0, expectedZero, 0, 4) == 0);
+		byte[] expectedPos = new byte[]{ 0, 0, 1, 2 };
+		Assert.assertTrue(buffer.compareBytes(0, expectedPos, 0, 4) > 0);
+	}
+
+	@Test
+	public void testCompareBytesLong() throws IOException
+	{
+		byte[] expected = new byte[256];
+		buffer.getBytes(0, expected);
+		Assert.assertEquals(buffer.compareBytes(0, expected, 0, 256), 0);
+		Assert.assertEquals(buffer.compareByteBuffer(0, ByteBuffer.wrap(expected)), 0);
+		expected[150] = 0;
+		Assert.assertTrue(buffer.compareBytes(0, expected, 0, 256) < 0);
+		Assert.assertTrue(buffer.compareByteBuffer(0, ByteBuffer.wrap(expected)) < 0);
+		expected[150] = (byte) 151;
+		expected[100] = 99;
+		Assert.assertTrue(buffer.compareBytes(0, expected, 0, 256) > 0);
+		Assert.assertTrue(buffer.compareByteBuffer(0, ByteBuffer.wrap(expected)) > 0);
+	}
+
+	@Test
+	public void testMismatch() throws IOException
+	{
+		byte[] expected = new byte[256];
+		buffer.getBytes(0, expected);
+		SmallMappedFlatBuffer other = new SmallMappedFlatBuffer(ByteBuffer.wrap(expected));
+		Assert.assertEquals(buffer.mismatch(0, other, 0, 256), -1L);
+		Assert.assertTrue(buffer.equalsBuffer(0, other, 0, 256));
+		Assert.assertEquals(buffer.mismatch(16, other, 16, 8), -1L);
+		other.putByte(200, (byte) 0);
+		Assert.assertEquals(buffer.mismatch(0, other, 0, 256), 200L);
+		Assert.assertEquals(buffer.mismatch(190, other, 190, 16), 10L);
+		Assert.assertEquals(buffer.mismatch(0, other, 0, 200), -1L);
+		Assert.assertFalse(buffer.equalsBuffer(0, other, 0, 256));
+		Assert.assertEquals(buffer.mismatch(1, other, 0, 100), 0L);
+	}
+
+	@Test
+	public void testCompareTo() throws IOException
+	{
+		byte[] expected = new byte[256];
+		buffer.getBytes(0, expected);
+		SmallMappedFlatBuffer prefix = new SmallMappedFlatBuffer(ByteBuffer.wrap(expected));
+		Assert.assertTrue(buffer.compareTo(prefix) > 0);
+		Assert.assertTrue(prefix.compareTo(buffer) < 0);
+		Assert.assertEquals(prefix.compareTo(new SmallMappedFlatBuffer(ByteBuffer.wrap(expected.clone()))), 0);
+		expected[128] = 0;
+		Assert.assertTrue(buffer.compareTo(prefix) > 0);
+		Assert.assertTrue(prefix.compareTo(buffer) < 0);
+	}
+
+	@Test
+	public void testBulkRead()
+	{
+		int[] ints = new int[9];
+		buffer.getInts(3, ints, 1, 8);
+		for (int i = 0; i < 8; ++i) {
+			Assert.assertEquals(ints[1+i], buffer.getInt(3+4*i));
+		}
+		long[] longs = new long[4];
+		leBuffer.getLongs(1, longs, 0, 4);
+		for (int i = 0; i < 4; ++i) {
+			Assert.assertEquals(longs[i], leBuffer.getLong(1+8*i));
+		}
+		short[] shorts = new short[3];
+		buffer.getShorts(0, shorts, 0, 3);
+		Assert.assertEquals(shorts, new short[]{ 0x0001, 0x0203, 0x0405 });
+		double[] doubles = new double[2];
+		leBuffer.getDoubles(8, doubles, 0, 2);
+		Assert.assertEquals(Double.doubleToRawLongBits(doubles[1]), leBuffer.getLong(16));
+		Assert.expectThrows(IllegalArgumentException.class, () -> buffer.getInts(500, new int[4], 0, 4));
+		Assert.expectThrows(IndexOutOfBoundsException.class, () -> buffer.getInts(0, new int[4], 1, 4));
+	}
+
+	@Test
+	public void testBulkWrite()
+	{
+		leBuffer.putInts(361, new int[]{ 0, 0x01020304, 0x05060708 }, 1, 2);
+		assertBytes(361, new byte[]{ 4, 3, 2, 1, 8, 7, 6, 5 });
+		buffer.putLongs(370, new long[]{ 0x0102030405060708L }, 0, 1);
+		assertBytes(370, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 });
+		buffer.putFloats(380, new float[]{ 1.0f }, 0, 1);
+		Assert.assertEquals(buffer.getInt(380), Float.floatToRawIntBits(1.0f));
+	}
+
+	@Test
+	public void testAtomic()
+	{
+		buffer.putIntVolatile(400, 5);
+		Assert.assertEquals(buffer.getIntVolatile(400), 5);
+		Assert.assertEquals(buffer.getInt(400), 5);
+		Assert.assertFalse(buffer.compareAndSetInt(400, 4, 7));
+		Assert.assertTrue(buffer.compareAndSetInt(400, 5, 7));
+		Assert.assertEquals(buffer.getAndAddInt(400, 3), 7);
+		Assert.assertEquals(buffer.getIntAcquire(400), 10);
+		leBuffer.putLongRelease(408, 0x0102030405060708L);
+		assertBytes(408, new byte[]{ 8, 7, 6, 5, 4, 3, 2, 1 });
+		Assert.assertEquals(leBuffer.getAndAddLong(408, 1), 0x0102030405060708L);
+		Assert.assertTrue(leBuffer.compareAndSetLong(408, 0x0102030405060709L, -1L));
+		Assert.assertEquals(leBuffer.getLongVolatile(408), -1L);
+		Assert.expectThrows(IllegalStateException.class, () -> buffer.getIntVolatile(401));
+		Assert.expectThrows(IllegalArgumentException.class, () -> buffer.getLongVolatile(512));
+	}
+
+	@Test
+	public void testAtomicConcurrent() throws Exception
+	{
+		buffer.putLongVolatile(416, 0);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; ++i) {
+					buffer.getAndAddLong(416, 1);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		Assert.assertEquals(buffer.getLongVolatile(416), 40000L);
+	}
+
+	@Test
+	public void testSwapRegions()
+	{
+		buffer.putBytes(300, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+		buffer.putBytes(320, new byte[]{ 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31 });
+		buffer.swapRegions(300, 320, 11);
+		assertBytes(300, new byte[]{ 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31 });
+		assertBytes(320, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+	}
+
+	@Test
+	public void testCopyWithinOverlapping()
+	{
+		buffer.putBytes(340, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+		buffer.copyWithin(340, 342, 8);
+		assertBytes(340, new byte[]{ 1, 2, 1, 2, 3, 4, 5, 6, 7, 8 });
+		buffer.copyWithin(342, 340, 8);
+		assertBytes(340, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 7, 8 });
+	}
+
+	private void assertBytes(long pos, byte[] expected)
+	{
+		byte[] result = new byte[expected.length];
+		leBuffer.getBytes(pos, result);
+		if (!Arrays.equals(expected, result)) {
+			// TestNG implementation is super slow, therefore we check using Java util first
+			ArrayAsserts.assertArrayEquals(expected, result);
+		}
+	}
+
+	private Path testfile;
+	private FileChannel channel;
+	private MemorySegmentFlatBuffer buffer;
+	private MappedFlatBuffer leBuffer;
+}
@@ -0,0 +1,58 @@
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatChannels;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+import org.testng.annotations.Test;
+import org.testng.internal.junit.ArrayAsserts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+
+public class ExternalFlatSortTest
+{
+	@Test
+	public void sort_inMemory_sort() throws IOException
+	{
+		sortTester(1000, 1_000_000);
+	}
+
+	@Test
+	public void sort_singlePass_sort() throws IOException
+	{
+		sortTester(100_000, 40_000);
+	}
+
+	@Test
+	public void sort_multiPass_sort() throws IOException
+	{
+		sortTester(10_001, 100);
+	}
+
+	private void sortTester(int count, int memorySize) throws IOException
+	{
+		Random random = new Random(0);
+		int[] input = new int[count];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = random.nextInt(count/2+1);
+		}
+		int[] sorted = Arrays.copyOf(input, input.length);
+		Arrays.sort(sorted);
+
+		byte[] inputBytes = new byte[input.length*4];
+		ByteBuffer.wrap(inputBytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(input);
+		ByteBuffer output = ByteBuffer.allocate(input.length*4+8).order(ByteOrder.LITTLE_ENDIAN);
+
+		new ExternalFlatSort(4, (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right)), memorySize, null)
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.sort(FlatChannels.fromBytes(inputBytes), 0, inputBytes.length, new SmallMappedFlatBuffer(output), 8);
+
+		int[] isorted = new int[input.length];
+		output.position(8);
+		output.asIntBuffer().get(isorted);
+		ArrayAsserts.assertArrayEquals(sorted, isorted);
+	}
+}
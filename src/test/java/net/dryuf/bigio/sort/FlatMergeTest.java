@@ -0,0 +1,107 @@
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+import org.testng.annotations.Test;
+import org.testng.internal.junit.ArrayAsserts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class FlatMergeTest
+{
+	private static final FlatSort.FlatBufferComparator KEY_COMPARATOR = (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right));
+
+	@Test
+	public void merge_multipleInputs_stable() throws IOException
+	{
+		List<long[]> expected = new ArrayList<>();
+		List<FlatBuffer> inputs = generateInputs(7, 1000, expected);
+		expected.sort((a, b) -> Long.compare(a[0], b[0]));
+
+		ByteBuffer output = ByteBuffer.allocate(expected.size()*8+8).order(ByteOrder.LITTLE_ENDIAN);
+		long written = new FlatMerge(8, KEY_COMPARATOR, 200)
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.merge(inputs, new SmallMappedFlatBuffer(output), 8);
+
+		assertEquals(written, expected.size()*8L);
+		for (int i = 0; i < expected.size(); ++i) {
+			assertEquals(output.getInt(8+i*8), expected.get(i)[0], "key at "+i);
+			assertEquals(output.getInt(8+i*8+4), expected.get(i)[1], "input at "+i);
+		}
+	}
+
+	@Test
+	public void merge_combiner_sumsEqual() throws IOException
+	{
+		List<long[]> expected = new ArrayList<>();
+		List<FlatBuffer> inputs = generateInputs(5, 300, expected);
+		long[] sums = new long[1000];
+		Arrays.fill(sums, -1);
+		for (long[] item: expected) {
+			sums[(int) item[0]] = sums[(int) item[0]] < 0 ? item[1] : sums[(int) item[0]] + item[1];
+		}
+
+		ByteBuffer output = ByteBuffer.allocate(expected.size()*8).order(ByteOrder.LITTLE_ENDIAN);
+		long written = new FlatMerge(8, KEY_COMPARATOR, 100)
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.combiner((b, accumulated, next) -> b.putInt(accumulated+4, b.getInt(accumulated+4)+b.getInt(next+4)))
+			.merge(inputs, new SmallMappedFlatBuffer(output), 0);
+
+		int pos = 0;
+		for (int key = 0; key < sums.length; ++key) {
+			if (sums[key] >= 0) {
+				assertEquals(output.getInt(pos), key);
+				assertEquals(output.getInt(pos+4), sums[key], "sum for "+key);
+				pos += 8;
+			}
+		}
+		assertEquals(written, pos);
+	}
+
+	@Test
+	public void merge_subBuffers_merged() throws IOException
+	{
+		ByteBuffer input = ByteBuffer.allocate(4*10).order(ByteOrder.LITTLE_ENDIAN);
+		input.asIntBuffer().put(new int[]{ -1, 1, 4, 7, -1, 2, 3, 9, 10, -1 });
+		FlatBuffer inputBuffer = new SmallMappedFlatBuffer(input);
+
+		ByteBuffer output = ByteBuffer.allocate(4*7).order(ByteOrder.LITTLE_ENDIAN);
+		new FlatMerge(4, KEY_COMPARATOR, 1024)
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.merge(Arrays.asList(inputBuffer.subBuffer(4, 12), inputBuffer.subBuffer(20, 16)), new SmallMappedFlatBuffer(output), 0);
+
+		int[] result = new int[7];
+		output.asIntBuffer().get(result);
+		ArrayAsserts.assertArrayEquals(new int[]{ 1, 2, 3, 4, 7, 9, 10 }, result);
+	}
+
+	private List<FlatBuffer> generateInputs(int count, int size, List<long[]> items) throws IOException
+	{
+		Random random = new Random(0);
+		List<FlatBuffer> inputs = new ArrayList<>();
+		for (int input = 0; input < count; ++input) {
+			int[] keys = new int[size];
+			for (int i = 0; i < keys.length; ++i) {
+				keys[i] = random.nextInt(1000);
+			}
+			Arrays.sort(keys);
+			ByteBuffer buffer = ByteBuffer.allocate(keys.length*8).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < keys.length; ++i) {
+				buffer.putInt(i*8, keys[i]);
+				buffer.putInt(i*8+4, input);
+				items.add(new long[]{ keys[i], input });
+			}
+			inputs.add(new SmallMappedFlatBuffer(buffer));
+		}
+		return inputs;
+	}
+}
@@ -0,0 +1,97 @@
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+import org.testng.annotations.Test;
+import org.testng.internal.junit.ArrayAsserts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class FlatSearchTest
+{
+	@Test
+	public void lowerBound_existing_first() throws IOException
+	{
+		FlatBuffer buffer = createBuffer(1, 3, 3, 3, 5, 7);
+		assertEquals(FlatSearch.lowerBound(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), 3)), 4);
+		assertEquals(FlatSearch.lowerBound(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), 4)), 16);
+		assertEquals(FlatSearch.lowerBound(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), 8)), 24);
+	}
+
+	@Test
+	public void upperBound_existing_afterLast() throws IOException
+	{
+		FlatBuffer buffer = createBuffer(1, 3, 3, 3, 5, 7);
+		assertEquals(FlatSearch.upperBound(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), 3)), 16);
+		assertEquals(FlatSearch.upperBound(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), 0)), 0);
+	}
+
+	@Test
+	public void equalRange_existing_range() throws IOException
+	{
+		FlatBuffer buffer = createBuffer(1, 3, 3, 3, 5, 7);
+		ArrayAsserts.assertArrayEquals(new long[]{ 4, 16 }, FlatSearch.equalRange(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), 3)));
+		ArrayAsserts.assertArrayEquals(new long[]{ 16, 16 }, FlatSearch.equalRange(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), 4)));
+	}
+
+	@Test
+	public void lowerBounds_random_matchSingle() throws IOException
+	{
+		Random random = new Random(0);
+		int[] values = new int[10_000];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = random.nextInt(20_000);
+		}
+		Arrays.sort(values);
+		int[] probeValues = new int[1000];
+		for (int i = 0; i < probeValues.length; ++i) {
+			probeValues[i] = random.nextInt(21_000);
+		}
+		Arrays.sort(probeValues);
+		FlatBuffer buffer = createBuffer(values);
+		FlatBuffer probes = createBuffer(probeValues);
+
+		long[] results = new long[probeValues.length];
+		FlatSearch.lowerBounds(buffer, 4, 0, buffer.size(), probes, 4, 0, probeValues.length, (b, pos, p, probePos) -> Integer.compare(b.getInt(pos), p.getInt(probePos)), results);
+
+		for (int i = 0; i < probeValues.length; ++i) {
+			int probe = probeValues[i];
+			assertEquals(results[i], FlatSearch.lowerBound(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), probe)));
+		}
+	}
+
+	@Test
+	public void interpolationLowerBound_random_matchBinary() throws IOException
+	{
+		Random random = new Random(0);
+		for (int c = 0; c < 10; ++c) {
+			int[] values = new int[random.nextInt(10_000)];
+			for (int i = 0; i < values.length; ++i) {
+				values[i] = c%2 == 0 ? random.nextInt() : random.nextInt(100)*random.nextInt(100);
+			}
+			Arrays.sort(values);
+			FlatBuffer buffer = createBuffer(values);
+
+			for (int i = 0; i < 1000; ++i) {
+				int key = i%3 == 0 && values.length > 0 ? values[random.nextInt(values.length)] : random.nextInt();
+				assertEquals(
+					FlatSearch.interpolationLowerBound(buffer, 4, 0, buffer.size(), FlatBuffer::getInt, key),
+					FlatSearch.lowerBound(buffer, 4, 0, buffer.size(), (b, pos) -> Integer.compare(b.getInt(pos), key))
+				);
+			}
+		}
+	}
+
+	private static FlatBuffer createBuffer(int... values) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(values.length*4);
+		buffer.asIntBuffer().put(values);
+		return new SmallMappedFlatBuffer(buffer);
+	}
+}
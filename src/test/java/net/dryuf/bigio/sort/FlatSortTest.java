@@ -1,5 +1,6 @@
 package net.dryuf.bigio.sort;
 
+import net.dryuf.bigio.FlatBuffer;
 import net.dryuf.bigio.file.SmallMappedFlatBuffer;
 import org.testng.annotations.Test;
 import org.testng.internal.junit.ArrayAsserts;
@@ -10,8 +11,13 @@ import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
 
 
 public class FlatSortTest
@@ -142,6 +148,551 @@ public class FlatSortTest
 		}
 	}
 
+	@Test
+	public void sortFlat_organPipe_sort() throws Throwable
+	{
+		int[] input = new int[100_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = i < input.length/2 ? i : input.length-i;
+		}
+
+		intTesterFlat(input);
+	}
+
+	@Test
+	public void sortFlat_sawtooth_sort() throws Throwable
+	{
+		int[] input = new int[100_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = i%1000;
+		}
+
+		intTesterFlat(input);
+	}
+
+	@Test
+	public void heapSort_intRandom_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		for (int c = 0; c < 100; ++c) {
+			int[] input = new int[random.nextInt(1000)+1];
+			for (int i = 0; i < input.length; ++i) {
+				input[i] = random.nextInt(c%2 == 0 ? 10 : Integer.MAX_VALUE);
+			}
+
+			intTesterGeneric(input, (buffer, length) -> FlatSort.heapSort(buffer, 4, 0, length-4, (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right))));
+		}
+	}
+
+	@Test
+	public void parallelSort_intRandom_sort() throws Throwable
+	{
+		Random random = new Random();
+		int[] input = new int[100_000];
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			for (int c = 0; c < 10; ++c) {
+				for (int i = 0; i < input.length; ++i) {
+					input[i] = random.nextInt(c == 0 ? 16 : Integer.MAX_VALUE);
+				}
+
+				intTesterGeneric(input, (buffer, length) -> FlatSort.parallelSort(buffer, 4, 0, length, (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right)), pool, 100));
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelSort_comparatorThrows_quiescent() throws Throwable
+	{
+		Random random = new Random(0);
+		ByteBuffer input = ByteBuffer.allocate(4_000_000*4);
+		for (int i = 0; i < input.capacity(); i += 4) {
+			input.putInt(i, random.nextInt());
+		}
+		FlatBuffer buffer = new SmallMappedFlatBuffer(input);
+		AtomicLong comparisons = new AtomicLong();
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			IllegalStateException ex = expectThrows(IllegalStateException.class, () -> FlatSort.parallelSort(buffer, 4, 0, buffer.size(), (b, left, right) -> {
+				if (comparisons.incrementAndGet() == 20_000_000) {
+					throw new IllegalStateException("comparator failure");
+				}
+				return Integer.compare(b.getInt(left), b.getInt(right));
+			}, pool, 100));
+			Throwable cause = ex;
+			while (cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			assertEquals(cause.getMessage(), "comparator failure");
+			long finished = comparisons.get();
+			byte[] content = new byte[input.capacity()];
+			input.get(0, content);
+			Thread.sleep(200);
+			assertEquals(comparisons.get(), finished);
+			assertEquals(input, ByteBuffer.wrap(content));
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelSampleSort_intRandom_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			for (int c = 0; c < 4; ++c) {
+				int[] input = new int[c == 3 ? 1000 : 300_000];
+				for (int i = 0; i < input.length; ++i) {
+					input[i] = random.nextInt(c == 0 ? 16 : Integer.MAX_VALUE);
+				}
+				int[] sorted = Arrays.copyOf(input, input.length);
+				Arrays.sort(sorted);
+
+				ByteBuffer source = ByteBuffer.allocate(input.length*8).order(ByteOrder.LITTLE_ENDIAN);
+				for (int i = 0; i < input.length; ++i) {
+					source.putInt(i*8, input[i]);
+					source.putInt(i*8+4, ~input[i]);
+				}
+				ByteBuffer target = ByteBuffer.allocate(input.length*8+16).order(ByteOrder.LITTLE_ENDIAN);
+				FlatSort.parallelSampleSort(new SmallMappedFlatBuffer(source), 8, 0, source.capacity(), (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right)), new SmallMappedFlatBuffer(target), 16, pool);
+
+				for (int i = 0; i < input.length; ++i) {
+					assertEquals(target.getInt(16+i*8), sorted[i]);
+					assertEquals(target.getInt(16+i*8+4), ~sorted[i]);
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void keyPointerSort_widths_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		for (int width: new int[]{ 1, 2, 4 }) {
+			for (boolean signed: new boolean[]{ false, true }) {
+				for (boolean inPlace: new boolean[]{ false, true }) {
+					long signFlip = signed ? 1L << (width*8-1) : 0;
+					long mask = (1L << width*8) - 1;
+					long[] input = new long[5000];
+					for (int i = 0; i < input.length; ++i) {
+						input[i] = random.nextLong() & mask;
+					}
+					long[] sorted = new long[input.length];
+					for (int i = 0; i < input.length; ++i) {
+						sorted[i] = input[i] ^ signFlip;
+					}
+					Arrays.sort(sorted);
+
+					ByteBuffer buffer = ByteBuffer.allocate(input.length*11).order(ByteOrder.LITTLE_ENDIAN);
+					for (int i = 0; i < input.length; ++i) {
+						putKey(buffer, i*11+3, width, input[i]);
+						buffer.putInt(i*11+7, (int) input[i]);
+					}
+					ByteBuffer target = inPlace ? buffer : ByteBuffer.allocate(input.length*11+5).order(ByteOrder.LITTLE_ENDIAN);
+					int targetPos = inPlace ? 0 : 5;
+					FlatSort.keyPointerSort(new SmallMappedFlatBuffer(buffer), 11, 0, buffer.capacity(), 3, width, signed, ByteOrder.LITTLE_ENDIAN, inPlace ? null : new SmallMappedFlatBuffer(target), targetPos);
+
+					for (int i = 0; i < input.length; ++i) {
+						long key = sorted[i] ^ signFlip;
+						assertEquals(getKey(target, targetPos+i*11+3, width, mask), key, "width="+width+" signed="+signed+" i="+i);
+						assertEquals(target.getInt(targetPos+i*11+7), (int) key);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void keyPointerSortOffHeap_signed_sortedStable() throws Throwable
+	{
+		Random random = new Random(0);
+		for (boolean inPlace: new boolean[]{ false, true }) {
+			int[] input = new int[5000];
+			for (int i = 0; i < input.length; ++i) {
+				input[i] = random.nextInt(200) - 100;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(input.length*8);
+			for (int i = 0; i < input.length; ++i) {
+				buffer.putInt(i*8, input[i]);
+				buffer.putInt(i*8+4, i);
+			}
+			ByteBuffer target = inPlace ? buffer : ByteBuffer.allocate(input.length*8+5);
+			int targetPos = inPlace ? 0 : 5;
+			FlatSort.keyPointerSortOffHeap(new SmallMappedFlatBuffer(buffer), 8, 0, input.length, 0, 4, true, ByteOrder.BIG_ENDIAN, inPlace ? null : new SmallMappedFlatBuffer(target), targetPos);
+
+			for (int i = 1; i < input.length; ++i) {
+				int previous = target.getInt(targetPos+i*8-8);
+				int current = target.getInt(targetPos+i*8);
+				assertTrue(previous < current || previous == current && target.getInt(targetPos+i*8-4) < target.getInt(targetPos+i*8+4), "inPlace="+inPlace+" i="+i);
+				assertEquals(input[target.getInt(targetPos+i*8+4)], current);
+			}
+		}
+	}
+
+	@Test
+	public void unique_sorted_compacted() throws Throwable
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(4*9);
+		buffer.asIntBuffer().put(new int[]{ 1, 1, 2, 3, 3, 3, 5, 7, 7 });
+
+		long length = FlatSort.unique(new SmallMappedFlatBuffer(buffer), 4, 0, buffer.capacity(), (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right)));
+
+		assertEquals(length, 4*5);
+		int[] result = new int[5];
+		buffer.asIntBuffer().get(result);
+		ArrayAsserts.assertArrayEquals(new int[]{ 1, 2, 3, 5, 7 }, result);
+	}
+
+	@Test
+	public void reduceSorted_sum_combined() throws Throwable
+	{
+		int[] input = new int[]{ 1, 10, 1, 20, 2, 5, 4, 1, 4, 2, 4, 3, 9, 9 };
+		int[] expected = new int[]{ 1, 30, 2, 5, 4, 6, 9, 9 };
+		FlatSort.FlatBufferComparator comparator = (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right));
+		FlatMerge.Combiner combiner = (b, accumulated, next) -> b.putInt(accumulated+4, b.getInt(accumulated+4)+b.getInt(next+4));
+
+		ByteBuffer target = ByteBuffer.allocate(4+expected.length*4).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer source = ByteBuffer.allocate(input.length*4).order(ByteOrder.LITTLE_ENDIAN);
+		source.asIntBuffer().put(input);
+		long written = FlatSort.reduceSorted(new SmallMappedFlatBuffer(source), 8, 0, source.capacity(), comparator, combiner, new SmallMappedFlatBuffer(target), 4);
+		assertEquals(written, expected.length*4);
+		int[] result = new int[expected.length];
+		target.position(4);
+		target.asIntBuffer().get(result);
+		ArrayAsserts.assertArrayEquals(expected, result);
+
+		long length = FlatSort.reduceSorted(new SmallMappedFlatBuffer(source), 8, 0, source.capacity(), comparator, combiner);
+		assertEquals(length, expected.length*4);
+		source.asIntBuffer().get(result);
+		ArrayAsserts.assertArrayEquals(expected, result);
+	}
+
+	@Test
+	public void sortByKey_strideInt_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		for (int c = 0; c < 20; ++c) {
+			int[] input = new int[random.nextInt(20_000)];
+			for (int i = 0; i < input.length; ++i) {
+				input[i] = c%2 == 0 ? random.nextInt() : random.nextInt(100) - 50;
+			}
+			int[] sorted = Arrays.copyOf(input, input.length);
+			Arrays.sort(sorted);
+
+			ByteBuffer buffer = ByteBuffer.allocate(input.length*28).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < input.length; ++i) {
+				buffer.putInt(i*28, input[i]);
+				buffer.putInt(i*28+24, ~input[i]);
+			}
+			FlatSort.sortByKey(new SmallMappedFlatBuffer(buffer), 28, 0, buffer.capacity(), 0, Integer.BYTES, true, ByteOrder.LITTLE_ENDIAN);
+
+			for (int i = 0; i < input.length; ++i) {
+				assertEquals(buffer.getInt(i*28), sorted[i]);
+				assertEquals(buffer.getInt(i*28+24), ~sorted[i]);
+			}
+		}
+	}
+
+	@Test
+	public void sortByKey_widths_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		for (int width: new int[]{ 1, 2, 4, 8 }) {
+			for (boolean signed: new boolean[]{ false, true }) {
+				for (ByteOrder order: new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+					long signFlip = signed ? 1L << (width*8-1) : 0;
+					long mask = width == 8 ? -1L : (1L << width*8) - 1;
+					long[] input = new long[5000];
+					for (int i = 0; i < input.length; ++i) {
+						input[i] = random.nextLong() & mask;
+					}
+					long[] sorted = new long[input.length];
+					for (int i = 0; i < input.length; ++i) {
+						// convert to signed comparable form:
+						sorted[i] = (input[i] ^ signFlip) + Long.MIN_VALUE;
+					}
+					Arrays.sort(sorted);
+
+					ByteBuffer buffer = ByteBuffer.allocate(input.length*11).order(order);
+					for (int i = 0; i < input.length; ++i) {
+						putKey(buffer, i*11+1, width, input[i]);
+					}
+					FlatSort.sortByKey(new SmallMappedFlatBuffer(buffer.order(ByteOrder.BIG_ENDIAN)), 11, 0, buffer.capacity(), 1, width, signed, order);
+
+					buffer.order(order);
+					for (int i = 0; i < input.length; ++i) {
+						assertEquals(getKey(buffer, i*11+1, width, mask), (sorted[i] - Long.MIN_VALUE) ^ signFlip, "width="+width+" signed="+signed+" order="+order+" i="+i);
+					}
+				}
+			}
+		}
+	}
+
+	private static void putKey(ByteBuffer buffer, int pos, int width, long value)
+	{
+		switch (width) {
+		case 1: buffer.put(pos, (byte) value); break;
+		case 2: buffer.putShort(pos, (short) value); break;
+		case 4: buffer.putInt(pos, (int) value); break;
+		default: buffer.putLong(pos, value); break;
+		}
+	}
+
+	private static long getKey(ByteBuffer buffer, int pos, int width, long mask)
+	{
+		switch (width) {
+		case 1: return buffer.get(pos) & mask;
+		case 2: return buffer.getShort(pos) & mask;
+		case 4: return buffer.getInt(pos) & mask;
+		default: return buffer.getLong(pos);
+		}
+	}
+
+	@Test
+	public void radixSortByInt_signedRandom_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		for (int c = 0; c < 20; ++c) {
+			int[] input = new int[random.nextInt(20_000)];
+			for (int i = 0; i < input.length; ++i) {
+				input[i] = c%2 == 0 ? random.nextInt() : random.nextInt(100) - 50;
+			}
+			int[] sorted = Arrays.copyOf(input, input.length);
+			Arrays.sort(sorted);
+
+			ByteBuffer buffer = ByteBuffer.allocate(input.length*12).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < input.length; ++i) {
+				buffer.putInt(i*12, i);
+				buffer.putInt(i*12+4, input[i]);
+				buffer.putInt(i*12+8, ~input[i]);
+			}
+			FlatSort.radixSortByInt(new SmallMappedFlatBuffer(buffer), 12, 0, buffer.capacity(), 4, true, ByteOrder.LITTLE_ENDIAN);
+
+			for (int i = 0; i < input.length; ++i) {
+				assertEquals(buffer.getInt(i*12+4), sorted[i]);
+				assertEquals(buffer.getInt(i*12+8), ~sorted[i]);
+			}
+		}
+	}
+
+	@Test
+	public void radixSortByInt_unsignedSwapped_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		int[] input = new int[10_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = random.nextInt();
+		}
+		long[] sorted = new long[input.length];
+		for (int i = 0; i < input.length; ++i) {
+			sorted[i] = Integer.reverseBytes(input[i])&0xffffffffL;
+		}
+		Arrays.sort(sorted);
+
+		ByteBuffer buffer = ByteBuffer.allocate(input.length*4).order(ByteOrder.BIG_ENDIAN);
+		buffer.asIntBuffer().put(input);
+		FlatSort.radixSortByInt(new SmallMappedFlatBuffer(buffer), 4, 0, buffer.capacity(), 0, false, ByteOrder.LITTLE_ENDIAN);
+
+		for (int i = 0; i < input.length; ++i) {
+			assertEquals(Integer.reverseBytes(buffer.getInt(i*4))&0xffffffffL, sorted[i]);
+		}
+	}
+
+	@Test
+	public void radixSortByLong_signedRandom_sort() throws Throwable
+	{
+		Random random = new Random(0);
+		long[] input = new long[10_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = i%3 == 0 ? random.nextLong() : random.nextInt(1000) - 500;
+		}
+		long[] sorted = Arrays.copyOf(input, input.length);
+		Arrays.sort(sorted);
+
+		ByteBuffer buffer = ByteBuffer.allocate(input.length*8);
+		buffer.asLongBuffer().put(input);
+		FlatSort.radixSortByLong(new SmallMappedFlatBuffer(buffer), 8, 0, buffer.capacity(), 0, true, ByteOrder.BIG_ENDIAN);
+
+		long[] lsorted = new long[input.length];
+		buffer.asLongBuffer().get(lsorted);
+		ArrayAsserts.assertArrayEquals(sorted, lsorted);
+	}
+
+	@Test
+	public void stableSort_random_keepOrder() throws Throwable
+	{
+		Random random = new Random(0);
+		for (int c = 0; c < 200; ++c) {
+			int[] input = new int[random.nextInt(5000)];
+			for (int i = 0; i < input.length; ++i) {
+				input[i] = random.nextInt(c%3 == 0 ? 10 : 1000);
+			}
+			stableTester(input, c%2 == 0 ? 0 : random.nextInt(100)*8);
+		}
+	}
+
+	@Test
+	public void stableSort_presortedAppends_keepOrder() throws Throwable
+	{
+		Random random = new Random(0);
+		int[] input = new int[50_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = i%10_000 == 0 ? random.nextInt(1000) : i/100;
+		}
+		stableTester(input, 800);
+		stableTester(input, -1);
+	}
+
+	@Test
+	public void stableSort_invalidArea_throws() throws Throwable
+	{
+		FlatBuffer buffer = new SmallMappedFlatBuffer(ByteBuffer.allocate(64));
+		FlatSort.FlatBufferComparator comparator = (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right));
+		expectThrows(IllegalArgumentException.class, () -> FlatSort.stableSort(buffer, 4, 0, 62, comparator));
+		expectThrows(IllegalArgumentException.class, () -> FlatSort.stableSort(buffer, 4, 8, 64, comparator));
+		expectThrows(IllegalArgumentException.class, () -> FlatSort.stableSort(buffer, 4, -4, 8, comparator));
+	}
+
+	@Test
+	public void stableSort_descending_keepOrder() throws Throwable
+	{
+		int[] input = new int[10_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = (input.length-i)/3;
+		}
+		stableTester(input, 0);
+		stableTester(input, -1);
+	}
+
+	@Test
+	public void select_random_select() throws Throwable
+	{
+		Random random = new Random(0);
+		for (int c = 0; c < 100; ++c) {
+			int[] input = new int[random.nextInt(10_000)+1];
+			for (int i = 0; i < input.length; ++i) {
+				input[i] = random.nextInt(c%2 == 0 ? 100 : Integer.MAX_VALUE);
+			}
+			int[] sorted = Arrays.copyOf(input, input.length);
+			Arrays.sort(sorted);
+			int k = random.nextInt(input.length);
+
+			ByteBuffer buffer = ByteBuffer.allocate(input.length*4);
+			buffer.asIntBuffer().put(input);
+			FlatSort.select(new SmallMappedFlatBuffer(buffer), 4, 0, buffer.capacity(), k, (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right)));
+
+			assertEquals(buffer.getInt(k*4), sorted[k]);
+			for (int i = 0; i < input.length; ++i) {
+				if (i < k ? buffer.getInt(i*4) > sorted[k] : buffer.getInt(i*4) < sorted[k]) {
+					throw new AssertionError("Record not partitioned: "+i);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void partialSort_random_sortPrefix() throws Throwable
+	{
+		Random random = new Random(0);
+		int[] input = new int[100_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = random.nextInt();
+		}
+		int[] sorted = Arrays.copyOf(input, input.length);
+		Arrays.sort(sorted);
+
+		ByteBuffer buffer = ByteBuffer.allocate(input.length*4);
+		buffer.asIntBuffer().put(input);
+		FlatSort.partialSort(new SmallMappedFlatBuffer(buffer), 4, 0, buffer.capacity(), 1000, (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right)));
+
+		int[] prefix = new int[1000];
+		buffer.asIntBuffer().get(prefix);
+		ArrayAsserts.assertArrayEquals(Arrays.copyOf(sorted, 1000), prefix);
+	}
+
+	@Test
+	public void indexSort_random_sort() throws Throwable
+	{
+		indexTester(false);
+	}
+
+	@Test
+	public void sortIndex_prefix_sort() throws Throwable
+	{
+		indexTester(true);
+	}
+
+	private void indexTester(boolean prefix) throws Throwable
+	{
+		Random random = new Random(0);
+		int[] input = new int[10_000];
+		for (int i = 0; i < input.length; ++i) {
+			input[i] = random.nextInt();
+		}
+		int[] sorted = Arrays.copyOf(input, input.length);
+		Arrays.sort(sorted);
+
+		ByteBuffer buffer = ByteBuffer.allocate(input.length*64);
+		for (int i = 0; i < input.length; ++i) {
+			buffer.putInt(i*64, input[i]);
+			buffer.putInt(i*64+60, ~input[i]);
+		}
+		SmallMappedFlatBuffer source = new SmallMappedFlatBuffer(buffer);
+		ByteBuffer output = ByteBuffer.allocate(buffer.capacity());
+		FlatSort.FlatBufferComparator comparator = (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right));
+		if (prefix) {
+			SmallMappedFlatBuffer index = new SmallMappedFlatBuffer(ByteBuffer.allocate(input.length*FlatSort.PREFIX_INDEX_ENTRY_SIZE));
+			FlatSort.sortIndex(source, 64, 0, buffer.capacity(), (b, pos) -> (b.getInt(pos)^Integer.MIN_VALUE)>>>20, comparator, index);
+			FlatSort.permute(source, 64, index, FlatSort.PREFIX_INDEX_ENTRY_SIZE, input.length, new SmallMappedFlatBuffer(output), 0);
+		}
+		else {
+			SmallMappedFlatBuffer index = new SmallMappedFlatBuffer(ByteBuffer.allocate(input.length*FlatSort.INDEX_ENTRY_SIZE));
+			FlatSort.indexSort(source, 64, 0, buffer.capacity(), comparator, index, new SmallMappedFlatBuffer(output), 0);
+		}
+
+		for (int i = 0; i < input.length; ++i) {
+			assertEquals(output.getInt(i*64), sorted[i]);
+			assertEquals(output.getInt(i*64+60), ~sorted[i]);
+		}
+	}
+
+	private void stableTester(int[] input, int scratchSize) throws Throwable
+	{
+		int[] sorted = Arrays.copyOf(input, input.length);
+		Arrays.sort(sorted);
+
+		ByteBuffer buffer = ByteBuffer.allocate(input.length*8).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < input.length; ++i) {
+			buffer.putInt(i*8, input[i]);
+			buffer.putInt(i*8+4, i);
+		}
+		FlatSort.FlatBufferComparator comparator = (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right));
+		if (scratchSize < 0) {
+			FlatSort.stableSort(new SmallMappedFlatBuffer(buffer), 8, 0, buffer.capacity(), comparator);
+		}
+		else {
+			FlatSort.stableSort(new SmallMappedFlatBuffer(buffer), 8, 0, buffer.capacity(), comparator, new SmallMappedFlatBuffer(ByteBuffer.allocate(scratchSize)));
+		}
+
+		for (int i = 0; i < input.length; ++i) {
+			assertEquals(buffer.getInt(i*8), sorted[i]);
+			if (i > 0 && sorted[i-1] == sorted[i] && buffer.getInt(i*8-4) > buffer.getInt(i*8+4)) {
+				throw new AssertionError("Order not kept at "+i);
+			}
+		}
+	}
+
 	private void intTester(int[] input) throws Throwable
 	{
 		int[] sorted = Arrays.copyOf(input, input.length);
@@ -170,6 +721,11 @@ public class FlatSortTest
 	}
 
 	private void intTesterFlat(int[] input) throws Throwable
+	{
+		intTesterGeneric(input, (buffer, length) -> FlatSort.sort(buffer, 4, 0, length, (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right))));
+	}
+
+	private void intTesterGeneric(int[] input, BiConsumer<FlatBuffer, Long> sorter) throws Throwable
 	{
 		int[] sorted = Arrays.copyOf(input, input.length);
 		Arrays.sort(sorted);
@@ -179,7 +735,7 @@ public class FlatSortTest
 		buffer.asIntBuffer().put(input);
 
 		try {
-			FlatSort.sort(new SmallMappedFlatBuffer(buffer), 4, 0, bsorted.length, (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right)));
+			sorter.accept(new SmallMappedFlatBuffer(buffer), (long) bsorted.length);
 
 			int[] isorted = new int[input.length];
 			buffer.asIntBuffer().get(isorted);
@@ -0,0 +1,145 @@
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class KeyEncoderTest
+{
+	private static final int RECORD_SIZE = 20;
+
+	private static final KeyEncoder ENCODER = new KeyEncoder()
+		.intColumn(0, true, false)
+		.longColumn(4, true, true)
+		.bytesColumn(12, 3, false);
+
+	private static final Comparator<Record> RECORD_COMPARATOR = Comparator.<Record>comparingInt(r -> r.a)
+		.thenComparing(r -> r.b, Comparator.reverseOrder())
+		.thenComparing(r -> r.c, Arrays::compareUnsigned);
+
+	@Test
+	public void prefix_compared_matchesEncoded() throws IOException
+	{
+		FlatBuffer buffer = new SmallMappedFlatBuffer(ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+		new Record(-2, 5, new byte[]{ 1, (byte) 0xff, 3 }).write(buffer, 0);
+
+		byte[] key = new byte[ENCODER.keySize()];
+		ENCODER.encode(buffer, 0, key, 0);
+		assertEquals(key.length, 15);
+		assertEquals(ENCODER.prefix(buffer, 0), ByteBuffer.wrap(key).getLong(0));
+		assertEquals(key[0], (byte) 0x7f);
+		assertEquals(key[3], (byte) 0xfe);
+		assertEquals(key[13], (byte) 0xff);
+	}
+
+	@Test
+	public void sort_comparator_sorted() throws IOException
+	{
+		Record[] records = generate(5000);
+		FlatBuffer buffer = store(records);
+
+		FlatSort.sort(buffer, RECORD_SIZE, 0, buffer.size(), ENCODER);
+
+		verify(records, buffer);
+	}
+
+	@Test
+	public void sortIndex_normalized_sorted() throws IOException
+	{
+		Record[] records = generate(5000);
+		FlatBuffer buffer = store(records);
+		FlatBuffer index = new SmallMappedFlatBuffer(ByteBuffer.allocate(records.length*ENCODER.indexEntrySize()));
+		FlatBuffer target = new SmallMappedFlatBuffer(ByteBuffer.allocate((int) buffer.size()).order(ByteOrder.LITTLE_ENDIAN));
+
+		FlatSort.sortIndex(buffer, RECORD_SIZE, 0, buffer.size(), ENCODER, index);
+		FlatSort.permute(buffer, RECORD_SIZE, index, ENCODER.indexEntrySize(), records.length, target, 0);
+
+		verify(records, target);
+	}
+
+	@Test
+	public void sortIndex_prefix_sorted() throws IOException
+	{
+		Record[] records = generate(5000);
+		FlatBuffer buffer = store(records);
+		FlatBuffer index = new SmallMappedFlatBuffer(ByteBuffer.allocate(records.length*FlatSort.PREFIX_INDEX_ENTRY_SIZE));
+		FlatBuffer target = new SmallMappedFlatBuffer(ByteBuffer.allocate((int) buffer.size()).order(ByteOrder.LITTLE_ENDIAN));
+
+		FlatSort.sortIndex(buffer, RECORD_SIZE, 0, buffer.size(), (FlatSort.KeyPrefixFunction) ENCODER, ENCODER, index);
+		FlatSort.permute(buffer, RECORD_SIZE, index, FlatSort.PREFIX_INDEX_ENTRY_SIZE, records.length, target, 0);
+
+		verify(records, target);
+	}
+
+	private static Record[] generate(int count)
+	{
+		Random random = new Random(0);
+		Record[] records = new Record[count];
+		for (int i = 0; i < count; ++i) {
+			byte[] c = new byte[3];
+			random.nextBytes(c);
+			c[0] &= 0x81;
+			records[i] = new Record(random.nextInt(7) - 3, i%3 == 0 ? random.nextLong() : random.nextInt(5) - 2, c);
+		}
+		return records;
+	}
+
+	private static FlatBuffer store(Record[] records) throws IOException
+	{
+		FlatBuffer buffer = new SmallMappedFlatBuffer(ByteBuffer.allocate(records.length*RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+		for (int i = 0; i < records.length; ++i) {
+			records[i].write(buffer, i*RECORD_SIZE);
+		}
+		return buffer;
+	}
+
+	private static void verify(Record[] records, FlatBuffer buffer)
+	{
+		Record[] sorted = records.clone();
+		Arrays.sort(sorted, RECORD_COMPARATOR);
+		for (int i = 0; i < sorted.length; ++i) {
+			Record actual = Record.read(buffer, i*RECORD_SIZE);
+			assertEquals(RECORD_COMPARATOR.compare(actual, sorted[i]), 0, "Record at "+i);
+		}
+	}
+
+	private static class Record
+	{
+		public Record(int a, long b, byte[] c)
+		{
+			this.a = a;
+			this.b = b;
+			this.c = c;
+		}
+
+		public void write(FlatBuffer buffer, long pos)
+		{
+			buffer.putInt(pos, a);
+			buffer.putLong(pos+4, b);
+			buffer.putBytes(pos+12, c);
+		}
+
+		public static Record read(FlatBuffer buffer, long pos)
+		{
+			byte[] c = new byte[3];
+			buffer.getBytes(pos+12, c);
+			return new Record(buffer.getInt(pos), buffer.getLong(pos+4), c);
+		}
+
+		final int a;
+
+		final long b;
+
+		final byte[] c;
+	}
+}
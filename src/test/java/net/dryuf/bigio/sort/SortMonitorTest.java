@@ -0,0 +1,126 @@
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+
+public class SortMonitorTest
+{
+	private static final FlatSort.FlatBufferComparator COMPARATOR = (b, left, right) -> Integer.compare(b.getInt(left), b.getInt(right));
+
+	@Test
+	public void sort_monitored_countsProgress() throws IOException
+	{
+		FlatBuffer buffer = generate(100_000);
+		SortMonitor monitor = new SortMonitor();
+		AtomicLong comparisons = new AtomicLong();
+
+		FlatSort.sort(buffer, 4, 0, buffer.size(), (b, left, right) -> { comparisons.incrementAndGet(); return COMPARATOR.compare(b, left, right); }, monitor);
+
+		assertEquals(monitor.getProcessedBytes(), buffer.size());
+		assertTrue(monitor.getPartitions() > 0);
+		assertTrue(monitor.getMaxDepth() > 0);
+		assertTrue(monitor.getSwaps() > 0);
+		assertEquals(monitor.getHeapSortFallbacks(), 0);
+		assertTrue(Math.abs(monitor.getComparisons() - comparisons.get()) < comparisons.get() / 10, "comparisons: "+monitor.getComparisons()+" real: "+comparisons.get());
+	}
+
+	@Test
+	public void parallelSort_monitored_countsProgress() throws IOException
+	{
+		FlatBuffer buffer = generate(100_000);
+		SortMonitor monitor = new SortMonitor();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			FlatSort.parallelSort(buffer, 4, 0, buffer.size(), COMPARATOR, pool, 100, monitor);
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		assertEquals(monitor.getProcessedBytes(), buffer.size());
+		assertTrue(monitor.getComparisons() > 0);
+	}
+
+	@Test
+	public void sort_cancelled_throws() throws IOException
+	{
+		FlatBuffer buffer = generate(100_000);
+		SortMonitor monitor = new SortMonitor();
+		AtomicLong comparisons = new AtomicLong();
+
+		expectThrows(CancellationException.class, () -> FlatSort.sort(buffer, 4, 0, buffer.size(), (b, left, right) -> {
+			if (comparisons.incrementAndGet() == 1000) {
+				monitor.cancel();
+			}
+			return COMPARATOR.compare(b, left, right);
+		}, monitor));
+		assertTrue(monitor.isCancelled());
+		assertTrue(monitor.getProcessedBytes() < buffer.size());
+	}
+
+	@Test
+	public void sort_sharedMonitor_reportsDepthPerSort() throws IOException
+	{
+		FlatBuffer flat = new SmallMappedFlatBuffer(ByteBuffer.allocate(100_000*4));
+		FlatBuffer small = generate(1000);
+		SortMonitor separate = new SortMonitor();
+		FlatSort.sort(generate(1000), 4, 0, small.size(), COMPARATOR, separate);
+
+		SortMonitor shared = new SortMonitor();
+		FlatSort.sort(flat, 4, 0, flat.size(), COMPARATOR, shared);
+		FlatSort.sort(small, 4, 0, small.size(), COMPARATOR, shared);
+
+		assertEquals(shared.getMaxDepth(), Math.max(1, separate.getMaxDepth()));
+	}
+
+	@Test
+	public void sort_cancelledTiny_throws() throws IOException
+	{
+		FlatBuffer buffer = generate(1);
+		SortMonitor monitor = new SortMonitor();
+		monitor.cancel();
+
+		expectThrows(CancellationException.class, () -> FlatSort.sort(buffer, 4, 0, buffer.size(), COMPARATOR, monitor));
+		expectThrows(CancellationException.class, () -> FlatSort.parallelSort(buffer, 4, 0, buffer.size(), COMPARATOR, ForkJoinPool.commonPool(), 100, monitor));
+		assertEquals(monitor.getProcessedBytes(), 0);
+	}
+
+	@Test
+	public void heapSort_cancelled_throws() throws IOException
+	{
+		FlatBuffer buffer = generate(100_000);
+		SortMonitor monitor = new SortMonitor();
+		AtomicLong comparisons = new AtomicLong();
+
+		expectThrows(CancellationException.class, () -> FlatSort.heapSort(buffer, 4, 0, buffer.size() - 4, (b, left, right) -> {
+			if (comparisons.incrementAndGet() == 1000) {
+				monitor.cancel();
+			}
+			return COMPARATOR.compare(b, left, right);
+		}, monitor));
+		assertTrue(comparisons.get() < 10_000);
+	}
+
+	private static FlatBuffer generate(int count) throws IOException
+	{
+		Random random = new Random(0);
+		ByteBuffer buffer = ByteBuffer.allocate(count*4);
+		for (int i = 0; i < count; ++i) {
+			buffer.putInt(i*4, random.nextInt());
+		}
+		return new SmallMappedFlatBuffer(buffer);
+	}
+}
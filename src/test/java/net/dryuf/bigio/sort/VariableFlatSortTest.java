@@ -0,0 +1,82 @@
+package net.dryuf.bigio.sort;
+
+import net.dryuf.bigio.FlatBuffer;
+import net.dryuf.bigio.file.SmallMappedFlatBuffer;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class VariableFlatSortTest
+{
+	@Test
+	public void sortDelimited_lines_sorted() throws IOException
+	{
+		for (boolean terminated: new boolean[]{ false, true }) {
+			List<String> lines = generateLines(5000);
+			String text = String.join("\n", lines)+(terminated ? "\n" : "");
+			FlatBuffer buffer = new SmallMappedFlatBuffer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).order(ByteOrder.LITTLE_ENDIAN));
+
+			long count = VariableFlatSort.countDelimited(buffer, 0, buffer.size(), (byte) '\n');
+			assertEquals(count, lines.size());
+			FlatBuffer index = new SmallMappedFlatBuffer(ByteBuffer.allocateDirect((int) count*VariableFlatSort.INDEX_ENTRY_SIZE));
+			assertEquals(VariableFlatSort.indexDelimited(buffer, 0, buffer.size(), (byte) '\n', index), count);
+			VariableFlatSort.sortIndex(buffer, index, count, VariableFlatSort.UNSIGNED_BYTES);
+
+			byte[] output = new byte[text.length()+1];
+			long written = VariableFlatSort.writeDelimited(buffer, index, count, (byte) '\n', new SmallMappedFlatBuffer(ByteBuffer.wrap(output)), 0);
+			assertEquals(written, text.length()+(terminated ? 0 : 1));
+
+			lines.sort(null);
+			assertEquals(new String(output, 0, (int) written, StandardCharsets.UTF_8), String.join("\n", lines)+"\n");
+		}
+	}
+
+	@Test
+	public void sortLengthPrefixed_records_sorted() throws IOException
+	{
+		List<String> records = generateLines(1000);
+		ByteBuffer input = ByteBuffer.allocate(records.stream().mapToInt(s -> s.length()+4).sum());
+		for (String record: records) {
+			input.putInt(record.length());
+			input.put(record.getBytes(StandardCharsets.UTF_8));
+		}
+		FlatBuffer buffer = new SmallMappedFlatBuffer(input);
+		FlatBuffer index = new SmallMappedFlatBuffer(ByteBuffer.allocate(records.size()*VariableFlatSort.INDEX_ENTRY_SIZE));
+
+		long count = VariableFlatSort.indexLengthPrefixed(buffer, 0, buffer.size(), index);
+		assertEquals(count, records.size());
+		VariableFlatSort.sortIndex(buffer, index, count, VariableFlatSort.UNSIGNED_BYTES);
+		ByteBuffer output = ByteBuffer.allocate(input.capacity());
+		assertEquals(VariableFlatSort.writeLengthPrefixed(buffer, index, count, new SmallMappedFlatBuffer(output), 0), input.capacity());
+
+		records.sort(null);
+		for (String record: records) {
+			byte[] bytes = new byte[output.getInt()];
+			output.get(bytes);
+			assertEquals(new String(bytes, StandardCharsets.UTF_8), record);
+		}
+	}
+
+	private static List<String> generateLines(int count)
+	{
+		Random random = new Random(0);
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < count; ++i) {
+			StringBuilder line = new StringBuilder();
+			for (int l = random.nextInt(30); l > 0; --l) {
+				line.append((char) ('a'+random.nextInt(i%2 == 0 ? 3 : 26)));
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+}